@@ -0,0 +1,75 @@
+package pt.up.fe.comp2023.benchmark;
+
+import pt.up.fe.comp.jmm.report.ReportType;
+import pt.up.fe.comp2023.SimpleAnalyzer;
+import pt.up.fe.comp2023.SimpleParser;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * The Java-- programs the benchmarks compile. Paths are relative to the project folder, where {@code gradle jmh} runs
+ * the benchmarks.
+ */
+public class Corpus {
+
+    public static final String CPF = "cpf";
+    public static final String MISC = "misc";
+    public static final String SYNTHETIC = "synthetic";
+
+    /**
+     * The shape of the synthetic program, a large class with mid-sized methods
+     */
+    private static final ProgramGenerator.Shape SYNTHETIC_SHAPE = new ProgramGenerator.Shape(100, 30, 3, 2, 8, 4);
+
+    private static final long SYNTHETIC_SEED = 2023;
+
+    /**
+     * @return the sources of the corpus that compile without errors, since the corpora also hold programs that are
+     * meant to be rejected
+     */
+    public static List<String> load(String name, Map<String, String> config) throws IOException {
+        var sources = switch (name) {
+            case CPF -> readSources(Path.of("test", "pt", "up", "fe", "comp", "cpf"));
+            case MISC -> readSources(Path.of("misc-tests"));
+            case SYNTHETIC -> List.of(new ProgramGenerator(SYNTHETIC_SEED).generate(SYNTHETIC_SHAPE));
+            default -> throw new IllegalArgumentException("Unknown corpus " + name);
+        };
+
+        var parser = new SimpleParser();
+        var analyzer = new SimpleAnalyzer();
+
+        return sources.stream()
+                .filter(source -> {
+                    var parserResult = parser.parse(source, config);
+                    if (parserResult.getRootNode() == null)
+                        return false;
+
+                    var semanticsResult = analyzer.semanticAnalysis(parserResult);
+                    return semanticsResult.getReports().stream()
+                            .noneMatch(report -> report.getType() == ReportType.ERROR);
+                })
+                .toList();
+    }
+
+    private static List<String> readSources(Path folder) throws IOException {
+        try (Stream<Path> files = Files.walk(folder)) {
+            var paths = files
+                    .filter(path -> path.toString().endsWith(".jmm") || path.toString().endsWith(".java"))
+                    .sorted()
+                    .toList();
+
+            var sources = new ArrayList<String>();
+            for (var path : paths) {
+                sources.add(Files.readString(path));
+            }
+
+            return sources;
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package pt.up.fe.comp2023.benchmark;
+
+import java.util.Random;
+
+/**
+ * Generates random but valid Java-- programs of a chosen shape, to measure how the compiler scales with the size of its
+ * input. The same seed and shape always give the same program.
+ * <p>
+ * Every method of the generated class takes an {@code int} and an {@code int[]}, keeps a number of {@code int} locals
+ * live from its start to its return, and mixes assignments to locals, fields and array elements with {@code if} and
+ * {@code while} statements. Loops are bounded by a counter that only the loop changes, divisions are by non-zero
+ * constants and array indexes stay within the array. Methods only call earlier methods of a lower call level, so calls
+ * never recurse and nest at most {@link #CALL_LEVELS} deep. {@code main} calls every method, so the whole program runs,
+ * and to completion.
+ */
+public class ProgramGenerator {
+
+    public static final String CLASS_NAME = "Synthetic";
+
+    /**
+     * The knobs of the generated program
+     *
+     * @param methods             number of methods of the class, besides {@code main}
+     * @param statementsPerMethod number of statements of each method, counting the nested ones
+     * @param expressionDepth     maximum depth of the expressions
+     * @param loopNesting         maximum number of nested {@code while} statements
+     * @param liveVariables       number of {@code int} locals that are live through the whole method
+     * @param fields              number of {@code int} fields, which the methods read and write
+     */
+    public record Shape(int methods, int statementsPerMethod, int expressionDepth, int loopNesting, int liveVariables,
+                        int fields) {
+
+        public Shape {
+            if (methods < 1 || statementsPerMethod < 0 || expressionDepth < 0 || loopNesting < 0 || liveVariables < 1
+                    || fields < 0)
+                throw new IllegalArgumentException("Invalid program shape " + this);
+        }
+    }
+
+    /**
+     * Iterations of every generated loop, so that nested loops stay cheap to run
+     */
+    private static final int LOOP_ITERATIONS = 3;
+
+    /**
+     * Maximum number of statements in the body of an {@code if} or {@code while}
+     */
+    private static final int MAX_BODY_STATEMENTS = 4;
+
+    /**
+     * Method {@code m} is at level {@code m % CALL_LEVELS} and only calls methods of lower levels, which bounds the
+     * number of calls a run makes
+     */
+    private static final int CALL_LEVELS = 3;
+
+    private final Random random;
+
+    private Shape shape;
+    private StringBuilder code;
+
+    public ProgramGenerator(long seed) {
+        this.random = new Random(seed);
+    }
+
+    public String generate(Shape shape) {
+        this.shape = shape;
+        this.code = new StringBuilder();
+
+        code.append("import io;\n\nclass ").append(CLASS_NAME).append(" {\n");
+        for (int field = 0; field < shape.fields(); field++) {
+            code.append("    int f").append(field).append(";\n");
+        }
+
+        for (int method = 0; method < shape.methods(); method++) {
+            code.append('\n');
+            generateMethod(method);
+        }
+
+        code.append("\n    public static void main(String[] args) {\n");
+        indent(2).append(CLASS_NAME).append(" program;\n");
+        indent(2).append("program = new ").append(CLASS_NAME).append("();\n");
+        for (int method = 0; method < shape.methods(); method++) {
+            indent(2).append("io.println(program.m").append(method).append('(').append(LOOP_ITERATIONS)
+                    .append(", new int[").append(LOOP_ITERATIONS).append("]));\n");
+        }
+        code.append("    }\n}\n");
+
+        return code.toString();
+    }
+
+    private void generateMethod(int method) {
+        code.append("    public int m").append(method).append("(int n, int[] values) {\n");
+
+        for (int variable = 0; variable < shape.liveVariables(); variable++) {
+            indent(2).append("int v").append(variable).append(";\n");
+        }
+        for (int level = 0; level < shape.loopNesting(); level++) {
+            indent(2).append("int i").append(level).append(";\n");
+        }
+        indent(2).append("boolean b;\n");
+
+        for (int variable = 0; variable < shape.liveVariables(); variable++) {
+            indent(2).append("v").append(variable).append(" = ").append(variable).append(" + n;\n");
+        }
+        // b is not assigned yet, so its first value can't read it
+        int depth = Math.max(shape.expressionDepth() - 1, 0);
+        indent(2).append("b = ").append(intExpression(depth, method)).append(" < ").append(intExpression(depth, method))
+                .append(";\n");
+
+        generateStatements(shape.statementsPerMethod(), 0, method, 2);
+
+        // Reading every variable at the end keeps them all live through the method
+        indent(2).append("return v0");
+        for (int variable = 1; variable < shape.liveVariables(); variable++) {
+            code.append(" + v").append(variable);
+        }
+        code.append(";\n    }\n");
+    }
+
+    /**
+     * @param loopLevel the number of loops around the statements, whose counters can index the array
+     */
+    private void generateStatements(int count, int loopLevel, int method, int depth) {
+        int remaining = count;
+
+        while (remaining > 0) {
+            int bodySize = Math.min(remaining - 1, 1 + random.nextInt(MAX_BODY_STATEMENTS));
+            int choice = random.nextInt(10);
+
+            if (choice < 2 && bodySize > 0 && loopLevel < shape.loopNesting()) {
+                generateLoop(bodySize, loopLevel, method, depth);
+                remaining -= bodySize + 1;
+            } else if (choice < 4 && bodySize > 0) {
+                generateIf(bodySize, loopLevel, method, depth);
+                remaining -= bodySize + 1;
+            } else {
+                generateAssignment(loopLevel, method, depth);
+                remaining--;
+            }
+        }
+    }
+
+    private void generateLoop(int bodySize, int loopLevel, int method, int depth) {
+        var counter = "i" + loopLevel;
+
+        indent(depth).append(counter).append(" = 0;\n");
+        indent(depth).append("while (").append(counter).append(" < ").append(LOOP_ITERATIONS);
+        if (random.nextBoolean()) code.append(" && ").append(booleanExpression(shape.expressionDepth(), method));
+        code.append(") {\n");
+
+        generateStatements(bodySize, loopLevel + 1, method, depth + 1);
+
+        indent(depth + 1).append(counter).append(" = ").append(counter).append(" + 1;\n");
+        indent(depth).append("}\n");
+    }
+
+    private void generateIf(int bodySize, int loopLevel, int method, int depth) {
+        int thenSize = (bodySize + 1) / 2;
+
+        indent(depth).append("if (").append(booleanExpression(shape.expressionDepth(), method)).append(") {\n");
+        generateStatements(thenSize, loopLevel, method, depth + 1);
+        indent(depth).append("} else {\n");
+        generateStatements(bodySize - thenSize, loopLevel, method, depth + 1);
+        indent(depth).append("}\n");
+    }
+
+    private void generateAssignment(int loopLevel, int method, int depth) {
+        var value = intExpression(shape.expressionDepth(), method);
+        int choice = random.nextInt(10);
+
+        indent(depth);
+        if (choice < 2 && loopLevel > 0) {
+            var index = "i" + random.nextInt(loopLevel);
+            code.append("if (").append(index).append(" < values.length) {\n");
+            indent(depth + 1).append("values[").append(index).append("] = ").append(value).append(";\n");
+            indent(depth).append("}\n");
+        } else if (choice < 4 && shape.fields() > 0) {
+            code.append('f').append(random.nextInt(shape.fields())).append(" = ").append(value).append(";\n");
+        } else if (choice < 5) {
+            code.append("b = ").append(booleanExpression(shape.expressionDepth(), method)).append(";\n");
+        } else {
+            code.append('v').append(random.nextInt(shape.liveVariables())).append(" = ").append(value).append(";\n");
+        }
+    }
+
+    private String intExpression(int depth, int method) {
+        if (depth == 0)
+            return intOperand();
+
+        return switch (random.nextInt(8)) {
+            case 0, 1 -> intExpression(depth - 1, method) + " + " + intExpression(depth - 1, method);
+            case 2 -> intExpression(depth - 1, method) + " - " + intExpression(depth - 1, method);
+            case 3 -> "(" + intExpression(depth - 1, method) + ") * " + intOperand();
+            case 4 -> "(" + intExpression(depth - 1, method) + ") / " + (1 + random.nextInt(9));
+            case 5 -> method % CALL_LEVELS > 0
+                    ? "this.m" + callee(method) + "(" + intExpression(depth - 1, method) + ", values)"
+                    : intOperand();
+            default -> intOperand();
+        };
+    }
+
+    /**
+     * @return an earlier method of a lower call level than the given one, which must not be at the lowest level
+     */
+    private int callee(int method) {
+        int group = random.nextInt(method / CALL_LEVELS + 1);
+
+        return group * CALL_LEVELS + random.nextInt(method % CALL_LEVELS);
+    }
+
+    private String intOperand() {
+        int choice = random.nextInt(10);
+
+        if (choice < 5)
+            return "v" + random.nextInt(shape.liveVariables());
+        if (choice < 7 && shape.fields() > 0)
+            return "f" + random.nextInt(shape.fields());
+        if (choice < 8)
+            return random.nextBoolean() ? "n" : "values.length";
+
+        return Integer.toString(random.nextInt(100));
+    }
+
+    private String booleanExpression(int depth, int method) {
+        if (depth == 0)
+            return random.nextBoolean() ? "b" : random.nextBoolean() ? "true" : "false";
+
+        return switch (random.nextInt(6)) {
+            case 0, 1, 2 -> intExpression(depth - 1, method) + " < " + intExpression(depth - 1, method);
+            case 3 -> booleanExpression(depth - 1, method) + " && " + booleanExpression(depth - 1, method);
+            case 4 -> "!(" + booleanExpression(depth - 1, method) + ")";
+            default -> "b";
+        };
+    }
+
+    private StringBuilder indent(int depth) {
+        return code.append("    ".repeat(depth));
+    }
+}
@@ -0,0 +1,100 @@
+package pt.up.fe.comp2023.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import pt.up.fe.comp.jmm.jasmin.JasminResult;
+import pt.up.fe.comp.jmm.ollir.OllirResult;
+import pt.up.fe.comp2023.SimpleAnalyzer;
+import pt.up.fe.comp2023.SimpleOptimizer;
+import pt.up.fe.comp2023.SimpleParser;
+import pt.up.fe.comp2023.jasmin.JasminBackend;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the whole compilation of generated programs of growing size, to chart how compile time (and, with
+ * {@code -prof gc}, memory) scales with each knob of {@link ProgramGenerator.Shape}. Any knob can be set from the
+ * command line, e.g. {@code -p liveVariables=8,16,32,64}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ScalingBenchmark {
+
+    private static final Map<String, String> CONFIG = Map.of(
+            "optimize", "true",
+            "registerAllocation", "0",
+            "debug", "false"
+    );
+
+    @Param({"10", "100"})
+    public int methods;
+
+    @Param({"10", "100"})
+    public int statementsPerMethod;
+
+    @Param("3")
+    public int expressionDepth;
+
+    @Param("2")
+    public int loopNesting;
+
+    @Param({"4", "32"})
+    public int liveVariables;
+
+    @Param("4")
+    public int fields;
+
+    @Param("2023")
+    public long seed;
+
+    private final SimpleParser parser = new SimpleParser();
+    private final SimpleAnalyzer analyzer = new SimpleAnalyzer();
+    private final SimpleOptimizer optimizer = new SimpleOptimizer();
+    private final JasminBackend jasminBackend = new JasminBackend();
+
+    private String source;
+
+    @Setup
+    public void setUp() {
+        var shape = new ProgramGenerator.Shape(methods, statementsPerMethod, expressionDepth, loopNesting,
+                liveVariables, fields);
+
+        source = new ProgramGenerator(seed).generate(shape);
+    }
+
+    /**
+     * Every stage from the source to the Jasmin code, with the OLLIR class built straight from the AST and registers
+     * allocated by graph coloring
+     */
+    @Benchmark
+    public JasminResult compile() {
+        var semanticsResult = optimizer.optimize(analyzer.semanticAnalysis(parser.parse(source, CONFIG)));
+
+        var classUnit = optimizer.toClassUnit(semanticsResult);
+        optimizer.optimize(classUnit, CONFIG);
+
+        return jasminBackend.toJasmin(classUnit, CONFIG);
+    }
+
+    /**
+     * The OLLIR code as text, printed from the built class and parsed back
+     */
+    @Benchmark
+    public OllirResult toOllir() {
+        return optimizer.toOllir(analyzer.semanticAnalysis(parser.parse(source, CONFIG)));
+    }
+}
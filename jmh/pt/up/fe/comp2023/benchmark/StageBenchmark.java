@@ -0,0 +1,190 @@
+package pt.up.fe.comp2023.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.specs.comp.ollir.ClassUnit;
+import pt.up.fe.comp.jmm.analysis.JmmSemanticsResult;
+import pt.up.fe.comp.jmm.ollir.OllirResult;
+import pt.up.fe.comp.jmm.parser.JmmParserResult;
+import pt.up.fe.comp2023.SimpleAnalyzer;
+import pt.up.fe.comp2023.SimpleOptimizer;
+import pt.up.fe.comp2023.SimpleParser;
+import pt.up.fe.comp2023.jasmin.JasminBackend;
+import pt.up.fe.comp2023.jasmin.classfile.ClassFileBackend;
+import pt.up.fe.comp2023.ollir.optimization.registers.RegisterAllocationOptimizer;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures each stage of the compiler on its own, over a whole corpus at a time. The input of every stage is the output
+ * of the previous ones, prepared before the measurement. Stages that change their input get a fresh copy of it before
+ * each invocation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StageBenchmark {
+
+    private static final Map<String, String> CONFIG = Map.of(
+            "optimize", "true",
+            "registerAllocation", "0",
+            "debug", "false"
+    );
+
+    @Param({Corpus.CPF, Corpus.MISC, Corpus.SYNTHETIC})
+    public String corpus;
+
+    private final SimpleParser parser = new SimpleParser();
+    private final SimpleAnalyzer analyzer = new SimpleAnalyzer();
+    private final SimpleOptimizer optimizer = new SimpleOptimizer();
+    private final RegisterAllocationOptimizer registerAllocator = new RegisterAllocationOptimizer();
+    private final JasminBackend jasminBackend = new JasminBackend();
+    private final ClassFileBackend classFileBackend = new ClassFileBackend();
+
+    private List<String> sources;
+    private List<JmmSemanticsResult> semanticsResults;
+    private List<OllirResult> ollirResults;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        sources = Corpus.load(corpus, CONFIG);
+        semanticsResults = analyze(parse());
+        ollirResults = semanticsResults.stream().map(optimizer::toOllir).toList();
+
+        // The backends read the registers the allocator assigns
+        ollirResults.forEach(ollirResult -> registerAllocator.optimize(ollirResult.getOllirClass(), CONFIG));
+    }
+
+    private List<JmmParserResult> parse() {
+        return sources.stream().map(source -> parser.parse(source, CONFIG)).toList();
+    }
+
+    private List<JmmSemanticsResult> analyze(List<JmmParserResult> parserResults) {
+        return parserResults.stream().map(analyzer::semanticAnalysis).toList();
+    }
+
+    /**
+     * Freshly parsed sources, since the analysis annotates the AST
+     */
+    @State(Scope.Thread)
+    public static class ParsedSources {
+
+        private List<JmmParserResult> parserResults;
+
+        @Setup(Level.Invocation)
+        public void setUp(StageBenchmark benchmark) {
+            parserResults = benchmark.parse();
+        }
+    }
+
+    /**
+     * Freshly analyzed sources, since the AST optimizations change the AST
+     */
+    @State(Scope.Thread)
+    public static class AnalyzedSources {
+
+        private List<JmmSemanticsResult> semanticsResults;
+
+        @Setup(Level.Invocation)
+        public void setUp(StageBenchmark benchmark) {
+            semanticsResults = benchmark.analyze(benchmark.parse());
+        }
+    }
+
+    /**
+     * Freshly built OLLIR classes, since the OLLIR optimizations change them
+     */
+    @State(Scope.Thread)
+    public static class BuiltClasses {
+
+        private List<ClassUnit> classUnits;
+
+        @Setup(Level.Invocation)
+        public void setUp(StageBenchmark benchmark) {
+            classUnits = benchmark.semanticsResults.stream().map(benchmark.optimizer::toClassUnit).toList();
+        }
+    }
+
+    @Benchmark
+    public void parse(Blackhole blackhole) {
+        for (var source : sources) {
+            blackhole.consume(parser.parse(source, CONFIG));
+        }
+    }
+
+    @Benchmark
+    public void semanticAnalysis(ParsedSources input, Blackhole blackhole) {
+        for (var parserResult : input.parserResults) {
+            blackhole.consume(analyzer.semanticAnalysis(parserResult));
+        }
+    }
+
+    @Benchmark
+    public void optimizeAst(AnalyzedSources input, Blackhole blackhole) {
+        for (var semanticsResult : input.semanticsResults) {
+            blackhole.consume(optimizer.optimize(semanticsResult));
+        }
+    }
+
+    @Benchmark
+    public void toOllir(Blackhole blackhole) {
+        for (var semanticsResult : semanticsResults) {
+            blackhole.consume(optimizer.toOllir(semanticsResult));
+        }
+    }
+
+    @Benchmark
+    public void toClassUnit(Blackhole blackhole) {
+        for (var semanticsResult : semanticsResults) {
+            blackhole.consume(optimizer.toClassUnit(semanticsResult));
+        }
+    }
+
+    @Benchmark
+    public void optimizeOllir(BuiltClasses input, Blackhole blackhole) {
+        for (var classUnit : input.classUnits) {
+            blackhole.consume(optimizer.optimize(classUnit, CONFIG));
+        }
+    }
+
+    /**
+     * Allocation only reads the variables of the code, so running it again over the same classes does the same work
+     */
+    @Benchmark
+    public void registerAllocation(Blackhole blackhole) {
+        for (var ollirResult : ollirResults) {
+            blackhole.consume(registerAllocator.optimize(ollirResult.getOllirClass(), CONFIG));
+        }
+    }
+
+    @Benchmark
+    public void toJasmin(Blackhole blackhole) {
+        for (var ollirResult : ollirResults) {
+            blackhole.consume(jasminBackend.toJasmin(ollirResult));
+        }
+    }
+
+    @Benchmark
+    public void toClassFile(Blackhole blackhole) {
+        for (var ollirResult : ollirResults) {
+            blackhole.consume(classFileBackend.toClassFile(ollirResult));
+        }
+    }
+}
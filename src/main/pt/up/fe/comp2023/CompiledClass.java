@@ -0,0 +1,27 @@
+package pt.up.fe.comp2023;
+
+import pt.up.fe.comp2023.metrics.CompileMetrics;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+
+/**
+ * Output of a compilation, either Jasmin code or the bytes of a class file, depending on the chosen backend, and the
+ * metrics of the compilation.
+ */
+public record CompiledClass(String className, String fileExtension, byte[] contents, CompileMetrics metrics) {
+
+    public File writeTo(File folder) {
+        var outputFile = new File(folder, className + fileExtension);
+
+        try {
+            Files.write(outputFile.toPath(), contents);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write " + outputFile, e);
+        }
+
+        return outputFile;
+    }
+}
@@ -0,0 +1,234 @@
+package pt.up.fe.comp2023;
+
+import org.specs.comp.ollir.ClassUnit;
+import org.specs.comp.ollir.Method;
+import pt.up.fe.comp.TestUtils;
+import pt.up.fe.comp.jmm.analysis.JmmSemanticsResult;
+import pt.up.fe.comp.jmm.ast.JmmNode;
+import pt.up.fe.comp.jmm.jasmin.JasminResult;
+import pt.up.fe.comp.jmm.parser.JmmParserResult;
+import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.comp2023.cache.CompileCache;
+import pt.up.fe.comp2023.jasmin.JasminBackend;
+import pt.up.fe.comp2023.jasmin.classfile.ClassFileBackend;
+import pt.up.fe.comp2023.metrics.CompileMetrics;
+import pt.up.fe.comp2023.ollir.OllirPrinter;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Runs every stage of the compiler over a single Java-- source.
+ * <p>
+ * The stages hold no per-compilation state, so a single instance can be kept alive and reused for many compilations,
+ * avoiding the cost of loading the parser and the OLLIR/Jasmin libraries again for every file.
+ * <p>
+ * Every stage is measured, and the {@link CompileMetrics} of the compilation are returned with the compiled class.
+ */
+public class JmmCompiler {
+
+    public static final String BACKEND_JASMIN = "jasmin";
+    public static final String BACKEND_CLASS = "class";
+
+    private static final String WARM_UP_CODE = """
+            class WarmUp {
+                int field;
+
+                public int run(int a, int[] b) {
+                    int c;
+                    c = 0;
+                    while (c < a && !(a < c)) {
+                        b[c] = a * c + this.run(c, b) / 2 - field;
+                        c = c + 1;
+                    }
+                    return c;
+                }
+
+                public static void main(String[] args) {
+                }
+            }
+            """;
+
+    private final SimpleParser parser = new SimpleParser();
+    private final SimpleAnalyzer analyzer = new SimpleAnalyzer();
+    private final SimpleOptimizer optimizer = new SimpleOptimizer();
+    private final JasminBackend backend = new JasminBackend();
+    private final ClassFileBackend classFileBackend = new ClassFileBackend();
+    private final OllirPrinter ollirPrinter = new OllirPrinter();
+
+    private record CacheConfig(Path folder, long maxMegabytes) {
+    }
+
+    /**
+     * The compile caches in use, shared by every compilation, since each cache keeps the size of its folder
+     */
+    private final Map<CacheConfig, CompileCache> caches = new ConcurrentHashMap<>();
+
+    private boolean warmedUp;
+
+    /**
+     * Compiles a small program that goes through every stage, so that the classes used by the compiler are loaded
+     * and initialized before the first real compilation. Only the first call does anything.
+     */
+    public synchronized void warmUp() {
+        if (warmedUp)
+            return;
+
+        for (var backend : new String[]{BACKEND_JASMIN, BACKEND_CLASS}) {
+            var config = Map.of(
+                    "optimize", "true",
+                    "registerAllocation", "0",
+                    "debug", "false",
+                    "backend", backend
+            );
+
+            compile(WARM_UP_CODE, config, new PrintStream(OutputStream.nullOutputStream()));
+        }
+
+        warmedUp = true;
+    }
+
+    /**
+     * Compiles the code, unless the compile cache given in the config already has its output.
+     */
+    public CompiledClass compile(String code, Map<String, String> config, PrintStream out) {
+        try (var metrics = CompileMetrics.start()) {
+            if (!config.containsKey("cacheFolder"))
+                return compile(code, config, out, metrics);
+
+            long maxMegabytes = Long.parseLong(config.getOrDefault("cacheSize",
+                    String.valueOf(CompileCache.DEFAULT_MAX_MEGABYTES)));
+            var cache = caches.computeIfAbsent(new CacheConfig(Path.of(config.get("cacheFolder")), maxMegabytes),
+                    cacheConfig -> new CompileCache(cacheConfig.folder(), cacheConfig.maxMegabytes() << 20));
+
+            var key = metrics.measure("cacheKey", () -> cache.getKey(code, config), String::length);
+            var cachedEntry = metrics.measure("cacheLookup", () -> cache.get(key),
+                    entry -> entry.map(found -> found.contents().length).orElse(0));
+
+            if (cachedEntry.isPresent()) {
+                var entry = cachedEntry.get();
+                metrics.setClassName(entry.className());
+                out.println("Found " + entry.className() + entry.fileExtension() + " in the compile cache\n");
+
+                return new CompiledClass(entry.className(), entry.fileExtension(), entry.contents(), metrics);
+            }
+
+            var compiledClass = compile(code, config, out, metrics);
+            var entry = new CompileCache.Entry(compiledClass.className(), compiledClass.fileExtension(),
+                    compiledClass.contents());
+            metrics.measure("cacheStore", () -> {
+                cache.put(key, entry);
+                return entry;
+            }, stored -> stored.contents().length);
+
+            return compiledClass;
+        }
+    }
+
+    private CompiledClass compile(String code, Map<String, String> config, PrintStream out, CompileMetrics metrics) {
+        // Parse stage
+        JmmParserResult parserResult = metrics.measure("parse", () -> parser.parse(code, config),
+                result -> countNodes(result.getRootNode()));
+
+        // Check if there are parsing errors
+        TestUtils.noErrors(parserResult.getReports());
+
+        out.println("Code:\n\n" + code + "\n");
+
+        JmmSemanticsResult analyzerResult = metrics.measure("semanticAnalysis",
+                () -> analyzer.semanticAnalysis(parserResult), result -> countNodes(result.getRootNode()));
+        TestUtils.noErrors(analyzerResult.getReports());
+
+        out.println("Symbol Table:\n\n" + analyzerResult.getSymbolTable().print());
+        out.println("AST:\n\n" + analyzerResult.getRootNode().toTree());
+
+        JmmSemanticsResult optimizedAstResult = metrics.measure("optimizeAst", () -> optimizer.optimize(analyzerResult),
+                result -> countNodes(result.getRootNode()));
+        out.println("OPTIMIZED AST:\n\n" + optimizedAstResult.getRootNode().toTree());
+
+        boolean debug = config.getOrDefault("debug", "false").equals("true");
+
+        // The OLLIR class is built straight from the AST; its code is only printed when debugging
+        ClassUnit classUnit = metrics.measure("toClassUnit", () -> optimizer.toClassUnit(optimizedAstResult),
+                JmmCompiler::countInstructions);
+        metrics.setClassName(classUnit.getClassName());
+        if (debug) out.println("OLLIR RESULT:\n\n" + ollirPrinter.print(classUnit));
+
+        List<Report> optimizationReports = metrics.measure("optimizeOllir",
+                () -> optimizer.optimize(classUnit, config), reports -> countInstructions(classUnit));
+        if (debug) out.println("OPTIMIZED OLLIR RESULT:\n\n" + ollirPrinter.print(classUnit));
+
+        // Fails when not even spilling fits the variables in the registers given with -r
+        TestUtils.noErrors(optimizationReports);
+
+        CompiledClass compiledClass;
+        if (config.getOrDefault("backend", BACKEND_JASMIN).equals(BACKEND_CLASS)) {
+            byte[] classFile = metrics.measure("classFile", () -> classFileBackend.toClassFile(classUnit),
+                    bytes -> bytes.length);
+            out.println("CLASS FILE: " + classFile.length + " bytes\n");
+
+            compiledClass = new CompiledClass(classUnit.getClassName(), ".class", classFile, metrics);
+        } else {
+            JasminResult jasminResult = metrics.measure("jasmin", () -> backend.toJasmin(classUnit, config),
+                    result -> result.getJasminCode().length());
+            out.println("JASMIN CODE: \n\n" + jasminResult.getJasminCode());
+
+            compiledClass = new CompiledClass(jasminResult.getClassName(), ".j",
+                    jasminResult.getJasminCode().getBytes(StandardCharsets.UTF_8), metrics);
+        }
+
+        if (!config.getOrDefault("registerAllocation", "-1").equals("-1")) {
+            printRegisterMapping(classUnit, out);
+        }
+
+        return compiledClass;
+    }
+
+    private static long countNodes(JmmNode node) {
+        if (node == null)
+            return 0;
+
+        long numNodes = 1;
+        for (var child : node.getChildren()) {
+            numNodes += countNodes(child);
+        }
+
+        return numNodes;
+    }
+
+    private static long countInstructions(ClassUnit classUnit) {
+        return classUnit.getMethods().stream()
+                .mapToLong(method -> method.getInstructions().size())
+                .sum();
+    }
+
+    private void printRegisterMapping(ClassUnit classUnit, PrintStream out) {
+        out.println("VARIABLE MAPPING:\n");
+
+        for (Method method : classUnit.getMethods()) {
+            var optimizedVarTable = method.getVarTable();
+
+            int maxRegister = 0;
+            var mapping = new StringBuilder();
+
+            for (var entry : optimizedVarTable.entrySet()) {
+                var varName = entry.getKey();
+                var descriptor = entry.getValue();
+
+                if (descriptor.getVirtualReg() > maxRegister) {
+                    maxRegister = descriptor.getVirtualReg();
+                }
+
+                mapping.append("Variable ").append(varName).append(" assigned to register #").append(descriptor.getVirtualReg()).append("\n");
+            }
+
+            out.println("Register allocation for method `" + method.getMethodName() + "`: " + (maxRegister + 1) + " registers are needed");
+            out.println(mapping);
+        }
+    }
+}
@@ -1,20 +1,19 @@
 package pt.up.fe.comp2023;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
-import org.specs.comp.ollir.Descriptor;
-import org.specs.comp.ollir.Method;
-import org.specs.comp.ollir.VarScope;
-import pt.up.fe.comp.TestUtils;
-import pt.up.fe.comp.jmm.analysis.JmmAnalysis;
-import pt.up.fe.comp.jmm.analysis.JmmSemanticsResult;
-import pt.up.fe.comp.jmm.jasmin.JasminResult;
-import pt.up.fe.comp.jmm.ollir.OllirResult;
-import pt.up.fe.comp.jmm.parser.JmmParserResult;
-import pt.up.fe.comp2023.jasmin.JasminBackend;
+import pt.up.fe.comp2023.batch.BatchCompiler;
+import pt.up.fe.comp2023.cache.CompileCache;
+import pt.up.fe.comp2023.metrics.MetricsReport;
+import pt.up.fe.comp2023.server.CompileClient;
+import pt.up.fe.comp2023.server.CompileServer;
 import pt.up.fe.specs.util.SpecsIo;
 import pt.up.fe.specs.util.SpecsLogs;
 import pt.up.fe.specs.util.SpecsSystem;
@@ -32,79 +31,146 @@ public class Launcher {
             System.exit(1);
         }
 
-        // Get input file
-        File inputFile = new File(config.get("inputFile"));
-
-        // Read contents of input file
-        String code = SpecsIo.read(inputFile);
-
-        // Instantiate JmmParser
-        SimpleParser parser = new SimpleParser();
-
-        // Parse stage
-        JmmParserResult parserResult = parser.parse(code, config);
+        if (config.containsKey("server")) {
+            runServer(config);
+            return;
+        }
 
-        // Check if there are parsing errors
-        TestUtils.noErrors(parserResult.getReports());
+        if (config.containsKey("client")) {
+            System.exit(runClient(config));
+        }
 
-        // ... add remaining stages
-        SpecsLogs.info("Code:\n\n" + code + "\n");
+        int status = compile(new JmmCompiler(), config, System.out);
+        if (status != 0) {
+            System.exit(status);
+        }
+    }
 
-        SimpleAnalyzer simpleAnalyzer = new SimpleAnalyzer();
-        JmmSemanticsResult analyzerResult = simpleAnalyzer.semanticAnalysis(parserResult);
+    /**
+     * Compiles the input given in the config, which can either be a single file or a batch of files, and writes the
+     * metrics of the compilation if a report file was requested.
+     *
+     * @return the exit status of the compilation
+     */
+    public static int compile(JmmCompiler compiler, Map<String, String> config, PrintStream out) {
+        var report = config.containsKey("metricsReport") ? new MetricsReport() : null;
+
+        int status = compile(compiler, config, report, out);
+
+        if (report != null) {
+            var reportFile = new File(config.get("metricsReport"));
+
+            try {
+                report.write(reportFile);
+                out.println("Wrote " + reportFile);
+            } catch (IOException e) {
+                out.println("Could not write metrics report [-t] (\"" + reportFile + "\"): " + e.getMessage());
+                return 1;
+            }
+        }
 
-        TestUtils.noErrors(analyzerResult.getReports());
+        return status;
+    }
 
-        SpecsLogs.info("Symbol Table:\n\n" + analyzerResult.getSymbolTable().print());
-        SpecsLogs.info("AST:\n\n" + analyzerResult.getRootNode().toTree());
+    private static int compile(JmmCompiler compiler, Map<String, String> config, MetricsReport report,
+                               PrintStream out) {
+        String input = config.get("inputFile");
 
-        SimpleOptimizer simpleOptimizer = new SimpleOptimizer();
+        if (!BatchCompiler.isBatchInput(input)) {
+            // Read contents of input file
+            String code = SpecsIo.read(new File(input));
 
-        JmmSemanticsResult optimizedAstResult = simpleOptimizer.optimize(analyzerResult);
-        SpecsLogs.info("OPTIMIZED AST:\n\n" + optimizedAstResult.getRootNode().toTree());
+            var compiledClass = compiler.compile(code, config, out);
+            if (report != null) report.add(input, compiledClass.metrics());
 
-        OllirResult ollirResult = simpleOptimizer.toOllir(optimizedAstResult);
-        System.out.println("OLLIR RESULT:\n\n" + ollirResult.getOllirCode());
+            // Class files are always written, Jasmin code only when an output folder is given
+            if (config.containsKey("outputFolder") || compiledClass.fileExtension().equals(".class")) {
+                var folder = config.containsKey("outputFolder")
+                        ? SpecsIo.mkdir(config.get("outputFolder"))
+                        : new File(input).getAbsoluteFile().getParentFile();
 
-        OllirResult optimizedOllirResult = simpleOptimizer.optimize(ollirResult);
-        System.out.println("OPTIMIZED OLLIR RESULT:\n\n" + optimizedOllirResult.getOllirCode());
+                out.println("Wrote " + compiledClass.writeTo(folder));
+            }
 
-        JasminBackend jasminBackend = new JasminBackend();
+            return 0;
+        }
 
-        JasminResult jasminResult = jasminBackend.toJasmin(optimizedOllirResult);
-        System.out.println("JASMIN CODE: \n\n" + jasminResult.getJasminCode());
+        List<File> inputs;
+        try {
+            inputs = BatchCompiler.collectInputs(input);
+        } catch (IOException e) {
+            out.println("Could not read batch input [-i] (\"" + input + "\"): " + e.getMessage());
+            return 1;
+        }
 
-        if (config.getOrDefault("registerAllocation", "-1").equals("-1"))
-            return;
+        File outputFolder = null;
+        if (config.containsKey("outputFolder")) {
+            outputFolder = SpecsIo.mkdir(config.get("outputFolder"));
+        }
 
+        int numWorkers = Integer.parseInt(config.getOrDefault("workers", "0"));
+        if (numWorkers == 0) {
+            numWorkers = Runtime.getRuntime().availableProcessors();
+        }
 
-        System.out.println("VARIABLE MAPPING:\n");
+        var batchCompiler = new BatchCompiler(compiler, numWorkers);
+        return batchCompiler.compile(inputs, config, outputFolder, report, out) == 0 ? 0 : 1;
+    }
 
-        var optimizedClassUnit = optimizedOllirResult.getOllirClass();
-        for (Method method : optimizedClassUnit.getMethods()) {
-            var optimizedVarTable = method.getVarTable();
+    private static void runServer(Map<String, String> config) {
+        var server = new CompileServer(getPort(config.get("server")));
 
-            int maxRegister = 0;
-            var mapping = new StringBuilder();
+        try {
+            server.run();
+        } catch (IOException e) {
+            SpecsLogs.msgSevere("Compile server stopped: " + e.getMessage());
+            System.exit(1);
+        }
+    }
 
-            for (var entry : optimizedVarTable.entrySet()) {
-                var varName = entry.getKey();
-                var descriptor = entry.getValue();
+    private static int runClient(Map<String, String> config) {
+        var client = new CompileClient(getPort(config.get("client")));
+
+        String input = config.get("inputFile");
+        String absoluteInput = input.startsWith("@")
+                ? "@" + new File(input.substring(1)).getAbsolutePath()
+                : new File(input).getAbsolutePath();
+
+        List<String> args = new ArrayList<>(List.of(
+                "-i=" + absoluteInput,
+                "-r=" + config.get("registerAllocation"),
+                "-o=" + config.get("optimize"),
+                "-d=" + config.get("debug"),
+                "-j=" + config.get("workers"),
+                "-b=" + config.get("backend")
+        ));
+
+        if (config.containsKey("outputFolder")) {
+            args.add("-out=" + new File(config.get("outputFolder")).getAbsolutePath());
+        }
 
-                if (descriptor.getVirtualReg() > maxRegister) {
-                    maxRegister = descriptor.getVirtualReg();
-                }
+        if (config.containsKey("metricsReport")) {
+            args.add("-t=" + new File(config.get("metricsReport")).getAbsolutePath());
+        }
 
-                mapping.append("Variable ").append(varName).append(" assigned to register #").append(descriptor.getVirtualReg()).append("\n");
-            }
+        if (config.containsKey("cacheFolder")) {
+            args.add("-cache=" + new File(config.get("cacheFolder")).getAbsolutePath());
+            args.add("-cacheSize=" + config.get("cacheSize"));
+        }
 
-            System.out.println("Register allocation for method `" + method.getMethodName() + "`: " + (maxRegister + 1) + " registers are needed");
-            System.out.println(mapping);
+        try {
+            return client.send(args, System.out);
+        } catch (IOException e) {
+            SpecsLogs.msgSevere("Could not reach the compile server: " + e.getMessage());
+            return 1;
         }
+    }
 
+    private static int getPort(String value) {
+        return value.equals("true") ? CompileServer.DEFAULT_PORT : Integer.parseInt(value);
     }
 
-    private static Map<String, String> parseArgs(String[] args) {
+    public static Map<String, String> parseArgs(String[] args) {
         SpecsLogs.info("Executing with args: " + Arrays.toString(args));
 
         // Create config
@@ -112,6 +178,9 @@ public class Launcher {
         config.put("optimize", "false");
         config.put("registerAllocation", "-1");
         config.put("debug", "false");
+        config.put("workers", "0");
+        config.put("backend", JmmCompiler.BACKEND_JASMIN);
+        config.put("cacheSize", String.valueOf(CompileCache.DEFAULT_MAX_MEGABYTES));
 
         for (String arg : args) {
             String[] parts = arg.split("=", 2);
@@ -127,6 +196,14 @@ public class Launcher {
                 case "-r" -> config.put("registerAllocation", value);
                 case "-o" -> config.put("optimize", value);
                 case "-d" -> config.put("debug", value);
+                case "-s" -> config.put("server", value);
+                case "-c" -> config.put("client", value);
+                case "-j" -> config.put("workers", value);
+                case "-out" -> config.put("outputFolder", value);
+                case "-b" -> config.put("backend", value);
+                case "-t" -> config.put("metricsReport", value);
+                case "-cache" -> config.put("cacheFolder", value);
+                case "-cacheSize" -> config.put("cacheSize", value);
                 default -> SpecsLogs.warn("Unknown option [" + key + "] was provided, ignoring...");
             }
         }
@@ -135,24 +212,65 @@ public class Launcher {
     }
 
     public static void printUsage() {
-        SpecsLogs.info("Usage: jmm [-r=<num>] [-o] [-d] -i=<input file.jmm>");
+        SpecsLogs.info("Usage: jmm [-r=<num>] [-o] [-d] [-b=<jasmin|class>] [-t=<report.json>] [-cache=<folder> [-cacheSize=<MB>]] [-c[=<port>]] [-out=<output folder>] -i=<input file.jmm>");
+        SpecsLogs.info("       jmm [-r=<num>] [-o] [-d] [-b=<jasmin|class>] [-t=<report.json>] [-cache=<folder> [-cacheSize=<MB>]] [-c[=<port>]] [-j=<workers>] [-out=<output folder>] -i=<input folder | @list file>");
+        SpecsLogs.info("       jmm -s[=<port>]");
     }
 
     public static boolean validateConfig(Map<String, String> config) {
         boolean valid = true;
 
-        if (!config.containsKey("inputFile")) {
+        // The server receives its input files from the clients
+        boolean needsInputFile = !config.containsKey("server");
+
+        if (needsInputFile && !config.containsKey("inputFile")) {
             SpecsLogs.msgSevere("Input file [-i] was not provided");
             valid = false;
         }
 
         String filename = config.get("inputFile");
-        File file = new File(filename);
-        if (!file.exists()) {
+        if (filename != null && filename.startsWith("@")) {
+            filename = filename.substring(1);
+        }
+
+        if (needsInputFile && filename != null && !new File(filename).exists()) {
             SpecsLogs.msgSevere("Input file [-i] doesn't exist (\"" + filename + "\" was provided)");
             valid = false;
         }
 
+        for (String mode : List.of("server", "client")) {
+            String port = config.get(mode);
+            if (port == null || port.equals("true"))
+                continue;
+
+            try {
+                Integer.parseInt(port);
+            } catch (NumberFormatException e) {
+                SpecsLogs.msgSevere("Invalid port for " + mode + " mode (\"" + port + "\" was provided)");
+                valid = false;
+            }
+        }
+
+        String workers = config.get("workers");
+        try {
+            if (Integer.parseInt(workers) < 0) {
+                throw new NumberFormatException();
+            }
+        } catch (NumberFormatException e) {
+            SpecsLogs.msgSevere("Invalid number of workers [-j] (\"" + workers + "\" was provided)");
+            valid = false;
+        }
+
+        String cacheSize = config.get("cacheSize");
+        try {
+            if (Long.parseLong(cacheSize) <= 0) {
+                throw new NumberFormatException();
+            }
+        } catch (NumberFormatException e) {
+            SpecsLogs.msgSevere("Invalid compile cache size [-cacheSize] (\"" + cacheSize + "\" was provided)");
+            valid = false;
+        }
+
         String registerAllocation = config.get("registerAllocation");
         try {
             Integer.parseInt(registerAllocation);
@@ -173,6 +291,12 @@ public class Launcher {
             valid = false;
         }
 
+        String backend = config.get("backend");
+        if (!backend.equals(JmmCompiler.BACKEND_JASMIN) && !backend.equals(JmmCompiler.BACKEND_CLASS)) {
+            SpecsLogs.msgSevere("Unknown backend [-b] (\"" + backend + "\" was provided)");
+            valid = false;
+        }
+
         if (!valid) {
             printUsage();
             return false;
@@ -5,22 +5,44 @@ import org.specs.comp.ollir.Operand;
 import pt.up.fe.comp.jmm.analysis.JmmSemanticsResult;
 import pt.up.fe.comp.jmm.ollir.JmmOptimization;
 import pt.up.fe.comp.jmm.ollir.OllirResult;
+import pt.up.fe.comp.jmm.report.Report;
 import pt.up.fe.comp2023.analysis.context.table.JmmSymbolTableAdapter;
+import pt.up.fe.comp2023.ollir.OllirPrinter;
+import pt.up.fe.comp2023.ollir.builder.OllirBuilder;
+import pt.up.fe.comp2023.ollir.optimization.constants.ConstantPropagationOptimizer;
+import pt.up.fe.comp2023.ollir.optimization.deadcode.DeadCodeOptimizer;
 import pt.up.fe.comp2023.ollir.optimization.constants.visitor.ConstantsOptimizer;
+import pt.up.fe.comp2023.ollir.optimization.inlining.InliningOptimizer;
+import pt.up.fe.comp2023.ollir.optimization.loops.LoopInvariantOptimizer;
 import pt.up.fe.comp2023.ollir.optimization.registers.RegisterAllocationOptimizer;
-import pt.up.fe.comp2023.ollir.visitor.OllirVisitor;
+import pt.up.fe.comp2023.ollir.optimization.valuenumbering.ValueNumberingOptimizer;
 
 import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 
 public class SimpleOptimizer implements JmmOptimization {
 
+    private final OllirPrinter ollirPrinter = new OllirPrinter();
+
+    /**
+     * Builds the OLLIR class with {@link #toClassUnit(JmmSemanticsResult)} and prints it, since the result can only be
+     * made from OLLIR code.
+     */
     @Override
     public OllirResult toOllir(JmmSemanticsResult semanticsResult) {
+        var ollirCode = ollirPrinter.print(toClassUnit(semanticsResult));
+        return new OllirResult(semanticsResult, ollirCode, Collections.emptyList());
+    }
+
+    /**
+     * Builds the OLLIR class straight from the AST, without generating and parsing OLLIR code.
+     */
+    public ClassUnit toClassUnit(JmmSemanticsResult semanticsResult) {
         var adapter = (JmmSymbolTableAdapter) semanticsResult.getSymbolTable();
-        var visitor = new OllirVisitor(adapter.getJmmSymbolTable());
+        var builder = new OllirBuilder(adapter.getJmmSymbolTable());
 
-        var ollirGeneratedCode = visitor.visit(semanticsResult.getRootNode());
-        return new OllirResult(semanticsResult, ollirGeneratedCode, Collections.emptyList());
+        return builder.build(semanticsResult.getRootNode());
     }
 
     @Override
@@ -40,9 +62,30 @@ public class SimpleOptimizer implements JmmOptimization {
         return semanticsResult;
     }
 
+    /**
+     * Optimizes the class of the result in place, like {@link #optimize(ClassUnit, Map)}. The OLLIR code of the result
+     * is still the code before the optimizations.
+     */
     @Override
     public OllirResult optimize(OllirResult ollirResult) {
+        var reports = optimize(ollirResult.getOllirClass(), ollirResult.getConfig());
+        ollirResult.getReports().addAll(reports);
+
+        return ollirResult;
+    }
+
+    public List<Report> optimize(ClassUnit classUnit, Map<String, String> config) {
+        if (config.getOrDefault("optimize", "false").equals("true")) {
+            new InliningOptimizer().optimize(classUnit);
+            new ConstantPropagationOptimizer().optimize(classUnit);
+            // Hoisting gathers reads of the same field from the header and the body of a loop into its preheader, where
+            // value numbering can then merge them
+            new LoopInvariantOptimizer().optimize(classUnit);
+            new ValueNumberingOptimizer(true).optimize(classUnit);
+            new DeadCodeOptimizer().optimize(classUnit);
+        }
+
         var optimizer = new RegisterAllocationOptimizer();
-        return optimizer.optimize(ollirResult);
+        return optimizer.optimize(classUnit, config);
     }
 }
@@ -2,6 +2,7 @@ package pt.up.fe.comp2023;
 
 import org.antlr.v4.runtime.*;
 import org.antlr.v4.runtime.atn.ATNConfigSet;
+import org.antlr.v4.runtime.atn.PredictionMode;
 import org.antlr.v4.runtime.dfa.DFA;
 import org.antlr.v4.runtime.misc.ParseCancellationException;
 import pt.up.fe.comp.jmm.analysis.table.SymbolTable;
@@ -14,6 +15,7 @@ import pt.up.fe.comp.jmm.report.ReportType;
 import pt.up.fe.comp.jmm.report.Stage;
 import pt.up.fe.comp2023.JavammParser;
 import pt.up.fe.comp2023.JavammLexer;
+import pt.up.fe.comp2023.metrics.CompileMetrics;
 import pt.up.fe.specs.util.SpecsIo;
 import pt.up.fe.specs.util.SpecsLogs;
 
@@ -42,30 +44,68 @@ public class SimpleParser implements JmmParser {
         return "program";
     }
 
+    /**
+     * Parses with the faster SLL prediction first, bailing out at the first syntax error. Only programs with syntax
+     * errors, or the rare ones that need full LL prediction, are parsed again with full LL and the default error
+     * recovery, so the result and the error reports are the same as when parsing with LL alone.
+     */
     @Override
     public JmmParserResult parse(String jmmCode, String startingRule, Map<String, String> config) {
 
         try {
-            // Convert code string into a character stream
-            var input = new ANTLRInputStream(jmmCode);
-            // Transform characters into tokens using the lexer
-            var lex = new JavammLexer(input);
-            // Wrap lexer around a token stream
-            var tokens = new CommonTokenStream(lex);
-            // Transforms tokens into a parse tree
-            var parser = new JavammParser(tokens);
+            try {
+                return parse(jmmCode, startingRule, config, PredictionMode.SLL);
+            } catch (RuntimeException e) {
+                if (!isParseCancellation(e))
+                    throw e;
+            }
 
-            // Convert ANTLR CST to JmmNode AST
-            return AntlrParser.parse(lex, parser, startingRule)
-                    // If there were no errors and a root node was generated, create a JmmParserResult with the node
-                    .map(root -> new JmmParserResult(root, Collections.emptyList(), config))
-                    // If there were errors, create an error JmmParserResult without root node
-                    .orElseGet(() -> JmmParserResult.newError(new Report(ReportType.ERROR, Stage.SYNTATIC, -1,
-                            "There were " + parser.getNumberOfSyntaxErrors() + " syntax errors during parsing, terminating")));
+            CompileMetrics.increment(null, "llFallbacks", 1);
+            return parse(jmmCode, startingRule, config, PredictionMode.LL);
 
         } catch (Exception e) {
             // There was an uncaught exception during parsing, create an error JmmParserResult without root node
             return JmmParserResult.newError(Report.newError(Stage.SYNTATIC, -1, -1, "Exception during parsing", e));
         }
     }
+
+    private JmmParserResult parse(String jmmCode, String startingRule, Map<String, String> config,
+                                  PredictionMode predictionMode) {
+        // Convert code string into a character stream
+        var input = new ANTLRInputStream(jmmCode);
+        // Transform characters into tokens using the lexer
+        var lex = new JavammLexer(input);
+        // Wrap lexer around a token stream
+        var tokens = new CommonTokenStream(lex);
+        // Transforms tokens into a parse tree
+        var parser = new JavammParser(tokens);
+
+        parser.getInterpreter().setPredictionMode(predictionMode);
+        if (predictionMode == PredictionMode.SLL) {
+            // Errors are reported by the LL parse that follows
+            parser.removeErrorListeners();
+            parser.setErrorHandler(new BailErrorStrategy());
+        }
+
+        // Convert ANTLR CST to JmmNode AST
+        return AntlrParser.parse(lex, parser, startingRule)
+                // If there were no errors and a root node was generated, create a JmmParserResult with the node
+                .map(root -> new JmmParserResult(root, Collections.emptyList(), config))
+                // If there were errors, create an error JmmParserResult without root node
+                .orElseGet(() -> JmmParserResult.newError(new Report(ReportType.ERROR, Stage.SYNTATIC, -1,
+                        "There were " + parser.getNumberOfSyntaxErrors() + " syntax errors during parsing, terminating")));
+    }
+
+    /**
+     * @return whether the exception comes from the parser or the lexer giving up on a syntax error, which the
+     * reflective call to the starting rule wraps
+     */
+    private static boolean isParseCancellation(Throwable exception) {
+        for (var cause = exception; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ParseCancellationException)
+                return true;
+        }
+
+        return false;
+    }
 }
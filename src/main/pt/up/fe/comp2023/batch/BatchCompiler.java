@@ -0,0 +1,138 @@
+package pt.up.fe.comp2023.batch;
+
+import pt.up.fe.comp2023.JmmCompiler;
+import pt.up.fe.comp2023.metrics.CompileMetrics;
+import pt.up.fe.comp2023.metrics.MetricsReport;
+import pt.up.fe.specs.util.SpecsIo;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+/**
+ * Compiles many Java-- sources concurrently on a bounded pool of workers.
+ * <p>
+ * Every file goes through its own run of the pipeline, so each one gets its own visitors, variable and label
+ * generators, and nothing but the (stateless) stages is shared between workers.
+ */
+public class BatchCompiler {
+
+    public static final String SOURCE_EXTENSION = ".jmm";
+
+    private final JmmCompiler compiler;
+    private final int numWorkers;
+
+    public BatchCompiler(JmmCompiler compiler, int numWorkers) {
+        this.compiler = compiler;
+        this.numWorkers = numWorkers;
+    }
+
+    public static boolean isBatchInput(String input) {
+        return input.startsWith("@") || new File(input).isDirectory();
+    }
+
+    /**
+     * @param input either a directory, whose {@code .jmm} files are compiled, or a list file prefixed with {@code @},
+     *              with one source path per line (relative paths are resolved against the list file folder)
+     */
+    public static List<File> collectInputs(String input) throws IOException {
+        if (input.startsWith("@")) {
+            var listFile = new File(input.substring(1));
+            var baseFolder = listFile.getAbsoluteFile().getParentFile();
+
+            List<File> inputs = new ArrayList<>();
+            for (var line : Files.readAllLines(listFile.toPath())) {
+                var path = line.strip();
+                if (path.isEmpty() || path.startsWith("#"))
+                    continue;
+
+                var file = new File(path);
+                inputs.add(file.isAbsolute() ? file : new File(baseFolder, path));
+            }
+
+            return inputs;
+        }
+
+        try (Stream<Path> paths = Files.walk(Path.of(input))) {
+            return paths.filter(Files::isRegularFile)
+                    .filter(path -> path.getFileName().toString().endsWith(SOURCE_EXTENSION))
+                    .sorted()
+                    .map(Path::toFile)
+                    .toList();
+        }
+    }
+
+    /**
+     * @param outputFolder folder where the compiled files are written, or null to write each one next to its source
+     * @param report       report that receives the metrics of each compiled file, in input order, or null
+     * @return the number of files that failed to compile
+     */
+    public int compile(List<File> inputs, Map<String, String> config, File outputFolder, MetricsReport report,
+                       PrintStream out) {
+        boolean debug = config.getOrDefault("debug", "false").equals("true");
+
+        // The parser library caches the reflective lookup of the starting rule in a plain HashMap, so fill it from
+        // this thread before the workers start reading it concurrently
+        compiler.warmUp();
+
+        var workers = Executors.newFixedThreadPool(numWorkers);
+        try {
+            List<Future<CompiledFile>> results = new ArrayList<>(inputs.size());
+            for (var input : inputs) {
+                results.add(workers.submit(() -> compileFile(input, config, outputFolder, debug)));
+            }
+
+            int numFailed = 0;
+            for (int i = 0; i < inputs.size(); i++) {
+                try {
+                    var compiledFile = results.get(i).get();
+                    out.print(compiledFile.log());
+
+                    if (report != null) report.add(inputs.get(i).getPath(), compiledFile.metrics());
+                } catch (ExecutionException e) {
+                    numFailed++;
+                    out.println("Failed to compile " + inputs.get(i) + ": " + e.getCause().getMessage());
+                }
+            }
+
+            out.println("Compiled " + (inputs.size() - numFailed) + " of " + inputs.size() + " files");
+            return numFailed;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return inputs.size();
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    private record CompiledFile(String log, CompileMetrics metrics) {
+    }
+
+    private CompiledFile compileFile(File input, Map<String, String> config, File outputFolder, boolean debug) {
+        var log = new ByteArrayOutputStream();
+        var logStream = debug
+                ? new PrintStream(log, true, StandardCharsets.UTF_8)
+                : new PrintStream(OutputStream.nullOutputStream());
+
+        var code = SpecsIo.read(input);
+        var compiledClass = compiler.compile(code, config, logStream);
+
+        var folder = outputFolder != null ? outputFolder : input.getAbsoluteFile().getParentFile();
+        var outputFile = compiledClass.writeTo(folder);
+
+        var message = log.toString(StandardCharsets.UTF_8) + "Compiled " + input + " -> " + outputFile + "\n";
+        return new CompiledFile(message, compiledClass.metrics());
+    }
+}
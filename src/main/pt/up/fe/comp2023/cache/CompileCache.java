@@ -0,0 +1,253 @@
+package pt.up.fe.comp2023.cache;
+
+import pt.up.fe.comp2023.JmmCompiler;
+import pt.up.fe.specs.util.SpecsLogs;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * On-disk cache of compiled classes, keyed by a hash of everything the output depends on: the source, the options that
+ * change the generated code and the compiler itself, with the libraries it runs with.
+ * <p>
+ * Entries are written to a temporary file and then moved into place, so concurrent compilations, even from different
+ * processes, can share a cache folder and never read a partial entry. Reading an entry marks it as recently used, and
+ * the least recently used entries are evicted whenever the folder grows past its size limit.
+ * <p>
+ * The size of the folder is only listed when the first entry is stored, and then kept as a running total of the
+ * entries stored since, so a single instance should be shared by all the compilations that use the folder. Entries
+ * other processes store are only counted when the folder is listed again, once the total goes past the limit.
+ */
+public class CompileCache {
+
+    public static final long DEFAULT_MAX_MEGABYTES = 64;
+
+    /**
+     * The options that change the generated code
+     */
+    private static final List<String> OUTPUT_OPTIONS = List.of("optimize", "registerAllocation", "backend");
+
+    private static final String ENTRY_EXTENSION = ".entry";
+
+    public record Entry(String className, String fileExtension, byte[] contents) {
+    }
+
+    private final Path folder;
+    private final long maxBytes;
+
+    /**
+     * The size of the entries in the folder, or -1 until the folder is first listed
+     */
+    private long totalBytes = -1;
+
+    public CompileCache(Path folder, long maxBytes) {
+        this.folder = folder;
+        this.maxBytes = maxBytes;
+    }
+
+    public String getKey(String code, Map<String, String> config) {
+        var digest = newDigest();
+        digest.update(CompilerFingerprint.VALUE);
+
+        for (var option : OUTPUT_OPTIONS) {
+            var value = option + "=" + config.getOrDefault(option, "") + "\n";
+            digest.update(value.getBytes(StandardCharsets.UTF_8));
+        }
+
+        digest.update(code.getBytes(StandardCharsets.UTF_8));
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * @return the entry stored with the key, if there is one that can be read
+     */
+    public Optional<Entry> get(String key) {
+        var path = getPath(key);
+
+        try (var in = new DataInputStream(Files.newInputStream(path))) {
+            var entry = new Entry(in.readUTF(), in.readUTF(), in.readAllBytes());
+            Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+
+            return Optional.of(entry);
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        } catch (IOException e) {
+            SpecsLogs.warn("Could not read compile cache entry " + path + ": " + e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    public void put(String key, Entry entry) {
+        try {
+            Files.createDirectories(folder);
+
+            var bytes = new ByteArrayOutputStream();
+            try (var out = new DataOutputStream(bytes)) {
+                out.writeUTF(entry.className());
+                out.writeUTF(entry.fileExtension());
+                out.write(entry.contents());
+            }
+
+            var temporaryFile = Files.createTempFile(folder, key, ".tmp");
+            try {
+                Files.write(temporaryFile, bytes.toByteArray());
+                move(temporaryFile, getPath(key));
+            } finally {
+                Files.deleteIfExists(temporaryFile);
+            }
+
+            addStored(bytes.size());
+        } catch (IOException e) {
+            SpecsLogs.warn("Could not write compile cache entry for " + entry.className() + ": " + e.getMessage());
+        }
+    }
+
+    private Path getPath(String key) {
+        return folder.resolve(key + ENTRY_EXTENSION);
+    }
+
+    private static void move(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private record StoredEntry(Path path, long size, long lastUsed) {
+    }
+
+    private synchronized void addStored(long size) throws IOException {
+        // The first entry stored lists the folder, which counts the entry as well
+        if (totalBytes < 0) {
+            evict();
+            return;
+        }
+
+        totalBytes += size;
+        if (totalBytes > maxBytes)
+            evict();
+    }
+
+    /**
+     * Lists the folder and deletes the least recently used entries until the cache fits its size limit. Entries that
+     * other compilations delete in the meantime are skipped.
+     */
+    private synchronized void evict() throws IOException {
+        var entries = new ArrayList<StoredEntry>();
+        long totalSize = 0;
+
+        List<Path> paths;
+        try (Stream<Path> files = Files.list(folder)) {
+            paths = files.filter(path -> path.getFileName().toString().endsWith(ENTRY_EXTENSION)).toList();
+        }
+
+        for (var path : paths) {
+            try {
+                var entry = new StoredEntry(path, Files.size(path), Files.getLastModifiedTime(path).toMillis());
+                entries.add(entry);
+                totalSize += entry.size();
+            } catch (NoSuchFileException e) {
+                // Already evicted
+            }
+        }
+
+        entries.sort(Comparator.comparingLong(StoredEntry::lastUsed));
+
+        for (var entry : entries) {
+            if (totalSize <= maxBytes)
+                break;
+
+            Files.deleteIfExists(entry.path());
+            totalSize -= entry.size();
+        }
+
+        totalBytes = totalSize;
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Hash of the code the compiler runs: its own jar or folder of classes and every other entry of the classpath,
+     * which holds the OLLIR, Jasmin and utility libraries, so that entries made by other builds of the compiler or with
+     * other versions of the libraries are never used. Computed once, when the cache is first used.
+     */
+    private static class CompilerFingerprint {
+
+        private static final byte[] VALUE = compute();
+
+        private static byte[] compute() {
+            var digest = newDigest();
+
+            try {
+                var locations = new LinkedHashSet<Path>();
+                locations.add(Path.of(JmmCompiler.class.getProtectionDomain().getCodeSource().getLocation().toURI()));
+
+                for (var entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+                    if (!entry.isEmpty())
+                        locations.add(Path.of(entry).toAbsolutePath().normalize());
+                }
+
+                for (var location : locations) {
+                    update(digest, location);
+                }
+            } catch (IOException | URISyntaxException | SecurityException e) {
+                throw new IllegalStateException("Could not read the code of the compiler", e);
+            }
+
+            return digest.digest();
+        }
+
+        /**
+         * Hashes the name of the classpath entry and its contents: the bytes of a jar, or the files of a folder of
+         * classes. Entries that do not exist are only hashed by name.
+         */
+        private static void update(MessageDigest digest, Path location) throws IOException {
+            digest.update(String.valueOf(location.getFileName()).getBytes(StandardCharsets.UTF_8));
+
+            if (Files.isRegularFile(location)) {
+                digest.update(Files.readAllBytes(location));
+                return;
+            }
+
+            if (!Files.isDirectory(location))
+                return;
+
+            try (Stream<Path> paths = Files.walk(location)) {
+                var files = paths.filter(Files::isRegularFile).sorted().toList();
+
+                for (var file : files) {
+                    digest.update(location.relativize(file).toString().getBytes(StandardCharsets.UTF_8));
+                    digest.update(Files.readAllBytes(file));
+                }
+            }
+        }
+    }
+}
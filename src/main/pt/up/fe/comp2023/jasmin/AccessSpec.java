@@ -1,5 +1,15 @@
 package pt.up.fe.comp2023.jasmin;
 
 public enum AccessSpec {
-    PUBLIC, PRIVATE, PROTECTED, STATIC, FINAL;
+    PUBLIC(0x0001), PRIVATE(0x0002), PROTECTED(0x0004), STATIC(0x0008), FINAL(0x0010);
+
+    private final int flag;
+
+    AccessSpec(int flag) {
+        this.flag = flag;
+    }
+
+    public int getFlag() {
+        return flag;
+    }
 }
@@ -127,95 +127,118 @@ public class InstructionGenerator {
         return ".end method";
     }
 
-    public String invoke(String callType, String path, String name, List<String> argDescriptors, String returnTypeDescriptor) {
+    public JvmInstruction invoke(String callType, String path, String name, List<String> argDescriptors, String returnTypeDescriptor) {
         StringBuilder args = new StringBuilder();
         for (String argDescriptor : argDescriptors) {
             args.append(argDescriptor);
         }
-        return '\t' + callType + ' ' + path + '/' + name + '(' + args + ')' + returnTypeDescriptor + '\n';
+        return new JvmInstruction.MemberRef(JvmOpcode.of(callType), path, name, "(" + args + ")" + returnTypeDescriptor);
     }
 
-    public String _new(String returnTypeDescriptor) {
-        return "\tnew " + returnTypeDescriptor + '\n';
+    public JvmInstruction _new(String returnTypeDescriptor) {
+        return new JvmInstruction.New(returnTypeDescriptor);
     }
 
-    public String ldc(int literal) {
-        return '\t' + "ldc " + literal + '\n';
+    public JvmInstruction ldc(int literal) {
+        return new JvmInstruction.Ldc(literal);
     }
 
-    public String newArray(String type) {
-        return "\tnewarray " + type + '\n';
+    public JvmInstruction newArray(String type) {
+        return new JvmInstruction.NewArray(type);
     }
 
-    public String arrayLength() {
-        return "\tarraylength \n";
+    public JvmInstruction arrayLength() {
+        return new JvmInstruction.Simple(JvmOpcode.ARRAYLENGTH);
     }
 
-    public String sipush(int value) {
-        return "\tsipush " + value + "\n";
+    public JvmInstruction arrayLoad(String jasminType) {
+        return new JvmInstruction.Simple(JvmOpcode.of(jasminType + "aload"));
     }
 
-    public String bipush(int value) {
-        return "\tbipush " + value + "\n";
+    public JvmInstruction arrayStore(String jasminType) {
+        return new JvmInstruction.Simple(JvmOpcode.of(jasminType + "astore"));
     }
 
-    public String iconst(int value) {
+    public JvmInstruction sipush(int value) {
+        return new JvmInstruction.Push(JvmOpcode.SIPUSH, value);
+    }
+
+    public JvmInstruction bipush(int value) {
+        return new JvmInstruction.Push(JvmOpcode.BIPUSH, value);
+    }
+
+    public JvmInstruction iconst(int value) {
         var absValue = Math.abs(value);
-        return "\ticonst_%s%d\n".formatted(value < 0 ? "m" : "", absValue);
+        return new JvmInstruction.Simple(JvmOpcode.of("iconst_%s%d".formatted(value < 0 ? "m" : "", absValue)));
     }
 
-    public String iinc(int value, int register) {
-        return "\tiinc " + register + " " + value + "\n";
+    public JvmInstruction iinc(int value, int register) {
+        return new JvmInstruction.Iinc(register, value);
     }
 
-    public String load(String jasminType, int register) {
+    public JvmInstruction load(String jasminType, int register) {
         if (register <= 3) {
-            return "\t" + jasminType + "load_" + register + "\n";
+            return new JvmInstruction.Simple(JvmOpcode.of(jasminType + "load_" + register));
         }
-        return '\t' + jasminType + "load " + register + '\n';
+        return new JvmInstruction.Local(JvmOpcode.of(jasminType + "load"), register);
     }
 
-    public String store(String jasminType, int register) {
+    public JvmInstruction store(String jasminType, int register) {
         if (register <= 3) {
-            return "\t" + jasminType + "store_" + register + "\n";
+            return new JvmInstruction.Simple(JvmOpcode.of(jasminType + "store_" + register));
         }
-        return '\t' + jasminType + "store " + register + '\n';
+        return new JvmInstruction.Local(JvmOpcode.of(jasminType + "store"), register);
     }
 
-    public String operation(String jasminType, String operationType) {
-        return '\t' + jasminType + operationType + '\n';
+    public JvmInstruction operation(String jasminType, String operationType) {
+        return new JvmInstruction.Simple(JvmOpcode.of(jasminType + operationType));
     }
 
-    public String putfield(String path, String name, String fieldType) {
-        return '\t' + "putfield " + path + '/' + name + ' ' + fieldType + '\n';
+    public JvmInstruction putfield(String path, String name, String fieldType) {
+        return new JvmInstruction.MemberRef(JvmOpcode.PUTFIELD, path, name, fieldType);
     }
 
-    public String getfield(String path, String name, String fieldType) {
-        return '\t' + "getfield " + path + '/' + name + ' ' + fieldType + '\n';
+    public JvmInstruction getfield(String path, String name, String fieldType) {
+        return new JvmInstruction.MemberRef(JvmOpcode.GETFIELD, path, name, fieldType);
     }
 
-    public String label(String label) {
-        return '\n' + label + ":\n";
+    public JvmInstruction label(String label) {
+        return new JvmInstruction.Label(label);
     }
 
-    public String unconditionalGoto(String label) {
-        return "\tgoto " + label + "\n";
+    public JvmInstruction unconditionalGoto(String label) {
+        return new JvmInstruction.Jump(JvmOpcode.GOTO, label);
     }
 
-    public String conditionalGoto(String condition, String label) {
-        return '\t' + condition + ' ' + label + '\n';
+    public JvmInstruction conditionalGoto(String condition, String label) {
+        return new JvmInstruction.Jump(JvmOpcode.of(condition), label);
     }
 
-    public String pop() {
-        return "\tpop\n";
+    public JvmInstruction pop() {
+        return new JvmInstruction.Simple(JvmOpcode.POP);
     }
 
-    public String _return(String jasminType) {
-        return '\t' + jasminType + "return\n";
+    public JvmInstruction _return(String jasminType) {
+        return new JvmInstruction.Simple(JvmOpcode.of(jasminType + "return"));
     }
 
-    public String ifne(String label) {
-        return "\tifne " + label + '\n';
+    public JvmInstruction ifne(String label) {
+        return new JvmInstruction.Jump(JvmOpcode.IFNE, label);
+    }
+
+    /**
+     * Formats a method body as Jasmin, one instruction per line.
+     */
+    public String code(List<JvmInstruction> instructions) {
+        StringBuilder code = new StringBuilder();
+        for (JvmInstruction instruction : instructions) {
+            if (instruction instanceof JvmInstruction.Label) {
+                code.append('\n').append(instruction.toJasmin()).append('\n');
+            } else {
+                code.append('\t').append(instruction.toJasmin()).append('\n');
+            }
+        }
+        return code.toString();
     }
 
 }
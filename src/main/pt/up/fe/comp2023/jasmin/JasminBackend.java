@@ -5,15 +5,20 @@ import org.specs.comp.ollir.*;
 import pt.up.fe.comp.jmm.jasmin.JasminResult;
 import pt.up.fe.comp.jmm.ollir.OllirResult;
 
+import java.util.ArrayList;
+import java.util.Map;
+
 import static pt.up.fe.comp2023.jasmin.InstructionGenerator.getClassPath;
 
 public class JasminBackend implements pt.up.fe.comp.jmm.jasmin.JasminBackend {
 
     @Override
     public JasminResult toJasmin(OllirResult ollirResult) {
-        ClassUnit classUnit = ollirResult.getOllirClass();
-        String normalizedSuperClass = classUnit.getSuperClass() == null ?
-                "java/lang/Object" : getClassPath(classUnit, new ClassType(ElementType.CLASS, classUnit.getSuperClass()));
+        return toJasmin(ollirResult.getOllirClass(), ollirResult.getConfig());
+    }
+
+    public JasminResult toJasmin(ClassUnit classUnit, Map<String, String> config) {
+        String normalizedSuperClass = getSuperClassPath(classUnit);
 
         JasminBuilder jasminBuilder = new JasminBuilder(classUnit);
 
@@ -33,6 +38,11 @@ public class JasminBackend implements pt.up.fe.comp.jmm.jasmin.JasminBackend {
             }
         }
 
-        return new JasminResult(jasminBuilder.build(), ollirResult.getConfig());
+        return new JasminResult(classUnit.getClassName(), jasminBuilder.build(), new ArrayList<>(), config);
+    }
+
+    public static String getSuperClassPath(ClassUnit classUnit) {
+        return classUnit.getSuperClass() == null ?
+                "java/lang/Object" : getClassPath(classUnit, new ClassType(ElementType.CLASS, classUnit.getSuperClass()));
     }
 }
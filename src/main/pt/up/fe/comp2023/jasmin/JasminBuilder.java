@@ -1,6 +1,7 @@
 package pt.up.fe.comp2023.jasmin;
 
 import org.specs.comp.ollir.*;
+import pt.up.fe.comp2023.metrics.CompileMetrics;
 
 import java.util.*;
 
@@ -35,22 +36,7 @@ public class JasminBuilder {
     }
 
     public JasminBuilder field(Field field) {
-        List<AccessSpec> accessSpecs = new ArrayList<>();
-
-        switch (field.getFieldAccessModifier()) {
-            case PUBLIC -> accessSpecs.add(AccessSpec.PUBLIC);
-            case PRIVATE -> accessSpecs.add(AccessSpec.PRIVATE);
-            case PROTECTED -> accessSpecs.add(AccessSpec.PROTECTED);
-            case DEFAULT -> {}
-        }
-
-        if (field.isStaticField()) {
-            accessSpecs.add(AccessSpec.STATIC);
-        }
-
-        if (field.isFinalField()) {
-            accessSpecs.add(AccessSpec.FINAL);
-        }
+        List<AccessSpec> accessSpecs = getAccessSpecs(field);
 
         Integer initialValue = field.isInitialized() ?
                 field.getInitialValue() : null;
@@ -66,20 +52,34 @@ public class JasminBuilder {
 
 
     public JasminBuilder method(Method method) {
-        JasminMethodBuilder methodBuilder = new JasminMethodBuilder(method);
-        
-        for (Instruction instruction : method.getInstructions()) {
-            methodBuilder.instruction(instruction);
-
-            if ((instruction instanceof CallInstruction) && (((CallInstruction) instruction).getReturnType().getTypeOfElement() != ElementType.VOID)) {
-                methodBuilder.pop();
-            }
-        }
+        String methodCode = CompileMetrics.measure(method.getMethodName(), "jasmin",
+                () -> new JasminMethodBuilder(method).body().build(), String::length);
 
-        code.append(methodBuilder.build());
+        code.append(methodCode);
         return this;
     }
 
+    public static List<AccessSpec> getAccessSpecs(Field field) {
+        List<AccessSpec> accessSpecs = new ArrayList<>();
+
+        switch (field.getFieldAccessModifier()) {
+            case PUBLIC -> accessSpecs.add(AccessSpec.PUBLIC);
+            case PRIVATE -> accessSpecs.add(AccessSpec.PRIVATE);
+            case PROTECTED -> accessSpecs.add(AccessSpec.PROTECTED);
+            case DEFAULT -> {}
+        }
+
+        if (field.isStaticField()) {
+            accessSpecs.add(AccessSpec.STATIC);
+        }
+
+        if (field.isFinalField()) {
+            accessSpecs.add(AccessSpec.FINAL);
+        }
+
+        return accessSpecs;
+    }
+
     public String build() {
         return code.toString();
     }
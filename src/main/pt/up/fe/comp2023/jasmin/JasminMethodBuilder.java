@@ -3,15 +3,17 @@ package pt.up.fe.comp2023.jasmin;
 import org.specs.comp.ollir.*;
 import pt.up.fe.comp2023.jasmin.exception.OllirIsWeirdException;
 import pt.up.fe.comp2023.jasmin.utils.ElementUtils;
+import pt.up.fe.comp2023.metrics.CompileMetrics;
 import pt.up.fe.comp2023.utils.Pair;
 
 import java.util.*;
 
 public class JasminMethodBuilder {
 
-    private final StringBuilder methodCode = new StringBuilder();
+    private final List<JvmInstruction> methodCode = new ArrayList<>();
     private final InstructionGenerator generator = new InstructionGenerator();
     private final StackLimiter stackLimiter = new StackLimiter();
+    private final PeepholeOptimizer peepholeOptimizer = new PeepholeOptimizer();
 
     private final Method method;
 
@@ -34,16 +36,15 @@ public class JasminMethodBuilder {
 
     private JasminMethodBuilder loadIntValueToStack(int value) {
         if (value >= -1 && value <= 5) {
-            methodCode.append(generator.iconst(value));
+            methodCode.add(generator.iconst(value));
         } else if (isByteSized(value)) {
-            methodCode.append(generator.bipush(value));
+            methodCode.add(generator.bipush(value));
         } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
-            methodCode.append(generator.sipush(value));
+            methodCode.add(generator.sipush(value));
         } else {
-            methodCode.append(generator.ldc(value));
+            methodCode.add(generator.ldc(value));
         }
 
-        stackLimiter.updateStack(1);
         return this;
     }
 
@@ -74,8 +75,7 @@ public class JasminMethodBuilder {
         }
 
         var variant = InstructionGenerator.getInstructionVariant(operand.getType());
-        methodCode.append(generator.load(variant, getVirtualReg(operand)));
-        stackLimiter.updateStack(1);
+        methodCode.add(generator.load(variant, getVirtualReg(operand)));
         return this;
     }
 
@@ -90,8 +90,7 @@ public class JasminMethodBuilder {
 
         loadElementToStack(indexes.get(0));
 
-        methodCode.append("\tiaload\n");
-        stackLimiter.updateStack(-1); // Pops 2 adds 1
+        methodCode.add(generator.arrayLoad("i"));
         return this;
     }
 
@@ -102,8 +101,7 @@ public class JasminMethodBuilder {
         this.instruction(result);
 
         var variant = InstructionGenerator.getInstructionVariant(operand.getType());
-        methodCode.append(generator.store(variant, getVirtualReg(operand)));
-        stackLimiter.updateStack(-1);
+        methodCode.add(generator.store(variant, getVirtualReg(operand)));
 
         return this;
     }
@@ -120,13 +118,11 @@ public class JasminMethodBuilder {
 
         this.instruction(result);
 
-        methodCode.append("\tiastore\n");
-        stackLimiter.updateStack(-3); // Pops 3
+        methodCode.add(generator.arrayStore("i"));
         return this;
     }
 
-
-    private String startMethod() {
+    public List<AccessSpec> getAccessSpecs() {
         List<AccessSpec> accessSpecs = new ArrayList<>();
 
         switch (method.getMethodAccessModifier()) {
@@ -144,17 +140,27 @@ public class JasminMethodBuilder {
             accessSpecs.add(AccessSpec.FINAL);
         }
 
-        String methodName = method.isConstructMethod() ? "<init>" : method.getMethodName();
+        return accessSpecs;
+    }
+
+    public String getMethodName() {
+        return method.isConstructMethod() ? "<init>" : method.getMethodName();
+    }
 
-        List<String> argDescriptors = method.getParams()
+    public List<String> getArgDescriptors() {
+        return method.getParams()
                 .stream()
                 .map(Element::getType)
                 .map(type -> InstructionGenerator.getDescriptor(method.getOllirClass(), type))
                 .toList();
+    }
 
-        String returnTypeDescriptor = InstructionGenerator.getDescriptor(method.getOllirClass(), method.getReturnType());
+    public String getReturnTypeDescriptor() {
+        return InstructionGenerator.getDescriptor(method.getOllirClass(), method.getReturnType());
+    }
 
-        String headerCode = generator.startMethod(accessSpecs, methodName, argDescriptors, returnTypeDescriptor);
+    private String startMethod() {
+        String headerCode = generator.startMethod(getAccessSpecs(), getMethodName(), getArgDescriptors(), getReturnTypeDescriptor());
         return headerCode + '\n';
     }
 
@@ -173,7 +179,7 @@ public class JasminMethodBuilder {
     public JasminMethodBuilder instruction(Instruction instruction) {
         var labels = method.getLabels(instruction);
         for (var label : labels) {
-            methodCode.append(generator.label(label));
+            methodCode.add(generator.label(label));
         }
 
         switch (instruction.getInstType()) {
@@ -223,11 +229,7 @@ public class JasminMethodBuilder {
 
                 String returnDescriptor = InstructionGenerator.getDescriptor(ollirClass, returnType);
 
-                methodCode.append(generator.invoke(callType.toString(), classPath, methodName, argDescriptors, returnDescriptor));
-
-                stackLimiter.updateStack(-argDescriptors.size());
-                if (callType != CallType.invokestatic) stackLimiter.updateStack(-1);
-                if (returnType.getTypeOfElement() != ElementType.VOID) stackLimiter.updateStack(1);
+                methodCode.add(generator.invoke(callType.toString(), classPath, methodName, argDescriptors, returnDescriptor));
             }
 
             case NEW -> {
@@ -235,18 +237,17 @@ public class JasminMethodBuilder {
                     var arraySize = instruction.getListOfOperands().get(0);
                     loadElementToStack(arraySize);
 
-                    methodCode.append(generator.newArray("int"));
+                    methodCode.add(generator.newArray("int"));
                     break;
                 }
 
                 String classPath = InstructionGenerator.getClassPath(ollirClass, callee.getType());
-                methodCode.append(generator._new(classPath));
-                stackLimiter.updateStack(1);
+                methodCode.add(generator._new(classPath));
             }
 
             case arraylength -> {
                 loadElementToStack(callee);
-                methodCode.append(generator.arrayLength());
+                methodCode.add(generator.arrayLength());
             }
 
             case ldc -> loadElementToStack(callee);
@@ -289,12 +290,19 @@ public class JasminMethodBuilder {
             throw new OllirIsWeirdException("Destination of assign instruction is not an Operand (%s)".formatted(instruction));
 
         var rhs = instruction.getRhs();
+
+        // Copies between variables that were coalesced into the same register do nothing
+        if (rhs instanceof SingleOpInstruction singleOp && singleOp.getSingleOperand() instanceof Operand source
+                && !(source instanceof ArrayOperand) && !(dest instanceof ArrayOperand)
+                && getVirtualReg(source) == getVirtualReg(dest))
+            return this;
+
         if (rhs instanceof BinaryOpInstruction boi) {
             var iincParams = getIincParams(boi);
             if (iincParams != null) {
                 var register = getVirtualReg(iincParams.first());
                 if (register == getVirtualReg(dest)) {
-                    methodCode.append(generator.iinc(iincParams.second(), register));
+                    methodCode.add(generator.iinc(iincParams.second(), register));
                     return this;
                 }
             }
@@ -307,26 +315,87 @@ public class JasminMethodBuilder {
         if (instruction.hasReturnValue()) loadElementToStack(instruction.getOperand());
 
         var variant = InstructionGenerator.getInstructionVariant(instruction.getReturnType());
-        methodCode.append(generator._return(variant));
-        stackLimiter.updateStack(-1);
+        methodCode.add(generator._return(variant));
         return this;
     }
 
     public JasminMethodBuilder gotoInstruction(GotoInstruction instruction) {
-        methodCode.append(generator.unconditionalGoto(instruction.getLabel()));
+        methodCode.add(generator.unconditionalGoto(instruction.getLabel()));
         return this;
     }
 
+    /**
+     * Jumps to the label of the instruction without computing the value of its condition: comparisons jump on the
+     * comparison of their operands, and {@code &&}, {@code ||} and {@code !} test their operands one at a time.
+     */
     public JasminMethodBuilder branchInstruction(CondBranchInstruction instruction) {
-        this.instruction(instruction.getCondition());
-
+        var condition = instruction.getCondition();
         var label = instruction.getLabel();
-        methodCode.append(generator.ifne(label));
-        stackLimiter.updateStack(-1);
+
+        if (condition instanceof BinaryOpInstruction binaryOp) {
+            var left = binaryOp.getLeftOperand();
+            var right = binaryOp.getRightOperand();
+
+            switch (binaryOp.getOperation().getOpType()) {
+                case EQ, NEQ, GTE, GTH, LTE, LTH -> {
+                    return compareAndJump(left, right, getComparison(binaryOp), label);
+                }
+                case ANDB -> {
+                    var skipLabel = "and_%d_false".formatted(logicalOpCounter++);
+                    return jumpIf(left, "eq", skipLabel)
+                            .jumpIf(right, "ne", label)
+                            .addLabel(skipLabel);
+                }
+                case ORB -> {
+                    return jumpIf(left, "ne", label).jumpIf(right, "ne", label);
+                }
+            }
+        }
+
+        if (condition instanceof UnaryOpInstruction unaryOp) {
+            var operation = unaryOp.getOperation().getOpType();
+            if (operation == OperationType.NOT || operation == OperationType.NOTB)
+                return jumpIf(unaryOp.getOperand(), "eq", label);
+        }
+
+        this.instruction(condition);
+        methodCode.add(generator.ifne(label));
+
+        return this;
+    }
+
+    private JasminMethodBuilder jumpIf(Element element, String comparison, String label) {
+        loadElementToStack(element);
+
+        methodCode.add(generator.conditionalGoto("if" + comparison, label));
 
         return this;
     }
 
+    /**
+     * Jumps to the label if the comparison between both operands holds, comparing with zero when the right operand is
+     * the literal 0.
+     */
+    private JasminMethodBuilder compareAndJump(Element left, Element right, String comparison, String label) {
+        boolean isZero = right instanceof LiteralElement literal
+                && ElementUtils.castLiteralToInt(literal).filter(value -> value == 0).isPresent();
+
+        if (isZero)
+            return jumpIf(left, comparison, label);
+
+        loadElementToStack(left);
+        loadElementToStack(right);
+
+        methodCode.add(generator.conditionalGoto("if_icmp" + comparison, label));
+
+        return this;
+    }
+
+    private JasminMethodBuilder addLabel(String label) {
+        methodCode.add(generator.label(label));
+        return this;
+    }
+
     public JasminMethodBuilder putFieldInstruction(PutFieldInstruction instruction) {
         var ollirClass = method.getOllirClass();
 
@@ -342,8 +411,7 @@ public class JasminMethodBuilder {
         loadElementToStack(obj);
         loadElementToStack(value);
 
-        methodCode.append(generator.putfield(classPath, fieldName, fieldDescriptor));
-        stackLimiter.updateStack(-2);
+        methodCode.add(generator.putfield(classPath, fieldName, fieldDescriptor));
 
         return this;
     }
@@ -360,24 +428,20 @@ public class JasminMethodBuilder {
 
         loadElementToStack(obj);
 
-        methodCode.append(generator.getfield(classPath, fieldName, fieldDescriptor));
+        methodCode.add(generator.getfield(classPath, fieldName, fieldDescriptor));
 
         return this;
     }
 
     public JasminMethodBuilder unaryOpInstruction(UnaryOpInstruction instruction) {
-        var operand = (Operand) instruction.getOperand();
-
-        loadElementToStack(operand);
+        loadElementToStack(instruction.getOperand());
 
         var operation = instruction.getOperation();
         switch (operation.getOpType()) {
             case NOT, NOTB -> {
-                methodCode.append(generator.iconst(-1));
-                stackLimiter.updateStack(1);
+                methodCode.add(generator.iconst(-1));
 
-                methodCode.append("\tixor\n");
-                stackLimiter.updateStack(-1);
+                methodCode.add(generator.operation("i", "xor"));
             }
             default -> throw new OllirIsWeirdException("Unknown unary operation (%s)".formatted(instruction));
         }
@@ -387,10 +451,8 @@ public class JasminMethodBuilder {
 
     private int logicalOpCounter = 0;
 
-    public JasminMethodBuilder binaryLogicalOp(BinaryOpInstruction instruction) {
-        var operation = instruction.getOperation();
-
-        var comparison = switch (operation.getOpType()) {
+    private static String getComparison(BinaryOpInstruction instruction) {
+        return switch (instruction.getOperation().getOpType()) {
             case EQ -> "eq";
             case NEQ -> "ne";
             case GTE -> "ge";
@@ -399,38 +461,22 @@ public class JasminMethodBuilder {
             case LTH -> "lt";
             default -> throw new IllegalArgumentException("Unknown comparison binary op (%s)".formatted(instruction));
         };
+    }
 
-        var left = instruction.getLeftOperand();
-        var right = instruction.getRightOperand();
+    public JasminMethodBuilder binaryLogicalOp(BinaryOpInstruction instruction) {
+        var comparison = getComparison(instruction);
 
         var baseLabel = "cmp_%s_%d".formatted(comparison, logicalOpCounter++);
         var trueLabel = baseLabel + "_true";
         var endLabel = baseLabel + "_end";
 
-        loadElementToStack(left);
-        loadElementToStack(right);
+        compareAndJump(instruction.getLeftOperand(), instruction.getRightOperand(), comparison, trueLabel);
 
-        methodCode.append("\tisub\n");
-        stackLimiter.updateStack(-1);
-
-        methodCode.append("\tif")
-                .append(comparison)
-                .append(' ')
-                .append(trueLabel)
-                .append('\n');
-        stackLimiter.updateStack(-1);
-
-        methodCode.append(generator.iconst(0))
-                .append(generator.unconditionalGoto(endLabel))
-                .append(generator.label(trueLabel))
-                .append(generator.iconst(-1))
-                .append(generator.label(endLabel));
-
-        stackLimiter.updateStack(1); // iconst(0)
-        // unconditionalGoto
-        // label
-        stackLimiter.updateStack(1); // iconst(-1)
-        // label
+        methodCode.add(generator.iconst(0));
+        methodCode.add(generator.unconditionalGoto(endLabel));
+        methodCode.add(generator.label(trueLabel));
+        methodCode.add(generator.iconst(-1));
+        methodCode.add(generator.label(endLabel));
 
         return this;
     }
@@ -460,12 +506,7 @@ public class JasminMethodBuilder {
         loadElementToStack(left);
         loadElementToStack(right);
 
-        methodCode.append('\t')
-                .append(variant)
-                .append(combination)
-                .append('\n');
-
-        stackLimiter.updateStack(-1);
+        methodCode.add(generator.operation(variant, combination));
 
         return this;
     }
@@ -485,23 +526,57 @@ public class JasminMethodBuilder {
     }
 
     public JasminMethodBuilder pop() {
-        methodCode.append(generator.pop());
-        stackLimiter.updateStack(-1);
+        methodCode.add(generator.pop());
         return this;
     }
 
-    public String build() {
+    /**
+     * Generates the code of every instruction of the method, discarding the values returned by calls whose result is
+     * not used, and simplifies it with the {@link PeepholeOptimizer}.
+     */
+    public JasminMethodBuilder body() {
+        for (Instruction instruction : method.getInstructions()) {
+            instruction(instruction);
+
+            if ((instruction instanceof CallInstruction) && (((CallInstruction) instruction).getReturnType().getTypeOfElement() != ElementType.VOID)) {
+                pop();
+            }
+        }
+
+        var optimizedCode = peepholeOptimizer.optimize(methodCode);
+        methodCode.clear();
+        methodCode.addAll(optimizedCode);
+
+        return this;
+    }
+
+    public List<JvmInstruction> getInstructions() {
+        return methodCode;
+    }
+
+    public int getStackLimit() {
+        int stackLimit = stackLimiter.getStackLimit(methodCode);
+        CompileMetrics.record(method.getMethodName(), "maxStack", stackLimit);
+
+        return stackLimit;
+    }
+
+    public int getLocalsLimit() {
         int numLocals = method.isStaticMethod() ? 0 : 1;
         for (var descriptor : method.getVarTable().values()) {
             numLocals = Math.max(numLocals, descriptor.getVirtualReg() + 1);
         }
 
+        return numLocals;
+    }
+
+    public String build() {
         StringBuilder method = new StringBuilder();
 
         method.append(startMethod())
-                .append(limitStack(stackLimiter.getStackLimit()))
-                .append(limitLocals(numLocals))
-                .append(methodCode)
+                .append(limitStack(getStackLimit()))
+                .append(limitLocals(getLocalsLimit()))
+                .append(generator.code(methodCode))
                 .append(endMethod());
 
         return method.toString();
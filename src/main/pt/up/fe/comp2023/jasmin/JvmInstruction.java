@@ -0,0 +1,89 @@
+package pt.up.fe.comp2023.jasmin;
+
+/**
+ * A single JVM instruction (or label) of a method body, kept in a structured form so that it can either be printed as
+ * Jasmin or encoded directly into a class file.
+ */
+public sealed interface JvmInstruction {
+
+    String toJasmin();
+
+    record Simple(JvmOpcode opcode) implements JvmInstruction {
+        @Override
+        public String toJasmin() {
+            return opcode.getMnemonic();
+        }
+    }
+
+    record Local(JvmOpcode opcode, int register) implements JvmInstruction {
+        @Override
+        public String toJasmin() {
+            return opcode.getMnemonic() + ' ' + register;
+        }
+    }
+
+    record Push(JvmOpcode opcode, int value) implements JvmInstruction {
+        @Override
+        public String toJasmin() {
+            return opcode.getMnemonic() + ' ' + value;
+        }
+    }
+
+    record Ldc(int value) implements JvmInstruction {
+        @Override
+        public String toJasmin() {
+            return "ldc " + value;
+        }
+    }
+
+    record Iinc(int register, int value) implements JvmInstruction {
+        @Override
+        public String toJasmin() {
+            return "iinc " + register + ' ' + value;
+        }
+    }
+
+    record Jump(JvmOpcode opcode, String label) implements JvmInstruction {
+        @Override
+        public String toJasmin() {
+            return opcode.getMnemonic() + ' ' + label;
+        }
+    }
+
+    record Label(String name) implements JvmInstruction {
+        @Override
+        public String toJasmin() {
+            return name + ':';
+        }
+    }
+
+    record New(String classPath) implements JvmInstruction {
+        @Override
+        public String toJasmin() {
+            return "new " + classPath;
+        }
+    }
+
+    record NewArray(String type) implements JvmInstruction {
+        @Override
+        public String toJasmin() {
+            return "newarray " + type;
+        }
+    }
+
+    /**
+     * A field access or a method invocation. {@code descriptor} is the field descriptor or the method descriptor.
+     */
+    record MemberRef(JvmOpcode opcode, String classPath, String name, String descriptor) implements JvmInstruction {
+
+        public boolean isField() {
+            return opcode == JvmOpcode.GETFIELD || opcode == JvmOpcode.PUTFIELD;
+        }
+
+        @Override
+        public String toJasmin() {
+            var separator = isField() ? " " : "";
+            return opcode.getMnemonic() + ' ' + classPath + '/' + name + separator + descriptor;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package pt.up.fe.comp2023.jasmin;
+
+public enum JvmOpcode {
+    ICONST_M1(0x02), ICONST_0(0x03), ICONST_1(0x04), ICONST_2(0x05), ICONST_3(0x06), ICONST_4(0x07), ICONST_5(0x08),
+    BIPUSH(0x10), SIPUSH(0x11), LDC(0x12), LDC_W(0x13),
+    ILOAD(0x15), ALOAD(0x19),
+    ILOAD_0(0x1a), ILOAD_1(0x1b), ILOAD_2(0x1c), ILOAD_3(0x1d),
+    ALOAD_0(0x2a), ALOAD_1(0x2b), ALOAD_2(0x2c), ALOAD_3(0x2d),
+    IALOAD(0x2e),
+    ISTORE(0x36), ASTORE(0x3a),
+    ISTORE_0(0x3b), ISTORE_1(0x3c), ISTORE_2(0x3d), ISTORE_3(0x3e),
+    ASTORE_0(0x4b), ASTORE_1(0x4c), ASTORE_2(0x4d), ASTORE_3(0x4e),
+    IASTORE(0x4f),
+    POP(0x57), DUP(0x59),
+    IADD(0x60), ISUB(0x64), IMUL(0x68), IDIV(0x6c),
+    ISHL(0x78), ISHR(0x7a), IUSHR(0x7c), IAND(0x7e), IOR(0x80), IXOR(0x82),
+    IINC(0x84),
+    IFEQ(0x99), IFNE(0x9a), IFLT(0x9b), IFGE(0x9c), IFGT(0x9d), IFLE(0x9e),
+    IF_ICMPEQ(0x9f), IF_ICMPNE(0xa0), IF_ICMPLT(0xa1), IF_ICMPGE(0xa2), IF_ICMPGT(0xa3), IF_ICMPLE(0xa4),
+    GOTO(0xa7),
+    IRETURN(0xac), ARETURN(0xb0), RETURN(0xb1),
+    GETFIELD(0xb4), PUTFIELD(0xb5),
+    INVOKEVIRTUAL(0xb6), INVOKESPECIAL(0xb7), INVOKESTATIC(0xb8), INVOKEINTERFACE(0xb9),
+    NEW(0xbb), NEWARRAY(0xbc), ARRAYLENGTH(0xbe),
+    WIDE(0xc4);
+
+    private final int code;
+
+    JvmOpcode(int code) {
+        this.code = code;
+    }
+
+    public int getCode() {
+        return code;
+    }
+
+    public String getMnemonic() {
+        return name().toLowerCase();
+    }
+
+    public static JvmOpcode of(String mnemonic) {
+        return valueOf(mnemonic.toUpperCase());
+    }
+}
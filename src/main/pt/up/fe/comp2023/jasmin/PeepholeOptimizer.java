@@ -0,0 +1,265 @@
+package pt.up.fe.comp2023.jasmin;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Simplifies short sequences of the JVM instructions of a method body, until none of the rewrites applies:
+ * <ul>
+ *     <li>labels that no jump uses are removed, so the other rewrites can see across them;</li>
+ *     <li>jumps to a {@code goto} jump straight to its target, and a {@code goto} to a return becomes the return;</li>
+ *     <li>code after a {@code goto} or a return that no jump reaches is removed, and so are jumps to the next
+ *     instruction;</li>
+ *     <li>a conditional jump over a {@code goto} becomes the opposite conditional jump to the target of the
+ *     {@code goto};</li>
+ *     <li>a store to a variable followed by a load of the same variable keeps the value on the stack with a
+ *     {@code dup};</li>
+ *     <li>comparisons with the constant zero use the single operand form.</li>
+ * </ul>
+ */
+public class PeepholeOptimizer {
+
+    private static final Map<JvmOpcode, JvmOpcode> COMPARISONS = Map.of(
+            JvmOpcode.IFEQ, JvmOpcode.IF_ICMPEQ,
+            JvmOpcode.IFNE, JvmOpcode.IF_ICMPNE,
+            JvmOpcode.IFLT, JvmOpcode.IF_ICMPLT,
+            JvmOpcode.IFGE, JvmOpcode.IF_ICMPGE,
+            JvmOpcode.IFGT, JvmOpcode.IF_ICMPGT,
+            JvmOpcode.IFLE, JvmOpcode.IF_ICMPLE
+    );
+
+    private static final Map<JvmOpcode, JvmOpcode> OPPOSITES = Map.ofEntries(
+            Map.entry(JvmOpcode.IFEQ, JvmOpcode.IFNE), Map.entry(JvmOpcode.IFNE, JvmOpcode.IFEQ),
+            Map.entry(JvmOpcode.IFLT, JvmOpcode.IFGE), Map.entry(JvmOpcode.IFGE, JvmOpcode.IFLT),
+            Map.entry(JvmOpcode.IFGT, JvmOpcode.IFLE), Map.entry(JvmOpcode.IFLE, JvmOpcode.IFGT),
+            Map.entry(JvmOpcode.IF_ICMPEQ, JvmOpcode.IF_ICMPNE), Map.entry(JvmOpcode.IF_ICMPNE, JvmOpcode.IF_ICMPEQ),
+            Map.entry(JvmOpcode.IF_ICMPLT, JvmOpcode.IF_ICMPGE), Map.entry(JvmOpcode.IF_ICMPGE, JvmOpcode.IF_ICMPLT),
+            Map.entry(JvmOpcode.IF_ICMPGT, JvmOpcode.IF_ICMPLE), Map.entry(JvmOpcode.IF_ICMPLE, JvmOpcode.IF_ICMPGT)
+    );
+
+    /**
+     * A load or a store of a local variable
+     *
+     * @param type the type prefix of the instruction, {@code i} or {@code a}
+     */
+    private record LocalAccess(String type, boolean isStore, int register) {
+
+        private static LocalAccess of(JvmInstruction instruction) {
+            String mnemonic;
+            int register;
+
+            if (instruction instanceof JvmInstruction.Local local) {
+                mnemonic = local.opcode().getMnemonic();
+                register = local.register();
+            } else if (instruction instanceof JvmInstruction.Simple simple
+                    && simple.opcode().getMnemonic().matches("[ia](load|store)_\\d")) {
+                var parts = simple.opcode().getMnemonic().split("_");
+                mnemonic = parts[0];
+                register = Integer.parseInt(parts[1]);
+            } else {
+                return null;
+            }
+
+            return new LocalAccess(mnemonic.substring(0, 1), mnemonic.endsWith("store"), register);
+        }
+    }
+
+    private final InstructionGenerator generator = new InstructionGenerator();
+
+    public List<JvmInstruction> optimize(List<JvmInstruction> instructions) {
+        var code = new ArrayList<>(instructions);
+
+        boolean changed = true;
+        while (changed) {
+            changed = removeUnusedLabels(code);
+            changed |= threadJumps(code);
+            changed |= removeDeadCode(code);
+            changed |= invertBranches(code);
+            changed |= forwardStores(code);
+            changed |= fuseComparisons(code);
+        }
+
+        return code;
+    }
+
+    private static boolean isUnconditionalTransfer(JvmInstruction instruction) {
+        if (instruction instanceof JvmInstruction.Jump jump)
+            return jump.opcode() == JvmOpcode.GOTO;
+
+        return instruction instanceof JvmInstruction.Simple simple && isReturn(simple.opcode());
+    }
+
+    private static boolean isReturn(JvmOpcode opcode) {
+        return opcode == JvmOpcode.IRETURN || opcode == JvmOpcode.ARETURN || opcode == JvmOpcode.RETURN;
+    }
+
+    private static boolean removeUnusedLabels(List<JvmInstruction> code) {
+        var usedLabels = new HashSet<String>();
+        for (var instruction : code) {
+            if (instruction instanceof JvmInstruction.Jump jump) usedLabels.add(jump.label());
+        }
+
+        return code.removeIf(instruction -> instruction instanceof JvmInstruction.Label label
+                && !usedLabels.contains(label.name()));
+    }
+
+    /**
+     * @return the position of the first instruction that runs after jumping to the label
+     */
+    private static int getTarget(List<JvmInstruction> code, Map<String, Integer> labels, String label) {
+        int position = labels.get(label);
+        while (position < code.size() && code.get(position) instanceof JvmInstruction.Label) {
+            position++;
+        }
+
+        return position;
+    }
+
+    private static boolean threadJumps(List<JvmInstruction> code) {
+        var labels = new HashMap<String, Integer>();
+        for (int i = 0; i < code.size(); i++) {
+            if (code.get(i) instanceof JvmInstruction.Label label) labels.put(label.name(), i);
+        }
+
+        boolean changed = false;
+
+        for (int i = 0; i < code.size(); i++) {
+            if (!(code.get(i) instanceof JvmInstruction.Jump jump))
+                continue;
+
+            // Following the chain of gotos, stopping at loops made only of gotos
+            var label = jump.label();
+            var visited = new HashSet<String>();
+
+            while (visited.add(label)) {
+                int target = getTarget(code, labels, label);
+                if (target < code.size() && code.get(target) instanceof JvmInstruction.Jump next
+                        && next.opcode() == JvmOpcode.GOTO) {
+                    label = next.label();
+                } else {
+                    break;
+                }
+            }
+
+            int target = getTarget(code, labels, label);
+            if (jump.opcode() == JvmOpcode.GOTO && target < code.size()
+                    && code.get(target) instanceof JvmInstruction.Simple simple && isReturn(simple.opcode())) {
+                code.set(i, simple);
+                changed = true;
+            } else if (!label.equals(jump.label())) {
+                code.set(i, new JvmInstruction.Jump(jump.opcode(), label));
+                changed = true;
+            }
+        }
+
+        return changed;
+    }
+
+    private static boolean removeDeadCode(List<JvmInstruction> code) {
+        var result = new ArrayList<JvmInstruction>();
+        boolean reachable = true;
+
+        for (int i = 0; i < code.size(); i++) {
+            var instruction = code.get(i);
+
+            if (instruction instanceof JvmInstruction.Label) {
+                reachable = true;
+            } else if (!reachable) {
+                continue;
+            }
+
+            if (instruction instanceof JvmInstruction.Jump jump && jump.opcode() == JvmOpcode.GOTO
+                    && jumpsToNext(code, i, jump.label())) {
+                continue;
+            }
+
+            result.add(instruction);
+
+            if (isUnconditionalTransfer(instruction))
+                reachable = false;
+        }
+
+        if (result.size() == code.size())
+            return false;
+
+        code.clear();
+        code.addAll(result);
+        return true;
+    }
+
+    private static boolean invertBranches(List<JvmInstruction> code) {
+        boolean changed = false;
+
+        for (int i = 0; i + 2 < code.size(); i++) {
+            if (!(code.get(i) instanceof JvmInstruction.Jump branch) || !OPPOSITES.containsKey(branch.opcode())
+                    || !(code.get(i + 1) instanceof JvmInstruction.Jump jump) || jump.opcode() != JvmOpcode.GOTO
+                    || !jumpsToNext(code, i + 1, branch.label()))
+                continue;
+
+            code.set(i, new JvmInstruction.Jump(OPPOSITES.get(branch.opcode()), jump.label()));
+            code.remove(i + 1);
+            changed = true;
+        }
+
+        return changed;
+    }
+
+    private static boolean jumpsToNext(List<JvmInstruction> code, int position, String label) {
+        for (int i = position + 1; i < code.size() && code.get(i) instanceof JvmInstruction.Label next; i++) {
+            if (next.name().equals(label))
+                return true;
+        }
+
+        return false;
+    }
+
+    private boolean forwardStores(List<JvmInstruction> code) {
+        boolean changed = false;
+
+        for (int i = 0; i + 1 < code.size(); i++) {
+            var store = LocalAccess.of(code.get(i));
+            var load = LocalAccess.of(code.get(i + 1));
+
+            if (store == null || load == null || !store.isStore() || load.isStore()
+                    || store.register() != load.register() || !store.type().equals(load.type()))
+                continue;
+
+            code.set(i, new JvmInstruction.Simple(JvmOpcode.DUP));
+            code.set(i + 1, generator.store(store.type(), store.register()));
+
+            changed = true;
+        }
+
+        return changed;
+    }
+
+    private static boolean fuseComparisons(List<JvmInstruction> code) {
+        boolean changed = false;
+
+        for (int i = 0; i + 1 < code.size(); i++) {
+            if (!(code.get(i) instanceof JvmInstruction.Simple simple)
+                    || !(code.get(i + 1) instanceof JvmInstruction.Jump jump))
+                continue;
+
+            // Comparing with zero needs no second operand. A subtraction followed by a comparison with zero is not a
+            // comparison of both values, which would differ when the subtraction overflows
+            if (simple.opcode() != JvmOpcode.ICONST_0 || !COMPARISONS.containsValue(jump.opcode()))
+                continue;
+
+            var fused = COMPARISONS.entrySet().stream()
+                    .filter(entry -> entry.getValue() == jump.opcode())
+                    .findFirst()
+                    .orElseThrow()
+                    .getKey();
+
+            code.set(i, new JvmInstruction.Jump(fused, jump.label()));
+            code.remove(i + 1);
+            changed = true;
+        }
+
+        return changed;
+    }
+}
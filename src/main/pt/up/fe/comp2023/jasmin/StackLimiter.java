@@ -1,20 +1,138 @@
 package pt.up.fe.comp2023.jasmin;
 
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Computes the maximum height of the operand stack of a method body by following every path of its control flow, as
+ * the JVM verifier does. Paths that merge must reach the instruction with the same height, and no instruction may pop
+ * more values than the stack holds, so code that breaks either rule is reported instead of being emitted.
+ */
 public class StackLimiter {
-    private int stackLimit;
-    private int currentStack;
 
-    public StackLimiter() {
-        this.stackLimit = 0;
-        this.currentStack = 0;
+    public int getStackLimit(List<JvmInstruction> code) {
+        var labels = new HashMap<String, Integer>();
+        for (int i = 0; i < code.size(); i++) {
+            if (code.get(i) instanceof JvmInstruction.Label label) labels.put(label.name(), i);
+        }
+
+        // The height of the stack before each instruction, or -1 if no path reaches it yet
+        var heights = new int[code.size()];
+        Arrays.fill(heights, -1);
+
+        var worklist = new ArrayDeque<Integer>();
+        int stackLimit = 0;
+
+        if (!code.isEmpty()) {
+            heights[0] = 0;
+            worklist.push(0);
+        }
+
+        while (!worklist.isEmpty()) {
+            int position = worklist.pop();
+            var instruction = code.get(position);
+
+            int height = heights[position] + getStackEffect(instruction);
+            if (height < 0)
+                throw new IllegalStateException("Operand stack underflow at %s (instruction %d)".formatted(
+                        instruction.toJasmin(), position));
+
+            stackLimit = Math.max(stackLimit, height);
+
+            if (instruction instanceof JvmInstruction.Jump jump) {
+                var target = labels.get(jump.label());
+                if (target == null)
+                    throw new IllegalStateException("Jump to unknown label " + jump.label());
+
+                flow(heights, worklist, target, height);
+            }
+
+            if (!endsFlow(instruction) && position + 1 < code.size())
+                flow(heights, worklist, position + 1, height);
+        }
+
+        return stackLimit;
     }
 
-    public int getStackLimit() {
-        return this.stackLimit;
+    private static void flow(int[] heights, ArrayDeque<Integer> worklist, int position, int height) {
+        if (heights[position] == -1) {
+            heights[position] = height;
+            worklist.push(position);
+        } else if (heights[position] != height) {
+            throw new IllegalStateException("Inconsistent operand stack height at instruction %d (%d and %d)".formatted(
+                    position, heights[position], height));
+        }
+    }
+
+    private static boolean endsFlow(JvmInstruction instruction) {
+        if (instruction instanceof JvmInstruction.Jump jump)
+            return jump.opcode() == JvmOpcode.GOTO;
+
+        return instruction instanceof JvmInstruction.Simple simple && (simple.opcode() == JvmOpcode.IRETURN
+                || simple.opcode() == JvmOpcode.ARETURN || simple.opcode() == JvmOpcode.RETURN);
     }
 
-    public void updateStack(int num) {
-        this.currentStack += num;
-        this.stackLimit = Math.max(this.stackLimit, this.currentStack);
+    /**
+     * @return how many values the instruction pushes onto the stack minus how many it pops
+     */
+    private static int getStackEffect(JvmInstruction instruction) {
+        if (instruction instanceof JvmInstruction.Simple simple)
+            return getStackEffect(simple.opcode());
+
+        if (instruction instanceof JvmInstruction.Local local)
+            return getStackEffect(local.opcode());
+
+        if (instruction instanceof JvmInstruction.Jump jump)
+            return getStackEffect(jump.opcode());
+
+        if (instruction instanceof JvmInstruction.Push || instruction instanceof JvmInstruction.Ldc
+                || instruction instanceof JvmInstruction.New)
+            return 1;
+
+        if (instruction instanceof JvmInstruction.MemberRef memberRef)
+            return getStackEffect(memberRef);
+
+        // Labels, iinc, and newarray, which replaces the length with the array
+        return 0;
+    }
+
+    private static int getStackEffect(JvmOpcode opcode) {
+        return switch (opcode) {
+            case ICONST_M1, ICONST_0, ICONST_1, ICONST_2, ICONST_3, ICONST_4, ICONST_5, BIPUSH, SIPUSH, LDC, LDC_W,
+                    ILOAD, ALOAD, ILOAD_0, ILOAD_1, ILOAD_2, ILOAD_3, ALOAD_0, ALOAD_1, ALOAD_2, ALOAD_3, DUP, NEW -> 1;
+            case ISTORE, ASTORE, ISTORE_0, ISTORE_1, ISTORE_2, ISTORE_3, ASTORE_0, ASTORE_1, ASTORE_2, ASTORE_3, POP,
+                    IALOAD, IADD, ISUB, IMUL, IDIV, ISHL, ISHR, IUSHR, IAND, IOR, IXOR, IFEQ, IFNE, IFLT, IFGE, IFGT,
+                    IFLE, IRETURN, ARETURN -> -1;
+            case IF_ICMPEQ, IF_ICMPNE, IF_ICMPLT, IF_ICMPGE, IF_ICMPGT, IF_ICMPLE, PUTFIELD -> -2;
+            case IASTORE -> -3;
+            case IINC, GOTO, RETURN, GETFIELD, NEWARRAY, ARRAYLENGTH, WIDE -> 0;
+            case INVOKEVIRTUAL, INVOKESPECIAL, INVOKESTATIC, INVOKEINTERFACE ->
+                    throw new IllegalArgumentException("The stack effect of %s depends on its descriptor".formatted(
+                            opcode.getMnemonic()));
+        };
+    }
+
+    private static int getStackEffect(JvmInstruction.MemberRef memberRef) {
+        if (memberRef.isField())
+            return getStackEffect(memberRef.opcode());
+
+        // Every argument and return value of Java-- takes a single slot
+        var descriptor = memberRef.descriptor();
+        int numArgs = 0;
+
+        int i = 1;
+        while (descriptor.charAt(i) != ')') {
+            while (descriptor.charAt(i) == '[') i++;
+            i = descriptor.charAt(i) == 'L' ? descriptor.indexOf(';', i) + 1 : i + 1;
+            numArgs++;
+        }
+
+        int effect = -numArgs;
+        if (memberRef.opcode() != JvmOpcode.INVOKESTATIC) effect--;
+        if (descriptor.charAt(i + 1) != 'V') effect++;
+
+        return effect;
     }
 }
@@ -0,0 +1,38 @@
+package pt.up.fe.comp2023.jasmin.classfile;
+
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp.jmm.ollir.OllirResult;
+import pt.up.fe.comp2023.jasmin.JasminBackend;
+
+/**
+ * Generates the class file of an OLLIR class directly, skipping the Jasmin text and its assembly.
+ */
+public class ClassFileBackend {
+
+    public byte[] toClassFile(OllirResult ollirResult) {
+        return toClassFile(ollirResult.getOllirClass());
+    }
+
+    public byte[] toClassFile(ClassUnit classUnit) {
+        String normalizedSuperClass = JasminBackend.getSuperClassPath(classUnit);
+
+        ClassFileBuilder classFileBuilder = new ClassFileBuilder(classUnit);
+
+        classFileBuilder.className(classUnit.getClassName())
+                .superClass(normalizedSuperClass);
+
+        for (Field field : classUnit.getFields()) {
+            classFileBuilder.field(field);
+        }
+
+        for (int i = 0; i < classUnit.getNumMethods(); i++) {
+            if (classUnit.getMethod(i).isConstructMethod()) {
+                classFileBuilder.constructor(normalizedSuperClass);
+            } else {
+                classFileBuilder.method(classUnit.getMethod(i));
+            }
+        }
+
+        return classFileBuilder.build();
+    }
+}
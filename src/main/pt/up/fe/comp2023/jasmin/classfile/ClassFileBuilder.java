@@ -0,0 +1,344 @@
+package pt.up.fe.comp2023.jasmin.classfile;
+
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp2023.jasmin.AccessSpec;
+import pt.up.fe.comp2023.jasmin.InstructionGenerator;
+import pt.up.fe.comp2023.jasmin.JasminBuilder;
+import pt.up.fe.comp2023.jasmin.JasminMethodBuilder;
+import pt.up.fe.comp2023.jasmin.JvmInstruction;
+import pt.up.fe.comp2023.jasmin.JvmOpcode;
+import pt.up.fe.comp2023.metrics.CompileMetrics;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds the bytes of a class file straight from the instructions generated for each method, without going through
+ * Jasmin.
+ */
+public class ClassFileBuilder {
+
+    private static final int MAGIC = 0xCAFEBABE;
+    // Up to version 49 the JVM uses the type-inferencing verifier, so methods need no StackMapTable
+    private static final int MAJOR_VERSION = 49;
+    private static final int ACC_SUPER = 0x0020;
+    private static final int NEWARRAY_INT = 10;
+
+    private final ConstantPool constantPool = new ConstantPool();
+    private final ByteArrayOutputStream fields = new ByteArrayOutputStream();
+    private final ByteArrayOutputStream methods = new ByteArrayOutputStream();
+    private int numFields = 0;
+    private int numMethods = 0;
+    private int thisClass;
+    private int superClass;
+
+    private final ClassUnit classUnit;
+
+    public ClassFileBuilder(ClassUnit classUnit) {
+        this.classUnit = classUnit;
+    }
+
+    public ClassFileBuilder className(String className) {
+        thisClass = constantPool.classRef(className);
+        return this;
+    }
+
+    public ClassFileBuilder superClass(String superClass) {
+        this.superClass = constantPool.classRef(InstructionGenerator.getClassPath(superClass));
+        return this;
+    }
+
+    public ClassFileBuilder field(Field field) {
+        var out = new DataOutputStream(fields);
+
+        try {
+            out.writeShort(getFlags(JasminBuilder.getAccessSpecs(field)));
+            out.writeShort(constantPool.utf8(field.getFieldName()));
+            out.writeShort(constantPool.utf8(InstructionGenerator.getDescriptor(classUnit, field.getFieldType())));
+
+            if (field.isInitialized()) {
+                out.writeShort(1);
+                out.writeShort(constantPool.utf8("ConstantValue"));
+                out.writeInt(2);
+                out.writeShort(constantPool.integer(field.getInitialValue()));
+            } else {
+                out.writeShort(0);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Could not write field " + field.getFieldName(), e);
+        }
+
+        numFields++;
+        return this;
+    }
+
+    public ClassFileBuilder constructor(String superClass) {
+        var generator = new InstructionGenerator();
+
+        List<JvmInstruction> code = List.of(
+                generator.load("a", 0),
+                generator.invoke("invokespecial", InstructionGenerator.getClassPath(superClass), "<init>", List.of(), "V"),
+                generator._return("")
+        );
+
+        return method(getFlags(List.of(AccessSpec.PUBLIC)), "<init>", "()V", code, 1, 1);
+    }
+
+    public ClassFileBuilder method(Method method) {
+        int start = methods.size();
+
+        return CompileMetrics.measure(method.getMethodName(), "classFile", () -> {
+            JasminMethodBuilder methodBuilder = new JasminMethodBuilder(method).body();
+
+            String descriptor = "(" + String.join("", methodBuilder.getArgDescriptors()) + ")"
+                    + methodBuilder.getReturnTypeDescriptor();
+
+            return method(getFlags(methodBuilder.getAccessSpecs()), methodBuilder.getMethodName(), descriptor,
+                    methodBuilder.getInstructions(), methodBuilder.getStackLimit(), methodBuilder.getLocalsLimit());
+        }, builder -> methods.size() - start);
+    }
+
+    private ClassFileBuilder method(int flags, String name, String descriptor, List<JvmInstruction> instructions,
+                                    int maxStack, int maxLocals) {
+        var out = new DataOutputStream(methods);
+        byte[] code = encode(instructions);
+
+        try {
+            out.writeShort(flags);
+            out.writeShort(constantPool.utf8(name));
+            out.writeShort(constantPool.utf8(descriptor));
+
+            out.writeShort(1);
+            out.writeShort(constantPool.utf8("Code"));
+            out.writeInt(12 + code.length);
+            out.writeShort(maxStack);
+            out.writeShort(maxLocals);
+            out.writeInt(code.length);
+            out.write(code);
+            out.writeShort(0); // exception table
+            out.writeShort(0); // attributes
+        } catch (IOException e) {
+            throw new RuntimeException("Could not write method " + name, e);
+        }
+
+        numMethods++;
+        return this;
+    }
+
+    public byte[] build() {
+        var bytes = new ByteArrayOutputStream();
+        var out = new DataOutputStream(bytes);
+
+        try {
+            out.writeInt(MAGIC);
+            out.writeShort(0);
+            out.writeShort(MAJOR_VERSION);
+            constantPool.write(out);
+            out.writeShort(AccessSpec.PUBLIC.getFlag() | ACC_SUPER);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(0); // interfaces
+            out.writeShort(numFields);
+            fields.writeTo(out);
+            out.writeShort(numMethods);
+            methods.writeTo(out);
+            out.writeShort(0); // attributes
+        } catch (IOException e) {
+            throw new RuntimeException("Could not write class file", e);
+        }
+
+        return bytes.toByteArray();
+    }
+
+    private static int getFlags(List<AccessSpec> accessSpecs) {
+        int flags = 0;
+        for (AccessSpec accessSpec : accessSpecs) {
+            flags |= accessSpec.getFlag();
+        }
+
+        return flags;
+    }
+
+    private byte[] encode(List<JvmInstruction> instructions) {
+        // The size of every instruction is known once its constants are in the pool, so a first pass finds the
+        // offset of each label and a second one writes the bytes
+        Map<String, Integer> labelOffsets = new HashMap<>();
+        List<Integer> offsets = new ArrayList<>(instructions.size());
+
+        int offset = 0;
+        for (JvmInstruction instruction : instructions) {
+            if (instruction instanceof JvmInstruction.Label label) {
+                labelOffsets.put(label.name(), offset);
+            }
+
+            offsets.add(offset);
+            offset += size(instruction);
+        }
+
+        if (offset > 0xFFFF) {
+            throw new IllegalStateException("Method code is too long (" + offset + " bytes)");
+        }
+
+        var bytes = new ByteArrayOutputStream(offset);
+        var out = new DataOutputStream(bytes);
+
+        try {
+            for (int i = 0; i < instructions.size(); i++) {
+                write(instructions.get(i), offsets.get(i), labelOffsets, out);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Could not encode method code", e);
+        }
+
+        return bytes.toByteArray();
+    }
+
+    private int size(JvmInstruction instruction) {
+        if (instruction instanceof JvmInstruction.Label) {
+            return 0;
+        }
+
+        if (instruction instanceof JvmInstruction.Simple) {
+            return 1;
+        }
+
+        if (instruction instanceof JvmInstruction.Local local) {
+            return isWide(local.register()) ? 4 : 2;
+        }
+
+        if (instruction instanceof JvmInstruction.Push push) {
+            return push.opcode() == JvmOpcode.BIPUSH ? 2 : 3;
+        }
+
+        if (instruction instanceof JvmInstruction.Ldc ldc) {
+            return isWide(constantPool.integer(ldc.value())) ? 3 : 2;
+        }
+
+        if (instruction instanceof JvmInstruction.Iinc iinc) {
+            return isWide(iinc.register()) || iinc.value() != (byte) iinc.value() ? 6 : 3;
+        }
+
+        if (instruction instanceof JvmInstruction.NewArray) {
+            return 2;
+        }
+
+        if (instruction instanceof JvmInstruction.MemberRef memberRef) {
+            return memberRef.opcode() == JvmOpcode.INVOKEINTERFACE ? 5 : 3;
+        }
+
+        // Jumps and new
+        return 3;
+    }
+
+    private void write(JvmInstruction instruction, int offset, Map<String, Integer> labelOffsets,
+                       DataOutputStream out) throws IOException {
+        if (instruction instanceof JvmInstruction.Label) {
+            return;
+        }
+
+        if (instruction instanceof JvmInstruction.Simple simple) {
+            out.writeByte(simple.opcode().getCode());
+        } else if (instruction instanceof JvmInstruction.Local local) {
+            if (isWide(local.register())) {
+                out.writeByte(JvmOpcode.WIDE.getCode());
+                out.writeByte(local.opcode().getCode());
+                out.writeShort(local.register());
+            } else {
+                out.writeByte(local.opcode().getCode());
+                out.writeByte(local.register());
+            }
+        } else if (instruction instanceof JvmInstruction.Push push) {
+            out.writeByte(push.opcode().getCode());
+            if (push.opcode() == JvmOpcode.BIPUSH) {
+                out.writeByte(push.value());
+            } else {
+                out.writeShort(push.value());
+            }
+        } else if (instruction instanceof JvmInstruction.Ldc ldc) {
+            int index = constantPool.integer(ldc.value());
+            if (isWide(index)) {
+                out.writeByte(JvmOpcode.LDC_W.getCode());
+                out.writeShort(index);
+            } else {
+                out.writeByte(JvmOpcode.LDC.getCode());
+                out.writeByte(index);
+            }
+        } else if (instruction instanceof JvmInstruction.Iinc iinc) {
+            if (isWide(iinc.register()) || iinc.value() != (byte) iinc.value()) {
+                out.writeByte(JvmOpcode.WIDE.getCode());
+                out.writeByte(JvmOpcode.IINC.getCode());
+                out.writeShort(iinc.register());
+                out.writeShort(iinc.value());
+            } else {
+                out.writeByte(JvmOpcode.IINC.getCode());
+                out.writeByte(iinc.register());
+                out.writeByte(iinc.value());
+            }
+        } else if (instruction instanceof JvmInstruction.Jump jump) {
+            var target = labelOffsets.get(jump.label());
+            if (target == null) {
+                throw new IllegalStateException("Jump to unknown label " + jump.label());
+            }
+
+            int jumpOffset = target - offset;
+            if (jumpOffset != (short) jumpOffset) {
+                throw new IllegalStateException("Jump to label " + jump.label() + " is too far (" + jumpOffset + " bytes)");
+            }
+
+            out.writeByte(jump.opcode().getCode());
+            out.writeShort(jumpOffset);
+        } else if (instruction instanceof JvmInstruction.New newInstruction) {
+            out.writeByte(JvmOpcode.NEW.getCode());
+            out.writeShort(constantPool.classRef(newInstruction.classPath()));
+        } else if (instruction instanceof JvmInstruction.NewArray newArray) {
+            if (!newArray.type().equals("int")) {
+                throw new IllegalArgumentException("Unsupported array type " + newArray.type());
+            }
+
+            out.writeByte(JvmOpcode.NEWARRAY.getCode());
+            out.writeByte(NEWARRAY_INT);
+        } else if (instruction instanceof JvmInstruction.MemberRef memberRef) {
+            writeMemberRef(memberRef, out);
+        }
+    }
+
+    private void writeMemberRef(JvmInstruction.MemberRef memberRef, DataOutputStream out) throws IOException {
+        var classPath = memberRef.classPath();
+        var name = memberRef.name();
+        var descriptor = memberRef.descriptor();
+
+        out.writeByte(memberRef.opcode().getCode());
+
+        if (memberRef.isField()) {
+            out.writeShort(constantPool.fieldRef(classPath, name, descriptor));
+        } else if (memberRef.opcode() == JvmOpcode.INVOKEINTERFACE) {
+            out.writeShort(constantPool.interfaceMethodRef(classPath, name, descriptor));
+            out.writeByte(1 + countArgs(descriptor));
+            out.writeByte(0);
+        } else {
+            out.writeShort(constantPool.methodRef(classPath, name, descriptor));
+        }
+    }
+
+    private static int countArgs(String methodDescriptor) {
+        int count = 0;
+        int i = 1;
+        while (methodDescriptor.charAt(i) != ')') {
+            while (methodDescriptor.charAt(i) == '[') i++;
+            if (methodDescriptor.charAt(i) == 'L') i = methodDescriptor.indexOf(';', i);
+            i++;
+            count++;
+        }
+
+        return count;
+    }
+
+    private static boolean isWide(int index) {
+        return index > 0xFF;
+    }
+}
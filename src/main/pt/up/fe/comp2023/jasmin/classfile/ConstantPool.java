@@ -0,0 +1,110 @@
+package pt.up.fe.comp2023.jasmin.classfile;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Constant pool of a class file. Every entry is only added once, so asking for the same constant again returns the
+ * index of the existing entry.
+ */
+public class ConstantPool {
+
+    private static final int UTF8 = 1;
+    private static final int INTEGER = 3;
+    private static final int CLASS = 7;
+    private static final int FIELD_REF = 9;
+    private static final int METHOD_REF = 10;
+    private static final int INTERFACE_METHOD_REF = 11;
+    private static final int NAME_AND_TYPE = 12;
+
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    private final DataOutputStream entries = new DataOutputStream(bytes);
+    private final Map<String, Integer> indexes = new HashMap<>();
+    private int nextIndex = 1;
+
+    public int utf8(String value) {
+        return entry("utf8:" + value, out -> {
+            out.writeByte(UTF8);
+            out.writeUTF(value);
+        });
+    }
+
+    public int integer(int value) {
+        return entry("int:" + value, out -> {
+            out.writeByte(INTEGER);
+            out.writeInt(value);
+        });
+    }
+
+    public int classRef(String classPath) {
+        int name = utf8(classPath);
+        return entry("class:" + classPath, out -> {
+            out.writeByte(CLASS);
+            out.writeShort(name);
+        });
+    }
+
+    public int nameAndType(String name, String descriptor) {
+        int nameIndex = utf8(name);
+        int descriptorIndex = utf8(descriptor);
+        return entry("nat:" + name + ':' + descriptor, out -> {
+            out.writeByte(NAME_AND_TYPE);
+            out.writeShort(nameIndex);
+            out.writeShort(descriptorIndex);
+        });
+    }
+
+    public int fieldRef(String classPath, String name, String descriptor) {
+        return memberRef(FIELD_REF, classPath, name, descriptor);
+    }
+
+    public int methodRef(String classPath, String name, String descriptor) {
+        return memberRef(METHOD_REF, classPath, name, descriptor);
+    }
+
+    public int interfaceMethodRef(String classPath, String name, String descriptor) {
+        return memberRef(INTERFACE_METHOD_REF, classPath, name, descriptor);
+    }
+
+    private int memberRef(int tag, String classPath, String name, String descriptor) {
+        int classIndex = classRef(classPath);
+        int nameAndTypeIndex = nameAndType(name, descriptor);
+        return entry("ref" + tag + ':' + classPath + '.' + name + ':' + descriptor, out -> {
+            out.writeByte(tag);
+            out.writeShort(classIndex);
+            out.writeShort(nameAndTypeIndex);
+        });
+    }
+
+    private int entry(String key, EntryWriter writer) {
+        var index = indexes.get(key);
+        if (index != null) {
+            return index;
+        }
+
+        try {
+            writer.write(entries);
+        } catch (IOException e) {
+            throw new RuntimeException("Could not write constant pool entry " + key, e);
+        }
+
+        indexes.put(key, nextIndex);
+        return nextIndex++;
+    }
+
+    public void write(DataOutputStream out) throws IOException {
+        if (nextIndex > 0xFFFF) {
+            throw new IllegalStateException("Constant pool has too many entries (" + (nextIndex - 1) + ")");
+        }
+
+        out.writeShort(nextIndex);
+        bytes.writeTo(out);
+    }
+
+    private interface EntryWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+}
@@ -0,0 +1,192 @@
+package pt.up.fe.comp2023.metrics;
+
+import com.sun.management.ThreadMXBean;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * Wall time, allocated bytes and output size of each stage of a compilation, for the whole class and for each of its
+ * methods, along with counters of the work done for the class and for each method. Every measurement is also
+ * committed as a JFR event, so a recording (e.g. with {@code -XX:StartFlightRecording}) holds the same data.
+ * <p>
+ * The metrics of a compilation are bound to the thread that runs it, so the stages deep inside the compiler report to
+ * them through the static methods, which do nothing when no compilation is being measured on the current thread.
+ */
+public class CompileMetrics implements AutoCloseable {
+
+    private static final ThreadLocal<CompileMetrics> CURRENT = new ThreadLocal<>();
+    private static final ThreadMXBean THREADS = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    /**
+     * @param outputSize the size of what the stage produced, in the unit that fits it (AST nodes, OLLIR instructions,
+     *                   characters, bytes...)
+     */
+    public record StageMetrics(String stage, long wallNanos, long allocatedBytes, long outputSize) {
+    }
+
+    public static class MethodMetrics {
+
+        private final List<StageMetrics> stages = new ArrayList<>();
+        private final Map<String, Long> counters = new LinkedHashMap<>();
+
+        public List<StageMetrics> getStages() {
+            return stages;
+        }
+
+        public Map<String, Long> getCounters() {
+            return counters;
+        }
+    }
+
+    private final transient CompileMetrics previous;
+
+    private String className = "";
+    private final List<StageMetrics> stages = new ArrayList<>();
+    private final Map<String, Long> counters = new LinkedHashMap<>();
+    private final Map<String, MethodMetrics> methods = new LinkedHashMap<>();
+
+    private CompileMetrics(CompileMetrics previous) {
+        this.previous = previous;
+    }
+
+    /**
+     * Starts measuring a compilation on the current thread, until the returned metrics are closed.
+     */
+    public static CompileMetrics start() {
+        var metrics = new CompileMetrics(CURRENT.get());
+        CURRENT.set(metrics);
+
+        return metrics;
+    }
+
+    @Override
+    public void close() {
+        if (previous != null) {
+            CURRENT.set(previous);
+        } else {
+            CURRENT.remove();
+        }
+    }
+
+    public String getClassName() {
+        return className;
+    }
+
+    public void setClassName(String className) {
+        this.className = className;
+    }
+
+    public List<StageMetrics> getStages() {
+        return stages;
+    }
+
+    public Map<String, Long> getCounters() {
+        return counters;
+    }
+
+    public Map<String, MethodMetrics> getMethods() {
+        return methods;
+    }
+
+    /**
+     * Runs a stage of the compilation of the whole class.
+     */
+    public <T> T measure(String stage, Supplier<T> run, ToLongFunction<T> outputSize) {
+        return measure(null, stage, run, outputSize);
+    }
+
+    /**
+     * Runs a stage of the compilation of a method, measuring it if a compilation is being measured.
+     */
+    public static <T> T measure(String method, String stage, Supplier<T> run, ToLongFunction<T> outputSize) {
+        var metrics = CURRENT.get();
+        if (metrics == null)
+            return run.get();
+
+        return metrics.measureStage(method, stage, run, outputSize);
+    }
+
+    /**
+     * Adds to a counter of a method, or of the whole class if the method is null, for work that may be done more than
+     * once.
+     */
+    public static void increment(String method, String counter, long amount) {
+        var metrics = CURRENT.get();
+        if (metrics == null)
+            return;
+
+        long value = metrics.getCounters(method).merge(counter, amount, Long::sum);
+        metrics.commitCounter(method, counter, value);
+    }
+
+    /**
+     * Sets a counter of a method, or of the whole class if the method is null, replacing any previous value.
+     */
+    public static void record(String method, String counter, long value) {
+        var metrics = CURRENT.get();
+        if (metrics == null)
+            return;
+
+        metrics.getCounters(method).put(counter, value);
+        metrics.commitCounter(method, counter, value);
+    }
+
+    private MethodMetrics getMethod(String method) {
+        return methods.computeIfAbsent(method, name -> new MethodMetrics());
+    }
+
+    private Map<String, Long> getCounters(String method) {
+        return method == null ? counters : getMethod(method).counters;
+    }
+
+    private <T> T measureStage(String method, String stage, Supplier<T> run, ToLongFunction<T> outputSize) {
+        var event = new StageEvent();
+        event.begin();
+
+        long startAllocatedBytes = THREADS.getCurrentThreadAllocatedBytes();
+        long startTime = System.nanoTime();
+
+        T result = run.get();
+
+        long wallNanos = System.nanoTime() - startTime;
+        long allocatedBytes = THREADS.getCurrentThreadAllocatedBytes() - startAllocatedBytes;
+        long size = outputSize.applyAsLong(result);
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.className = className;
+            event.method = method;
+            event.stage = stage;
+            event.allocatedBytes = allocatedBytes;
+            event.outputSize = size;
+            event.commit();
+        }
+
+        var stageMetrics = new StageMetrics(stage, wallNanos, allocatedBytes, size);
+        if (method == null) {
+            stages.add(stageMetrics);
+        } else {
+            getMethod(method).stages.add(stageMetrics);
+        }
+
+        return result;
+    }
+
+    private void commitCounter(String method, String counter, long value) {
+        var event = new CounterEvent();
+        if (!event.shouldCommit())
+            return;
+
+        event.className = className;
+        event.method = method;
+        event.counter = counter;
+        event.value = value;
+        event.commit();
+    }
+}
@@ -0,0 +1,32 @@
+package pt.up.fe.comp2023.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The value of a counter of the work done to compile a class or one of its methods, such as liveness iterations or
+ * interference edges
+ */
+@Name("pt.up.fe.comp2023.Counter")
+@Label("Compiler Counter")
+@Category({"Java--", "Compiler"})
+@Description("The value of a counter of the work done to compile a class or one of its methods")
+@StackTrace(false)
+class CounterEvent extends jdk.jfr.Event {
+
+    @Label("Class")
+    String className;
+
+    @Label("Method")
+    @Description("The method the counter belongs to, or null for the whole class")
+    String method;
+
+    @Label("Counter")
+    String counter;
+
+    @Label("Value")
+    long value;
+}
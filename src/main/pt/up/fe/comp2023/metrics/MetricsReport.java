@@ -0,0 +1,30 @@
+package pt.up.fe.comp2023.metrics;
+
+import com.google.gson.GsonBuilder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The metrics of a run of the compiler, one entry per compiled source, written as JSON.
+ */
+public class MetricsReport {
+
+    private record Compilation(String source, CompileMetrics metrics) {
+    }
+
+    private final List<Compilation> compilations = new ArrayList<>();
+
+    public void add(String source, CompileMetrics metrics) {
+        compilations.add(new Compilation(source, metrics));
+    }
+
+    public void write(File file) throws IOException {
+        var gson = new GsonBuilder().setPrettyPrinting().create();
+
+        Files.writeString(file.toPath(), gson.toJson(compilations));
+    }
+}
@@ -0,0 +1,36 @@
+package pt.up.fe.comp2023.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A stage of the compilation of a class, or of one of its methods
+ */
+@Name("pt.up.fe.comp2023.Stage")
+@Label("Compiler Stage")
+@Category({"Java--", "Compiler"})
+@Description("A stage of the compilation of a class, or of one of its methods")
+@StackTrace(false)
+class StageEvent extends jdk.jfr.Event {
+
+    @Label("Class")
+    String className;
+
+    @Label("Method")
+    @Description("The method the stage ran on, or null for the whole class")
+    String method;
+
+    @Label("Stage")
+    String stage;
+
+    @Label("Allocated")
+    @DataAmount
+    long allocatedBytes;
+
+    @Label("Output Size")
+    long outputSize;
+}
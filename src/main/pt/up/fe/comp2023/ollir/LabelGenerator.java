@@ -11,6 +11,10 @@ public class LabelGenerator {
     public WhileStatement newWhile() {
         return new WhileStatement(counter++);
     }
+
+    public AndExpression newAnd() {
+        return new AndExpression(counter++);
+    }
     
     public static class IfStatement {
         
@@ -55,4 +59,24 @@ public class LabelGenerator {
 
 
     }
+
+    public static class AndExpression {
+
+        private final int id;
+
+        private AndExpression(int id) {
+            this.id = id;
+        }
+
+        /**
+         * @return the label of the code that evaluates the right operand, which only runs when the left one holds
+         */
+        public String getAndRight() {
+            return "andRight" + id;
+        }
+
+        public String getAndEnd() {
+            return "andEnd" + id;
+        }
+    }
 }
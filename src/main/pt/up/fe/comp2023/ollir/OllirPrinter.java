@@ -0,0 +1,193 @@
+package pt.up.fe.comp2023.ollir;
+
+import org.specs.comp.ollir.*;
+
+import java.util.stream.Collectors;
+
+/**
+ * Prints an OLLIR class as OLLIR code, which the OLLIR parser reads back into the same class.
+ */
+public class OllirPrinter {
+
+    public String print(ClassUnit classUnit) {
+        var code = new StringBuilder();
+
+        for (String importedClass : classUnit.getImports()) {
+            code.append("import ").append(importedClass).append(";\n");
+        }
+
+        code.append('\n').append(classUnit.getClassName());
+        if (classUnit.getSuperClass() != null)
+            code.append(" extends ").append(classUnit.getSuperClass());
+
+        code.append(" {\n");
+
+        for (Field field : classUnit.getFields()) {
+            code.append("\n    .field public ").append(field.getFieldName()).append('.').append(type(field.getFieldType()))
+                    .append(";\n");
+        }
+
+        for (Method method : classUnit.getMethods()) {
+            code.append('\n').append(method(method).indent(4));
+        }
+
+        return code.append("}\n").toString();
+    }
+
+    private String method(Method method) {
+        var code = new StringBuilder();
+
+        if (method.isConstructMethod()) {
+            code.append(".construct ").append(method.getMethodName());
+        } else {
+            code.append(".method");
+            if (method.getMethodAccessModifier() == AccessModifiers.PUBLIC) code.append(" public");
+            if (method.isStaticMethod()) code.append(" static");
+            code.append(' ').append(method.getMethodName());
+        }
+
+        var params = method.getParams().stream()
+                .map(param -> ((Operand) param).getName() + '.' + type(param.getType()))
+                .collect(Collectors.joining(", "));
+
+        code.append('(').append(params).append(").").append(type(method.getReturnType())).append(" {\n");
+
+        for (Instruction instruction : method.getInstructions()) {
+            var labels = method.getLabels(instruction);
+            if (labels != null) {
+                for (String label : labels) {
+                    code.append(label).append(":\n");
+                }
+            }
+
+            code.append("    ").append(instruction(instruction)).append(";\n");
+        }
+
+        return code.append("}\n").toString();
+    }
+
+    private String instruction(Instruction instruction) {
+        if (instruction instanceof AssignInstruction assign) {
+            var type = type(assign.getTypeOfAssign());
+            return element(assign.getDest()) + " :=." + type + ' ' + instruction(assign.getRhs());
+        }
+
+        if (instruction instanceof SingleOpInstruction singleOp) {
+            return element(singleOp.getSingleOperand());
+        }
+
+        if (instruction instanceof UnaryOpInstruction unaryOp) {
+            return operation(unaryOp.getOperation()) + ' ' + element(unaryOp.getOperand());
+        }
+
+        if (instruction instanceof BinaryOpInstruction binaryOp) {
+            return element(binaryOp.getLeftOperand()) + ' ' + operation(binaryOp.getOperation()) + ' '
+                    + element(binaryOp.getRightOperand());
+        }
+
+        if (instruction instanceof CallInstruction call) {
+            return call(call);
+        }
+
+        if (instruction instanceof GetFieldInstruction getField) {
+            return "getfield(%s, %s).%s".formatted(element(getField.getFirstOperand()),
+                    element(getField.getSecondOperand()), type(getField.getFieldType()));
+        }
+
+        if (instruction instanceof PutFieldInstruction putField) {
+            return "putfield(%s, %s, %s).V".formatted(element(putField.getFirstOperand()),
+                    element(putField.getSecondOperand()), element(putField.getThirdOperand()));
+        }
+
+        if (instruction instanceof CondBranchInstruction condGoto) {
+            return "if (%s) goto %s".formatted(instruction(condGoto.getCondition()), condGoto.getLabel());
+        }
+
+        if (instruction instanceof GotoInstruction uncondGoto) {
+            return "goto " + uncondGoto.getLabel();
+        }
+
+        if (instruction instanceof ReturnInstruction ret) {
+            var code = "ret." + type(ret.getReturnType());
+            return ret.hasReturnValue() ? code + ' ' + element(ret.getOperand()) : code;
+        }
+
+        throw new IllegalArgumentException("Unsupported instruction " + instruction.getInstType());
+    }
+
+    private String call(CallInstruction call) {
+        var args = new StringBuilder();
+
+        if (call.getInvocationType() == CallType.NEW) {
+            var firstArg = call.getFirstArg();
+            args.append(firstArg.getType().getTypeOfElement() == ElementType.ARRAYREF
+                    ? "array" : ((Operand) firstArg).getName());
+        } else {
+            args.append(element(call.getFirstArg()));
+        }
+
+        if (call.getSecondArg() != null)
+            args.append(", ").append(element(call.getSecondArg()));
+
+        if (call.getListOfOperands() != null) {
+            for (Element operand : call.getListOfOperands()) {
+                args.append(", ").append(element(operand));
+            }
+        }
+
+        return "%s(%s).%s".formatted(call.getInvocationType().name().toLowerCase(), args, type(call.getReturnType()));
+    }
+
+    private String operation(Operation operation) {
+        var op = switch (operation.getOpType()) {
+            case ADD -> "+";
+            case SUB -> "-";
+            case MUL -> "*";
+            case DIV -> "/";
+            case LTH -> "<";
+            case ANDB -> "&&";
+            case NOTB -> "!";
+            default -> throw new IllegalArgumentException("Unsupported operation " + operation.getOpType());
+        };
+
+        return op + '.' + type(operation.getTypeInfo());
+    }
+
+    private String element(Element element) {
+        if (element instanceof LiteralElement literal) {
+            if (literal.getType().getTypeOfElement() == ElementType.STRING)
+                return literal.getLiteral();
+
+            return literal.getLiteral() + '.' + type(literal.getType());
+        }
+
+        var operand = (Operand) element;
+        if (operand.getType().getTypeOfElement() == ElementType.CLASS)
+            return operand.getName();
+
+        var name = operand.getName();
+        if (operand instanceof ArrayOperand arrayOperand) {
+            var indexes = arrayOperand.getIndexOperands().stream()
+                    .map(this::element)
+                    .collect(Collectors.joining(", "));
+
+            name += '[' + indexes + ']';
+        }
+
+        if (operand.isParameter() && !name.equals("this"))
+            name = "$" + operand.getParamId() + '.' + name;
+
+        return name + '.' + type(operand.getType());
+    }
+
+    private String type(Type type) {
+        return switch (type.getTypeOfElement()) {
+            case INT32 -> "i32";
+            case BOOLEAN -> "bool";
+            case VOID -> "V";
+            case STRING -> "String";
+            case ARRAYREF -> "array." + type(((ArrayType) type).getElementType());
+            case OBJECTREF, CLASS, THIS -> ((ClassType) type).getName();
+        };
+    }
+}
@@ -0,0 +1,43 @@
+package pt.up.fe.comp2023.ollir.builder;
+
+import org.specs.comp.ollir.Instruction;
+import org.specs.comp.ollir.Method;
+import org.specs.comp.ollir.Operand;
+import pt.up.fe.comp2023.analysis.context.table.JmmSymbolTable;
+import pt.up.fe.comp2023.ollir.LabelGenerator;
+import pt.up.fe.comp2023.ollir.VariableGenerator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @param target variable where the value of the expression being built must be stored, or null if it can be stored
+ *               in a new temporary variable
+ */
+public record BuilderContext(JmmSymbolTable.Method method, Method ollirMethod, VariableGenerator variables,
+                             LabelGenerator labels, List<String> pendingLabels, Operand target) {
+
+    public BuilderContext(JmmSymbolTable.Method method, Method ollirMethod) {
+        this(method, ollirMethod, new VariableGenerator(), new LabelGenerator(), new ArrayList<>(), null);
+    }
+
+    public BuilderContext withTarget(Operand target) {
+        return new BuilderContext(method, ollirMethod, variables, labels, pendingLabels, target);
+    }
+
+    public void emit(Instruction instruction) {
+        for (String label : pendingLabels) {
+            ollirMethod.addLabel(label, instruction);
+        }
+
+        pendingLabels.clear();
+        ollirMethod.addInstr(instruction);
+    }
+
+    /**
+     * Labels the next emitted instruction.
+     */
+    public void label(String label) {
+        pendingLabels.add(label);
+    }
+}
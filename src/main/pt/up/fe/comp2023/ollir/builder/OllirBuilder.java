@@ -0,0 +1,278 @@
+package pt.up.fe.comp2023.ollir.builder;
+
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp.jmm.ast.AJmmVisitor;
+import pt.up.fe.comp.jmm.ast.JmmNode;
+import pt.up.fe.comp2023.analysis.context.table.JmmSymbolTable;
+import pt.up.fe.comp2023.analysis.type.primitives.JmmArrayType;
+import pt.up.fe.comp2023.analysis.type.primitives.JmmClassType;
+import pt.up.fe.comp2023.utils.JmmNodeUtils;
+
+import java.util.ArrayList;
+
+/**
+ * Builds the OLLIR class of an annotated AST directly, producing the same structure the OLLIR parser would produce
+ * from its code, without going through text.
+ */
+public class OllirBuilder extends AJmmVisitor<BuilderContext, Void> {
+
+    private final OllirExpressionBuilder expressionBuilder = new OllirExpressionBuilder();
+    private final JmmSymbolTable symbolTable;
+    private final ClassUnit classUnit = new ClassUnit();
+
+    public OllirBuilder(JmmSymbolTable symbolTable) {
+        this.symbolTable = symbolTable;
+    }
+
+    public ClassUnit build(JmmNode rootNode) {
+        visit(rootNode);
+        classUnit.buildVarTables();
+
+        return classUnit;
+    }
+
+    @Override
+    protected void buildVisitor() {
+        addVisit("Program", this::dealWithProgram);
+        addVisit("ClassDeclaration", this::dealWithClassDeclaration);
+        addVisit("VarDeclaration", this::dealWithVarDeclaration);
+        addVisit("MainMethodDeclaration", this::dealWithMainMethodDeclaration);
+        addVisit("GenericMethodDeclaration", this::dealWithGenericMethodDeclaration);
+        addVisit("BlockStatement", this::dealWithBlockStatement);
+        addVisit("ExpressionStatement", this::dealWithExpressionStatement);
+        addVisit("VariableAssignmentStatement", this::dealWithVariableAssignmentStatement);
+        addVisit("ArrayIndexAssignmentStatement", this::dealWithArrayIndexAssignmentStatement);
+        addVisit("IfStatement", this::dealWithIfStatement);
+        addVisit("WhileStatement", this::dealWithWhileStatement);
+        setDefaultVisit((node, ctx) -> null);
+    }
+
+    private Void dealWithProgram(JmmNode jmmNode, BuilderContext ctx) {
+        for (JmmClassType importedClass : symbolTable.getImports().values()) {
+            classUnit.addImport(importedClass.getName());
+        }
+
+        visit(jmmNode.getJmmChild(jmmNode.getNumChildren() - 1), ctx);
+        return null;
+    }
+
+    private Void dealWithClassDeclaration(JmmNode jmmNode, BuilderContext ctx) {
+        JmmClassType thisClass = symbolTable.getThisClass();
+
+        classUnit.setClassName(thisClass.getSimpleName());
+        if (thisClass.hasSuperClass() && !thisClass.getSuperClass().equals(JmmClassType.OBJECT))
+            classUnit.setSuperClass(thisClass.getSuperClass().getSimpleName());
+
+        for (var childNode : jmmNode.getChildren()) {
+            visit(childNode, ctx);
+        }
+
+        var constructor = new Method(classUnit);
+        constructor.setConstructMethod();
+        constructor.setMethodName(thisClass.getSimpleName());
+        constructor.setMethodAccessModifier(AccessModifiers.DEFAULT);
+        constructor.setReturnType(new Type(ElementType.VOID));
+
+        var thisRef = new Operand("this", new ClassType(ElementType.THIS, thisClass.getSimpleName()));
+        var init = new LiteralElement("\"<init>\"", new Type(ElementType.STRING));
+        constructor.addInstr(new CallInstruction(CallType.invokespecial, thisRef, init, new ArrayList<>(),
+                new Type(ElementType.VOID)));
+
+        classUnit.addMethod(constructor);
+        return null;
+    }
+
+    private Void dealWithVarDeclaration(JmmNode jmmNode, BuilderContext ctx) {
+        if (ctx != null) return null;
+
+        var symbol = symbolTable.getFieldByName(jmmNode.get("name")).orElseThrow();
+
+        var field = new Field();
+        field.setFieldAccessModifier(AccessModifiers.PUBLIC);
+        field.setFieldName(symbol.name());
+        field.setFieldType(OllirTypes.toOllirType(symbol.type()));
+
+        classUnit.addField(field);
+        return null;
+    }
+
+    private Method newMethod(JmmNode jmmNode, JmmSymbolTable.Method method) {
+        var ollirMethod = new Method(classUnit);
+        ollirMethod.setMethodName(method.getName());
+        ollirMethod.setMethodAccessModifier(jmmNode.getObject("isPublic", Boolean.class)
+                ? AccessModifiers.PUBLIC : AccessModifiers.DEFAULT);
+        ollirMethod.setReturnType(OllirTypes.toOllirType(method.getReturnType()));
+
+        classUnit.addMethod(ollirMethod);
+        return ollirMethod;
+    }
+
+    private Void dealWithMainMethodDeclaration(JmmNode jmmNode, BuilderContext ctx) {
+        var method = symbolTable.getMethodByName(jmmNode.get("methodName")).orElseThrow();
+
+        var ollirMethod = newMethod(jmmNode, method);
+        ollirMethod.setStaticMethod();
+
+        var argsType = OllirTypes.toOllirType(new JmmArrayType<>(JmmClassType.STRING));
+        ollirMethod.addParam(OllirExpressionBuilder.variable(jmmNode.get("arrayName"), argsType, 0));
+
+        var childContext = new BuilderContext(method, ollirMethod);
+        for (var childNode : jmmNode.getChildren()) {
+            visit(childNode, childContext);
+        }
+
+        var ret = new ReturnInstruction();
+        ret.setReturnType(new Type(ElementType.VOID));
+        childContext.emit(ret);
+
+        return null;
+    }
+
+    private Void dealWithGenericMethodDeclaration(JmmNode jmmNode, BuilderContext ctx) {
+        var method = symbolTable.getMethodByName(jmmNode.get("methodName")).orElseThrow();
+
+        var ollirMethod = newMethod(jmmNode, method);
+
+        var parameters = method.getParameters();
+        for (int i = 0; i < parameters.size(); i++) {
+            var parameter = parameters.get(i);
+            ollirMethod.addParam(OllirExpressionBuilder.variable(parameter.name(),
+                    OllirTypes.toOllirType(parameter.type()), i + 1));
+        }
+
+        var childContext = new BuilderContext(method, ollirMethod);
+        for (int i = parameters.size() + 1; i < jmmNode.getNumChildren() - 1; i++) {
+            visit(jmmNode.getJmmChild(i), childContext);
+        }
+
+        var returnChild = jmmNode.getJmmChild(jmmNode.getNumChildren() - 1);
+        var returnValue = expressionBuilder.visit(returnChild, childContext);
+
+        var ret = new ReturnInstruction(returnValue);
+        ret.setReturnType(ollirMethod.getReturnType());
+        childContext.emit(ret);
+
+        return null;
+    }
+
+    private Void dealWithBlockStatement(JmmNode jmmNode, BuilderContext ctx) {
+        for (var node : jmmNode.getChildren()) {
+            visit(node, ctx);
+        }
+
+        return null;
+    }
+
+    private Void dealWithExpressionStatement(JmmNode jmmNode, BuilderContext ctx) {
+        expressionBuilder.visit(jmmNode.getJmmChild(0), ctx);
+        return null;
+    }
+
+    private Void dealWithVariableAssignmentStatement(JmmNode jmmNode, BuilderContext ctx) {
+        var name = jmmNode.get("name");
+        var type = OllirTypes.toOllirType(JmmNodeUtils.getNodeType(jmmNode).orElseThrow());
+
+        var methodSymbolTable = ctx.method();
+
+        var parameterIndex = methodSymbolTable.getParameterIndexByName(name);
+        if (parameterIndex.isPresent() || methodSymbolTable.getLocalVariableByName(name).isPresent()) {
+            var variable = OllirExpressionBuilder.variable(name, type,
+                    parameterIndex.isPresent() ? parameterIndex.getAsInt() + 1 : -1);
+
+            var value = expressionBuilder.visit(jmmNode.getJmmChild(0), ctx.withTarget(variable));
+            if (value != variable)
+                ctx.emit(new AssignInstruction(variable, type, new SingleOpInstruction(value)));
+
+            return null;
+        }
+
+        // FIELD
+        var value = expressionBuilder.visit(jmmNode.getJmmChild(0), ctx);
+        ctx.emit(new PutFieldInstruction(thisReference(), new Operand(name, type), value, new Type(ElementType.VOID)));
+
+        return null;
+    }
+
+    private Void dealWithArrayIndexAssignmentStatement(JmmNode jmmNode, BuilderContext ctx) {
+        var name = jmmNode.get("name");
+        var type = OllirTypes.toOllirType(JmmNodeUtils.getNodeType(jmmNode).orElseThrow());
+
+        var index = expressionBuilder.visit(jmmNode.getJmmChild(0), ctx);
+        var value = expressionBuilder.visit(jmmNode.getJmmChild(1), ctx);
+
+        var indexes = new ArrayList<Element>();
+        indexes.add(index);
+
+        var methodSymbolTable = ctx.method();
+
+        var parameterIndex = methodSymbolTable.getParameterIndexByName(name);
+        if (parameterIndex.isPresent() || methodSymbolTable.getLocalVariableByName(name).isPresent()) {
+            var arrayAccess = new ArrayOperand(name, type, indexes);
+            if (parameterIndex.isPresent()) arrayAccess.setParamId(parameterIndex.getAsInt() + 1);
+
+            ctx.emit(new AssignInstruction(arrayAccess, type, new SingleOpInstruction(value)));
+            return null;
+        }
+
+        // FIELD
+        var arrayType = OllirTypes.toOllirType(new JmmArrayType<>(JmmNodeUtils.getNodeType(jmmNode).orElseThrow()));
+
+        var localArray = new Operand(ctx.variables().getFreeVariable(), arrayType);
+        var getField = new GetFieldInstruction(thisReference(), new Operand(name, arrayType), arrayType);
+        ctx.emit(new AssignInstruction(localArray, arrayType, getField));
+
+        var arrayAccess = new ArrayOperand(localArray.getName(), type, indexes);
+        ctx.emit(new AssignInstruction(arrayAccess, type, new SingleOpInstruction(value)));
+
+        return null;
+    }
+
+    private Void dealWithIfStatement(JmmNode jmmNode, BuilderContext ctx) {
+        var ifLabels = ctx.labels().newIf();
+        expressionBuilder.visitCondition(jmmNode.getJmmChild(0), ctx, ifLabels.getIf());
+
+        // IF FALSE
+        if (jmmNode.getNumChildren() > 2) {
+            visit(jmmNode.getJmmChild(2), ctx);
+        }
+
+        ctx.emit(new GotoInstruction(ifLabels.getEndIf()));
+
+        // IF TRUE
+        ctx.label(ifLabels.getIf());
+        visit(jmmNode.getJmmChild(1), ctx);
+
+        // END
+        ctx.label(ifLabels.getEndIf());
+
+        return null;
+    }
+
+    private Void dealWithWhileStatement(JmmNode jmmNode, BuilderContext ctx) {
+        var whileLabels = ctx.labels().newWhile();
+
+        // WHILE CONDITION
+        ctx.label(whileLabels.getWhileCond());
+
+        // IF CONDITION IS TRUE, LOOP
+        expressionBuilder.visitCondition(jmmNode.getJmmChild(0), ctx, whileLabels.getWhileLoop());
+        // ELSE END WHILE
+        ctx.emit(new GotoInstruction(whileLabels.getWhileEnd()));
+
+        // WHILE LOOP
+        ctx.label(whileLabels.getWhileLoop());
+        visit(jmmNode.getJmmChild(1), ctx);
+
+        // GO BACK TO START
+        ctx.emit(new GotoInstruction(whileLabels.getWhileCond()));
+
+        // WHILE END
+        ctx.label(whileLabels.getWhileEnd());
+
+        return null;
+    }
+
+    private Operand thisReference() {
+        return new Operand("this", new ClassType(ElementType.THIS, symbolTable.getThisClass().getSimpleName()));
+    }
+}
@@ -0,0 +1,316 @@
+package pt.up.fe.comp2023.ollir.builder;
+
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp.jmm.ast.AJmmVisitor;
+import pt.up.fe.comp.jmm.ast.JmmNode;
+import pt.up.fe.comp2023.analysis.type.primitives.JmmType;
+import pt.up.fe.comp2023.analysis.type.primitives.JmmVoidType;
+import pt.up.fe.comp2023.analysis.type.primitives.meta.JmmStaticReferenceType;
+import pt.up.fe.comp2023.analysis.type.primitives.meta.JmmUnknownType;
+import pt.up.fe.comp2023.utils.JmmNodeUtils;
+
+import java.util.ArrayList;
+
+/**
+ * Emits the instructions that compute an expression and returns the element holding its value (null for calls to void
+ * methods). When the context has a target, the value is computed directly into it whenever the expression needs an
+ * instruction of its own.
+ */
+public class OllirExpressionBuilder extends AJmmVisitor<BuilderContext, Element> {
+
+    @Override
+    protected void buildVisitor() {
+        addVisit("ParenthesisExpression", this::dealWithParenthesisExpression);
+        addVisit("ArrayIndexExpression", this::dealWithArrayIndexExpression);
+        addVisit("MethodCallExpression", this::dealWithMethodCallExpression);
+        addVisit("PropertyAccessExpression", this::dealWithPropertyAccessExpression);
+        addVisit("UnaryOp", this::dealWithUnaryOp);
+        addVisit("BinaryOp", this::dealWithBinaryOp);
+        addVisit("ArrayInitializationExpression", this::dealWithArrayInitializationExpression);
+        addVisit("ObjectInitializationExpression", this::dealWithObjectInitializationExpression);
+        addVisit("IntegerLiteral", this::dealWithIntegerLiterals);
+        addVisit("BooleanLiteral", this::dealWithBooleanLiterals);
+        addVisit("ThisLiteral", this::dealWithThisLiteral);
+        addVisit("VariableLiteral", this::dealWithVariableLiteral);
+    }
+
+    private Element visitOperand(JmmNode jmmNode, BuilderContext ctx) {
+        return visit(jmmNode, ctx.withTarget(null));
+    }
+
+    private Operand resultOperand(BuilderContext ctx, Type type) {
+        if (ctx.target() != null)
+            return ctx.target();
+
+        return new Operand(ctx.variables().getFreeVariable(), type);
+    }
+
+    private Operand assign(BuilderContext ctx, Type type, Instruction rhs) {
+        var result = resultOperand(ctx, type);
+        ctx.emit(new AssignInstruction(result, type, rhs));
+        return result;
+    }
+
+    public static Operand variable(String name, Type type, int parameterId) {
+        var operand = new Operand(name, type);
+        if (parameterId >= 0) operand.setParamId(parameterId);
+        return operand;
+    }
+
+    /**
+     * Emits the instructions that jump to the label when the condition holds and fall through otherwise. Comparisons
+     * and {@code !} are tested by the branch itself, and the right operand of {@code &&} is only evaluated when the
+     * left one holds. A literal condition needs no test, so the code it skips is left unreachable, as in
+     * {@code false && b}.
+     */
+    public void visitCondition(JmmNode jmmNode, BuilderContext ctx, String label) {
+        while (jmmNode.getKind().equals("ParenthesisExpression")) {
+            jmmNode = jmmNode.getJmmChild(0);
+        }
+
+        if (jmmNode.getKind().equals("BooleanLiteral")) {
+            if (jmmNode.get("value").equals("true"))
+                ctx.emit(new GotoInstruction(label));
+
+            return;
+        }
+
+        if (jmmNode.getKind().equals("BinaryOp") && jmmNode.get("op").equals("&&")) {
+            var andLabels = ctx.labels().newAnd();
+
+            visitCondition(jmmNode.getJmmChild(0), ctx, andLabels.getAndRight());
+            ctx.emit(new GotoInstruction(andLabels.getAndEnd()));
+
+            ctx.label(andLabels.getAndRight());
+            visitCondition(jmmNode.getJmmChild(1), ctx, label);
+
+            ctx.label(andLabels.getAndEnd());
+            return;
+        }
+
+        var condition = buildCondition(jmmNode, ctx);
+        var condGoto = condition instanceof SingleOpInstruction singleOp
+                ? new SingleOpCondInstruction(singleOp)
+                : new OpCondInstruction((OpInstruction) condition);
+        condGoto.setLabel(label);
+
+        ctx.emit(condGoto);
+    }
+
+    private Instruction buildCondition(JmmNode jmmNode, BuilderContext ctx) {
+        var kind = jmmNode.getKind();
+        if (!kind.equals("BinaryOp") && !kind.equals("UnaryOp"))
+            return new SingleOpInstruction(visitOperand(jmmNode, ctx));
+
+        var returnType = OllirTypes.toOllirType(JmmNodeUtils.getNodeType(jmmNode).orElseThrow());
+        var operation = new Operation(getOperationType(jmmNode.get("op")), returnType);
+
+        if (kind.equals("UnaryOp"))
+            return new UnaryOpInstruction(operation, visitOperand(jmmNode.getJmmChild(0), ctx));
+
+        var lhs = visitOperand(jmmNode.getJmmChild(0), ctx);
+        var rhs = visitOperand(jmmNode.getJmmChild(1), ctx);
+
+        return new BinaryOpInstruction(lhs, operation, rhs);
+    }
+
+    private Element dealWithParenthesisExpression(JmmNode jmmNode, BuilderContext ctx) {
+        return visit(jmmNode.getJmmChild(0), ctx);
+    }
+
+    private Element dealWithArrayIndexExpression(JmmNode jmmNode, BuilderContext ctx) {
+        var array = (Operand) visitOperand(jmmNode.getJmmChild(0), ctx);
+        var index = visitOperand(jmmNode.getJmmChild(1), ctx);
+
+        var returnType = OllirTypes.toOllirType(JmmNodeUtils.getNodeType(jmmNode).orElseThrow());
+
+        var indexes = new ArrayList<Element>();
+        indexes.add(index);
+
+        var arrayAccess = new ArrayOperand(array.getName(), returnType, indexes);
+        if (array.isParameter()) arrayAccess.setParamId(array.getParamId());
+
+        return assign(ctx, returnType, new SingleOpInstruction(arrayAccess));
+    }
+
+    private Element dealWithMethodCallExpression(JmmNode jmmNode, BuilderContext ctx) {
+        JmmType returnType = JmmNodeUtils.getNodeType(jmmNode).orElseThrow();
+        var calleeType = JmmNodeUtils.getNodeType(jmmNode.getJmmChild(0)).orElseThrow();
+
+        boolean isStaticInvocation;
+
+        if (returnType instanceof JmmUnknownType) {
+            isStaticInvocation = calleeType instanceof JmmStaticReferenceType;
+            returnType = JmmNodeUtils.getNodeType(jmmNode.getJmmParent()).orElse(JmmVoidType.getInstance());
+        } else {
+            var methodName = jmmNode.get("name");
+            var method = ctx.method()
+                    .getParentTable()
+                    .getMethodByName(methodName)
+                    .orElseThrow();
+
+            isStaticInvocation = method.isStatic();
+        }
+
+        var methodName = jmmNode.get("name");
+        var callee = (Operand) visitOperand(jmmNode.getJmmChild(0), ctx);
+
+        var args = new ArrayList<Element>();
+        for (int i = 1; i < jmmNode.getNumChildren(); i++) {
+            args.add(visitOperand(jmmNode.getJmmChild(i), ctx));
+        }
+
+        var ollirReturnType = OllirTypes.toOllirType(returnType);
+        var methodNameLiteral = new LiteralElement('"' + methodName + '"', new Type(ElementType.STRING));
+
+        CallInstruction call;
+        if (isStaticInvocation) {
+            var className = ctx.ollirMethod().getOllirClass().getClassName();
+            var staticCallee = new Operand(callee.getName(), new ClassType(ElementType.CLASS, className));
+            call = new CallInstruction(CallType.invokestatic, staticCallee, methodNameLiteral, args, ollirReturnType);
+        } else {
+            call = new CallInstruction(CallType.invokevirtual, callee, methodNameLiteral, args, ollirReturnType);
+        }
+
+        if (returnType instanceof JmmVoidType) {
+            ctx.emit(call);
+            return null;
+        }
+
+        return assign(ctx, ollirReturnType, call);
+    }
+
+    private Element dealWithPropertyAccessExpression(JmmNode jmmNode, BuilderContext ctx) {
+        var returnType = OllirTypes.toOllirType(JmmNodeUtils.getNodeType(jmmNode).orElseThrow());
+        var array = visitOperand(jmmNode.getJmmChild(0), ctx);
+
+        return assign(ctx, returnType, new CallInstruction(CallType.arraylength, array, new ArrayList<>(), returnType));
+    }
+
+    private Element dealWithUnaryOp(JmmNode jmmNode, BuilderContext ctx) {
+        var returnType = OllirTypes.toOllirType(JmmNodeUtils.getNodeType(jmmNode).orElseThrow());
+        var operand = visitOperand(jmmNode.getJmmChild(0), ctx);
+
+        var operation = new Operation(getOperationType(jmmNode.get("op")), returnType);
+        return assign(ctx, returnType, new UnaryOpInstruction(operation, operand));
+    }
+
+    private Element dealWithBinaryOp(JmmNode jmmNode, BuilderContext ctx) {
+        var returnType = OllirTypes.toOllirType(JmmNodeUtils.getNodeType(jmmNode).orElseThrow());
+
+        // Only a literal can be evaluated eagerly, since even reading a variable may read one that is not assigned yet
+        if (jmmNode.get("op").equals("&&") && !isLiteral(jmmNode.getJmmChild(1)))
+            return dealWithAnd(jmmNode, ctx, returnType);
+
+        var lhs = visitOperand(jmmNode.getJmmChild(0), ctx);
+        var rhs = visitOperand(jmmNode.getJmmChild(1), ctx);
+
+        var operation = new Operation(getOperationType(jmmNode.get("op")), returnType);
+        return assign(ctx, returnType, new BinaryOpInstruction(lhs, operation, rhs));
+    }
+
+    private static boolean isLiteral(JmmNode jmmNode) {
+        while (jmmNode.getKind().equals("ParenthesisExpression")) {
+            jmmNode = jmmNode.getJmmChild(0);
+        }
+
+        return jmmNode.getKind().equals("BooleanLiteral");
+    }
+
+    private Element dealWithAnd(JmmNode jmmNode, BuilderContext ctx, Type returnType) {
+        var result = resultOperand(ctx, returnType);
+        var andLabels = ctx.labels().newAnd();
+
+        visitCondition(jmmNode.getJmmChild(0), ctx, andLabels.getAndRight());
+        ctx.emit(new AssignInstruction(result, returnType, new SingleOpInstruction(new LiteralElement("0", returnType))));
+        ctx.emit(new GotoInstruction(andLabels.getAndEnd()));
+
+        ctx.label(andLabels.getAndRight());
+        var rhs = visit(jmmNode.getJmmChild(1), ctx.withTarget(result));
+        if (rhs != result)
+            ctx.emit(new AssignInstruction(result, returnType, new SingleOpInstruction(rhs)));
+
+        ctx.label(andLabels.getAndEnd());
+        return result;
+    }
+
+    public static OperationType getOperationType(String op) {
+        return switch (op) {
+            case "+" -> OperationType.ADD;
+            case "-" -> OperationType.SUB;
+            case "*" -> OperationType.MUL;
+            case "/" -> OperationType.DIV;
+            case "<" -> OperationType.LTH;
+            case "&&" -> OperationType.ANDB;
+            case "!" -> OperationType.NOTB;
+            default -> throw new IllegalArgumentException("Unknown operator " + op);
+        };
+    }
+
+    private Element dealWithArrayInitializationExpression(JmmNode jmmNode, BuilderContext ctx) {
+        var returnType = OllirTypes.toOllirType(JmmNodeUtils.getNodeType(jmmNode).orElseThrow());
+        var size = visitOperand(jmmNode.getJmmChild(0), ctx);
+
+        var args = new ArrayList<Element>();
+        args.add(size);
+
+        var newArray = new CallInstruction(CallType.NEW, new Operand("array", returnType), args, returnType);
+        return assign(ctx, returnType, newArray);
+    }
+
+    private Element dealWithObjectInitializationExpression(JmmNode jmmNode, BuilderContext ctx) {
+        var returnType = (ClassType) OllirTypes.toOllirType(JmmNodeUtils.getNodeType(jmmNode).orElseThrow());
+
+        var newObject = new CallInstruction(CallType.NEW, new Operand(returnType.getName(), returnType),
+                new ArrayList<>(), returnType);
+        var result = assign(ctx, returnType, newObject);
+
+        var init = new LiteralElement("\"<init>\"", new Type(ElementType.STRING));
+        ctx.emit(new CallInstruction(CallType.invokespecial, result, init, new ArrayList<>(), new Type(ElementType.VOID)));
+
+        return result;
+    }
+
+    private Element dealWithIntegerLiterals(JmmNode jmmNode, BuilderContext ctx) {
+        var type = OllirTypes.toOllirType(JmmNodeUtils.getNodeType(jmmNode).orElseThrow());
+        return new LiteralElement(jmmNode.get("value"), type);
+    }
+
+    private Element dealWithBooleanLiterals(JmmNode jmmNode, BuilderContext ctx) {
+        var type = OllirTypes.toOllirType(JmmNodeUtils.getNodeType(jmmNode).orElseThrow());
+        return new LiteralElement(jmmNode.get("value").equals("true") ? "1" : "0", type);
+    }
+
+    private Element dealWithThisLiteral(JmmNode jmmNode, BuilderContext ctx) {
+        var className = ctx.method()
+                .getParentTable()
+                .getThisClass()
+                .getSimpleName();
+
+        return new Operand("this", new ClassType(ElementType.THIS, className));
+    }
+
+    private Element dealWithVariableLiteral(JmmNode jmmNode, BuilderContext ctx) {
+        var name = jmmNode.get("name");
+        var jmmType = JmmNodeUtils.getNodeType(jmmNode).orElseThrow();
+
+        if (jmmType instanceof JmmStaticReferenceType) {
+            var className = ctx.ollirMethod().getOllirClass().getClassName();
+            return new Operand(jmmType.toOllirTypeSuffix(), new ClassType(ElementType.CLASS, className));
+        }
+
+        var type = OllirTypes.toOllirType(jmmType);
+
+        var methodSymbolTable = ctx.method();
+        var parameterIndex = methodSymbolTable.getParameterIndexByName(name);
+
+        if (parameterIndex.isPresent())
+            return variable(name, type, parameterIndex.getAsInt() + 1);
+
+        if (methodSymbolTable.getLocalVariableByName(name).isPresent())
+            return variable(name, type, -1);
+
+        var thisRef = dealWithThisLiteral(jmmNode, ctx);
+        return assign(ctx, type, new GetFieldInstruction(thisRef, new Operand(name, type), type));
+    }
+}
@@ -0,0 +1,38 @@
+package pt.up.fe.comp2023.ollir.builder;
+
+import org.specs.comp.ollir.ArrayType;
+import org.specs.comp.ollir.ClassType;
+import org.specs.comp.ollir.ElementType;
+import org.specs.comp.ollir.Type;
+import pt.up.fe.comp2023.analysis.type.primitives.*;
+
+public class OllirTypes {
+
+    /**
+     * Converts a type of the AST into the OLLIR type the OLLIR parser would give to its {@code toOllirTypeSuffix()}.
+     */
+    public static Type toOllirType(JmmType type) {
+        if (type instanceof JmmArrayType<?> arrayType) {
+            var elementType = toOllirType(arrayType.getElementType());
+
+            var ollirArrayType = new ArrayType();
+            ollirArrayType.setNumDimensions(1);
+            ollirArrayType.setTypeOfElements(elementType.getTypeOfElement());
+
+            if (elementType instanceof ClassType classType) {
+                ollirArrayType.setElementClass(classType.getName());
+            } else if (elementType.getTypeOfElement() == ElementType.STRING) {
+                ollirArrayType.setElementClass("String");
+            }
+
+            return ollirArrayType;
+        }
+
+        if (type instanceof JmmIntType) return new Type(ElementType.INT32);
+        if (type instanceof JmmBooleanType) return new Type(ElementType.BOOLEAN);
+        if (type instanceof JmmVoidType) return new Type(ElementType.VOID);
+        if (type.equals(JmmClassType.STRING)) return new Type(ElementType.STRING);
+
+        return new ClassType(ElementType.OBJECTREF, type.toOllirTypeSuffix());
+    }
+}
@@ -0,0 +1,177 @@
+package pt.up.fe.comp2023.ollir.optimization.cfg;
+
+import org.specs.comp.ollir.Instruction;
+import org.specs.comp.ollir.InstructionType;
+import org.specs.comp.ollir.Method;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Basic blocks of a method and the edges between them, built from the CFG of its instructions. Blocks are numbered in
+ * the order of their instructions, so the first block is the entry of the method.
+ */
+public class ControlFlowGraph {
+
+    private final Method method;
+    private final List<Instruction> instructions;
+    private final Map<Instruction, Integer> positions = new HashMap<>();
+    private final int[] blockStarts;
+    private final int[] blocks;
+    private final List<List<Integer>> successors = new ArrayList<>();
+    private final List<List<Integer>> predecessors = new ArrayList<>();
+    private final List<Integer> reversePostorder;
+
+    /**
+     * @param method a method whose CFG is already built
+     */
+    public ControlFlowGraph(Method method) {
+        this.method = method;
+        this.instructions = method.getInstructions();
+
+        for (int i = 0; i < instructions.size(); i++) {
+            positions.put(instructions.get(i), i);
+        }
+
+        var labeled = new HashSet<>(method.getLabels().values());
+        var starts = new ArrayList<Integer>();
+        this.blocks = new int[instructions.size()];
+
+        for (int i = 0; i < instructions.size(); i++) {
+            if (i == 0 || labeled.contains(instructions.get(i)) || endsBlock(instructions.get(i - 1)))
+                starts.add(i);
+
+            blocks[i] = starts.size() - 1;
+        }
+
+        this.blockStarts = new int[starts.size() + 1];
+        for (int block = 0; block < starts.size(); block++) {
+            blockStarts[block] = starts.get(block);
+            successors.add(new ArrayList<>());
+            predecessors.add(new ArrayList<>());
+        }
+        blockStarts[starts.size()] = instructions.size();
+
+        for (int block = 0; block < getNumBlocks(); block++) {
+            var last = instructions.get(getEnd(block) - 1);
+
+            for (var successor : last.getSuccessors()) {
+                var position = positions.get(successor);
+                if (position == null)
+                    continue;
+
+                int successorBlock = blocks[position];
+                if (!successors.get(block).contains(successorBlock)) {
+                    successors.get(block).add(successorBlock);
+                    predecessors.get(successorBlock).add(block);
+                }
+            }
+        }
+
+        this.reversePostorder = computeReversePostorder();
+    }
+
+    private static boolean endsBlock(Instruction instruction) {
+        var type = instruction.getInstType();
+        return type == InstructionType.GOTO || type == InstructionType.BRANCH || type == InstructionType.RETURN;
+    }
+
+    private List<Integer> computeReversePostorder() {
+        var order = new ArrayList<Integer>();
+        if (getNumBlocks() == 0)
+            return order;
+
+        var visited = new boolean[getNumBlocks()];
+        var nextSuccessor = new int[getNumBlocks()];
+
+        var stack = new ArrayDeque<Integer>();
+        stack.push(0);
+        visited[0] = true;
+
+        while (!stack.isEmpty()) {
+            int block = stack.peek();
+            var blockSuccessors = successors.get(block);
+
+            if (nextSuccessor[block] < blockSuccessors.size()) {
+                int successor = blockSuccessors.get(nextSuccessor[block]++);
+                if (!visited[successor]) {
+                    visited[successor] = true;
+                    stack.push(successor);
+                }
+            } else {
+                stack.pop();
+                order.add(block);
+            }
+        }
+
+        var reversed = new ArrayList<Integer>(order.size());
+        for (int i = order.size() - 1; i >= 0; i--) {
+            reversed.add(order.get(i));
+        }
+
+        return reversed;
+    }
+
+    public Method getMethod() {
+        return method;
+    }
+
+    public List<Instruction> getInstructions() {
+        return instructions;
+    }
+
+    public int getPosition(Instruction instruction) {
+        return positions.get(instruction);
+    }
+
+    public int getNumBlocks() {
+        return blockStarts.length - 1;
+    }
+
+    /**
+     * @return the position of the first instruction of the block
+     */
+    public int getStart(int block) {
+        return blockStarts[block];
+    }
+
+    /**
+     * @return the position after the last instruction of the block
+     */
+    public int getEnd(int block) {
+        return blockStarts[block + 1];
+    }
+
+    /**
+     * @return the block of the instruction at the given position
+     */
+    public int getBlock(int position) {
+        return blocks[position];
+    }
+
+    public List<Integer> getSuccessors(int block) {
+        return successors.get(block);
+    }
+
+    public List<Integer> getPredecessors(int block) {
+        return predecessors.get(block);
+    }
+
+    /**
+     * @return the blocks reachable from the entry, in reverse postorder
+     */
+    public List<Integer> getReversePostorder() {
+        return reversePostorder;
+    }
+
+    public boolean[] getReachableBlocks() {
+        var reachable = new boolean[getNumBlocks()];
+        reversePostorder.forEach(block -> reachable[block] = true);
+
+        return reachable;
+    }
+}
@@ -0,0 +1,171 @@
+package pt.up.fe.comp2023.ollir.optimization.cfg;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Dominator tree and dominance frontiers of the blocks reachable from the entry of a CFG, computed with the iterative
+ * algorithm of Cooper, Harvey and Kennedy. Unreachable blocks are not part of the tree.
+ */
+public class DominatorTree {
+
+    private final ControlFlowGraph cfg;
+    private final int[] immediateDominators;
+    private final List<List<Integer>> children = new ArrayList<>();
+    private final List<List<Integer>> frontiers = new ArrayList<>();
+
+    // Preorder and postorder numbers of the blocks in the tree, to answer dominance queries in constant time
+    private final int[] preorder;
+    private final int[] postorder;
+
+    public DominatorTree(ControlFlowGraph cfg) {
+        this.cfg = cfg;
+
+        int numBlocks = cfg.getNumBlocks();
+        this.immediateDominators = new int[numBlocks];
+        this.preorder = new int[numBlocks];
+        this.postorder = new int[numBlocks];
+
+        for (int block = 0; block < numBlocks; block++) {
+            children.add(new ArrayList<>());
+            frontiers.add(new ArrayList<>());
+        }
+
+        computeImmediateDominators();
+        computeFrontiers();
+        numberTree();
+    }
+
+    private void computeImmediateDominators() {
+        Arrays.fill(immediateDominators, -1);
+
+        var reversePostorder = cfg.getReversePostorder();
+        if (reversePostorder.isEmpty())
+            return;
+
+        var order = new int[cfg.getNumBlocks()];
+        for (int i = 0; i < reversePostorder.size(); i++) {
+            order[reversePostorder.get(i)] = i;
+        }
+
+        int entry = reversePostorder.get(0);
+        immediateDominators[entry] = entry;
+
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+
+            for (int block : reversePostorder) {
+                if (block == entry)
+                    continue;
+
+                int newDominator = -1;
+                for (int predecessor : cfg.getPredecessors(block)) {
+                    if (immediateDominators[predecessor] == -1)
+                        continue;
+
+                    newDominator = newDominator == -1 ? predecessor : intersect(predecessor, newDominator, order);
+                }
+
+                if (immediateDominators[block] != newDominator) {
+                    immediateDominators[block] = newDominator;
+                    changed = true;
+                }
+            }
+        }
+
+        for (int block : reversePostorder) {
+            if (block != entry) children.get(immediateDominators[block]).add(block);
+        }
+    }
+
+    private int intersect(int first, int second, int[] order) {
+        while (first != second) {
+            while (order[first] > order[second]) first = immediateDominators[first];
+            while (order[second] > order[first]) second = immediateDominators[second];
+        }
+
+        return first;
+    }
+
+    private void computeFrontiers() {
+        for (int block : cfg.getReversePostorder()) {
+            var predecessors = cfg.getPredecessors(block);
+            if (predecessors.size() < 2)
+                continue;
+
+            for (int predecessor : predecessors) {
+                int runner = predecessor;
+                if (immediateDominators[runner] == -1)
+                    continue;
+
+                while (runner != immediateDominators[block]) {
+                    if (!frontiers.get(runner).contains(block)) frontiers.get(runner).add(block);
+                    runner = immediateDominators[runner];
+                }
+            }
+        }
+    }
+
+    private void numberTree() {
+        if (cfg.getReversePostorder().isEmpty())
+            return;
+
+        int counter = 0;
+        var nextChild = new int[cfg.getNumBlocks()];
+
+        var stack = new ArrayDeque<Integer>();
+        int entry = cfg.getReversePostorder().get(0);
+        stack.push(entry);
+        preorder[entry] = counter++;
+
+        while (!stack.isEmpty()) {
+            int block = stack.peek();
+            var blockChildren = children.get(block);
+
+            if (nextChild[block] < blockChildren.size()) {
+                int child = blockChildren.get(nextChild[block]++);
+                preorder[child] = counter++;
+                stack.push(child);
+            } else {
+                stack.pop();
+                postorder[block] = counter++;
+            }
+        }
+    }
+
+    public ControlFlowGraph getCfg() {
+        return cfg;
+    }
+
+    /**
+     * @return the immediate dominator of the block, the block itself for the entry, or -1 if it is unreachable
+     */
+    public int getImmediateDominator(int block) {
+        return immediateDominators[block];
+    }
+
+    public boolean isReachable(int block) {
+        return immediateDominators[block] != -1;
+    }
+
+    public List<Integer> getChildren(int block) {
+        return children.get(block);
+    }
+
+    public List<Integer> getFrontier(int block) {
+        return frontiers.get(block);
+    }
+
+    /**
+     * @return whether every path from the entry to the second block goes through the first one
+     */
+    public boolean dominates(int dominator, int block) {
+        if (!isReachable(dominator) || !isReachable(block))
+            return false;
+
+        return preorder[dominator] <= preorder[block] && postorder[block] <= postorder[dominator];
+    }
+}
@@ -0,0 +1,77 @@
+package pt.up.fe.comp2023.ollir.optimization.cfg;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Natural loops of a CFG. Every edge to a block that dominates its source is a back edge, and the loop of a back edge
+ * is made of its target, the header, and every block that reaches its source without going through the header. Loops
+ * with the same header are merged into one.
+ */
+public class NaturalLoops {
+
+    /**
+     * @param blocks  whether each block of the CFG is part of the loop
+     * @param latches the blocks with a back edge to the header
+     */
+    public record Loop(int header, boolean[] blocks, int size, List<Integer> latches) {
+
+        public boolean contains(int block) {
+            return blocks[block];
+        }
+    }
+
+    private final List<Loop> loops = new ArrayList<>();
+
+    public NaturalLoops(DominatorTree dominatorTree) {
+        var cfg = dominatorTree.getCfg();
+
+        for (int header : cfg.getReversePostorder()) {
+            var latches = cfg.getPredecessors(header).stream()
+                    .filter(predecessor -> dominatorTree.dominates(header, predecessor))
+                    .toList();
+
+            if (latches.isEmpty())
+                continue;
+
+            var blocks = new boolean[cfg.getNumBlocks()];
+            blocks[header] = true;
+            int size = 1;
+
+            var worklist = new ArrayDeque<Integer>();
+            for (int latch : latches) {
+                if (!blocks[latch]) {
+                    blocks[latch] = true;
+                    size++;
+                    worklist.add(latch);
+                }
+            }
+
+            while (!worklist.isEmpty()) {
+                int block = worklist.poll();
+
+                for (int predecessor : cfg.getPredecessors(block)) {
+                    if (!blocks[predecessor] && dominatorTree.isReachable(predecessor)) {
+                        blocks[predecessor] = true;
+                        size++;
+                        worklist.add(predecessor);
+                    }
+                }
+            }
+
+            loops.add(new Loop(header, blocks, size, latches));
+        }
+
+        // A loop nested in another one has fewer blocks
+        loops.sort(Comparator.comparingInt(Loop::size));
+    }
+
+    /**
+     * @return the loops of the CFG, with inner loops before the loops that contain them
+     */
+    public List<Loop> getLoops() {
+        return loops;
+    }
+}
@@ -0,0 +1,136 @@
+package pt.up.fe.comp2023.ollir.optimization.constants;
+
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp2023.ollir.optimization.cfg.ControlFlowGraph;
+import pt.up.fe.comp2023.ollir.optimization.ssa.ConstantPropagation;
+import pt.up.fe.comp2023.ollir.optimization.ssa.SsaForm;
+import pt.up.fe.comp2023.ollir.utils.InstructionUtils;
+import pt.up.fe.comp2023.ollir.utils.MethodUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Propagates constants through the OLLIR code with {@link ConstantPropagation}. Uses of variables that always hold a
+ * constant are replaced by the constant, expressions that always have the same result are folded, and branches whose
+ * condition is a constant become a jump or are removed. Code that can no longer run is left in place.
+ */
+public class ConstantPropagationOptimizer {
+
+    public void optimize(ClassUnit classUnit) {
+        for (var method : new ArrayList<>(classUnit.getMethods())) {
+            optimize(method);
+        }
+    }
+
+    /**
+     * Optimizes the method, replacing it in its class if its code changes.
+     *
+     * @return the optimized method
+     */
+    public Method optimize(Method method) {
+        MethodUtils.buildCFG(method);
+
+        var cfg = new ControlFlowGraph(method);
+        var ssa = new SsaForm(cfg);
+        var propagation = new ConstantPropagation(ssa);
+
+        var instructions = cfg.getInstructions();
+        var labels = MethodUtils.getLabelsByInstruction(method);
+
+        var newInstructions = new ArrayList<Instruction>();
+        var pendingLabels = new ArrayList<String>();
+        boolean changed = false;
+
+        for (int i = 0; i < instructions.size(); i++) {
+            var instruction = instructions.get(i);
+            var newInstruction = propagation.isExecutable(cfg.getBlock(i))
+                    ? rewrite(i, instruction, ssa, propagation)
+                    : instruction;
+
+            changed |= newInstruction != instruction;
+
+            // The labels of removed instructions move to the next one
+            pendingLabels.addAll(labels.getOrDefault(instruction, List.of()));
+            if (newInstruction == null)
+                continue;
+
+            if (!pendingLabels.isEmpty()) {
+                labels.put(newInstruction, new ArrayList<>(pendingLabels));
+                pendingLabels.clear();
+            }
+
+            newInstructions.add(newInstruction);
+        }
+
+        if (!changed)
+            return method;
+
+        return MethodUtils.replaceInstructions(method, newInstructions, labels);
+    }
+
+    /**
+     * @return the instruction to use instead of the one at the given position, which may be the same instruction, or
+     * null if it must be removed
+     */
+    private static Instruction rewrite(int position, Instruction instruction, SsaForm ssa,
+                                       ConstantPropagation propagation) {
+        if (instruction instanceof CondBranchInstruction branch) {
+            var condition = propagation.getConstant(position, branch.getCondition());
+            boolean isLast = position == ssa.getCfg().getInstructions().size() - 1;
+
+            if (condition.isPresent() && condition.getAsInt() != 0)
+                return new GotoInstruction(branch.getLabel());
+
+            if (condition.isPresent() && !isLast)
+                return null;
+        }
+
+        if (instruction instanceof AssignInstruction assign
+                && !(assign.getRhs() instanceof SingleOpInstruction singleOp
+                && singleOp.getSingleOperand() instanceof LiteralElement)) {
+            var result = propagation.getConstant(position, assign.getRhs());
+
+            if (result.isPresent()) {
+                var literal = toLiteral(result.getAsInt(), assign.getTypeOfAssign());
+                var dest = ((AssignInstruction) replaceUses(position, assign, ssa, propagation)).getDest();
+
+                return new AssignInstruction(dest, assign.getTypeOfAssign(), new SingleOpInstruction(literal));
+            }
+        }
+
+        return replaceUses(position, instruction, ssa, propagation);
+    }
+
+    private static Instruction replaceUses(int position, Instruction instruction, SsaForm ssa,
+                                           ConstantPropagation propagation) {
+        boolean hasConstantUses = InstructionUtils.getUses(instruction).stream()
+                .anyMatch(element -> isConstantVariable(position, element, ssa, propagation));
+
+        if (!hasConstantUses)
+            return instruction;
+
+        return InstructionUtils.mapUses(instruction, element -> {
+            if (!isConstantVariable(position, element, ssa, propagation))
+                return element;
+
+            return toLiteral(propagation.getConstant(position, element).orElseThrow(), element.getType());
+        });
+    }
+
+    private static boolean isConstantVariable(int position, Element element, SsaForm ssa,
+                                              ConstantPropagation propagation) {
+        var elementType = element.getType().getTypeOfElement();
+        if (elementType != ElementType.INT32 && elementType != ElementType.BOOLEAN)
+            return false;
+
+        return ssa.getVariable(element) != -1 && propagation.getConstant(position, element).isPresent();
+    }
+
+    private static LiteralElement toLiteral(int value, Type type) {
+        if (type.getTypeOfElement() == ElementType.BOOLEAN)
+            return new LiteralElement(value != 0 ? "1" : "0", new Type(ElementType.BOOLEAN));
+
+        return new LiteralElement(String.valueOf(value), new Type(ElementType.INT32));
+    }
+}
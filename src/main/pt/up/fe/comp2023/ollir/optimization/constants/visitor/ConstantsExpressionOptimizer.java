@@ -102,14 +102,7 @@ public class ConstantsExpressionOptimizer extends AJmmVisitor<OptimizationContex
     }
 
     private Optional<? extends TypedValue<?>> dealWithVariableLiteral(JmmNode node, OptimizationContext ctx) {
-        var name = node.get("name");
-
-        System.out.println(node.getJmmParent().toTree());
-        System.out.println("Variable: " + name);
-        System.out.println(ctx.getOptimizedValue(name));
-        System.out.println(".");
-        System.out.println(".");
-        return ctx.getOptimizedValue(name);
+        return ctx.getOptimizedValue(node.get("name"));
     }
 
     private Optional<TypedValue<?>> dealWithOtherExpressions(JmmNode node, OptimizationContext ctx) {
@@ -10,13 +10,21 @@ import pt.up.fe.comp2023.utils.JmmNodeUtils;
 import pt.up.fe.comp2023.utils.Pair;
 
 import java.util.Arrays;
+import java.util.HashSet;
 import java.util.Optional;
+import java.util.Set;
 import java.util.function.Supplier;
 
 public class ConstantsOptimizer extends AJmmVisitor<OptimizationContext, OptimizationContext> {
 
     private final ConstantsExpressionOptimizer ceo = new ConstantsExpressionOptimizer();
 
+    /**
+     * The locals and parameters of the current method. Fields are not propagated, since any method call may change
+     * them.
+     */
+    private final Set<String> variables = new HashSet<>();
+
     @Override
     protected void buildVisitor() {
         addVisit("VariableAssignmentStatement", this::dealWithVariableAssignmentStatement);
@@ -58,6 +66,12 @@ public class ConstantsOptimizer extends AJmmVisitor<OptimizationContext, Optimiz
     }
 
     private OptimizationContext dealWithMethodDeclaration(JmmNode node, OptimizationContext ctx) {
+        variables.clear();
+        for (var child : node.getChildren()) {
+            if (child.getKind().equals("VarDeclaration") || child.getKind().equals("ParameterDeclaration"))
+                variables.add(child.get("name"));
+        }
+
         return visitAllChildren(node, new OptimizationContext());
     }
 
@@ -78,6 +92,9 @@ public class ConstantsOptimizer extends AJmmVisitor<OptimizationContext, Optimiz
 
         ctx.drop(varName);
 
+        if (!variables.contains(varName))
+            return ctx;
+
         var value = ceo.visit(valueNode, ctx);
         value.ifPresent(val -> {
             ctx.assign(varName, val);
@@ -135,7 +152,10 @@ public class ConstantsOptimizer extends AJmmVisitor<OptimizationContext, Optimiz
         var clonedBody = JmmNodeUtils.deepClone(whileBody);
         var afterWhileCtx = visit(clonedBody, ctx.copy());
 
+        // The loop may end after any number of iterations, even none, so only the values kept by the body hold after it
         var resultingCtx = afterWhileCtx.intersect(ctx);
-        return visitAllChildren(node, resultingCtx);
+        visitAllChildren(node, resultingCtx.copy());
+
+        return resultingCtx;
     }
 }
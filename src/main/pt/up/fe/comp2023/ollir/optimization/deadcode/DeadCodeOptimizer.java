@@ -0,0 +1,131 @@
+package pt.up.fe.comp2023.ollir.optimization.deadcode;
+
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp2023.ollir.optimization.cfg.ControlFlowGraph;
+import pt.up.fe.comp2023.ollir.optimization.registers.BitSets;
+import pt.up.fe.comp2023.ollir.optimization.registers.DenseLivenessData;
+import pt.up.fe.comp2023.ollir.optimization.registers.LivenessAnalyzer;
+import pt.up.fe.comp2023.ollir.utils.MethodUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Removes the instructions of a method that can never run or whose effect is never observed:
+ * <ul>
+ *     <li>instructions in blocks that cannot be reached from the start of the method;</li>
+ *     <li>assignments to local variables that are not live afterwards, as long as computing the value has no side
+ *     effects;</li>
+ *     <li>jumps to the instruction that follows them.</li>
+ * </ul>
+ * Removing an instruction can make others dead, so the method is rewritten until nothing else can be removed.
+ */
+public class DeadCodeOptimizer {
+
+    private final LivenessAnalyzer liveness = new LivenessAnalyzer();
+
+    public void optimize(ClassUnit classUnit) {
+        for (var method : new ArrayList<>(classUnit.getMethods())) {
+            optimize(method);
+        }
+    }
+
+    /**
+     * Optimizes the method, replacing it in its class if its code changes.
+     *
+     * @return the optimized method
+     */
+    public Method optimize(Method method) {
+        while (true) {
+            MethodUtils.buildCFG(method);
+
+            var cfg = new ControlFlowGraph(method);
+            var reachableBlocks = cfg.getReachableBlocks();
+            var livenessData = liveness.analyzeDense(method);
+
+            var instructions = method.getInstructions();
+            var labels = MethodUtils.getLabelsByInstruction(method);
+
+            var newInstructions = new ArrayList<Instruction>();
+            var pendingLabels = new ArrayList<String>();
+
+            for (int i = 0; i < instructions.size(); i++) {
+                var instruction = instructions.get(i);
+
+                // Nothing can jump into unreachable code, so its labels are dropped as well
+                if (!reachableBlocks[cfg.getBlock(i)])
+                    continue;
+
+                pendingLabels.addAll(labels.getOrDefault(instruction, List.of()));
+
+                // The labels of a removed instruction move to the next one, so the last one is always kept
+                boolean isLast = i == instructions.size() - 1;
+                if (!isLast && (isDeadStore(i, instruction, livenessData) || isJumpToNext(i, instruction, method)))
+                    continue;
+
+                if (!pendingLabels.isEmpty()) {
+                    labels.put(instruction, new ArrayList<>(pendingLabels));
+                    pendingLabels.clear();
+                }
+
+                newInstructions.add(instruction);
+            }
+
+            if (newInstructions.size() == instructions.size())
+                return method;
+
+            method = MethodUtils.replaceInstructions(method, newInstructions, labels);
+        }
+    }
+
+    private static boolean isDeadStore(int position, Instruction instruction, DenseLivenessData livenessData) {
+        if (!(instruction instanceof AssignInstruction assign) || !(assign.getDest() instanceof Operand dest))
+            return false;
+
+        if (dest instanceof ArrayOperand)
+            return false;
+
+        int variable = livenessData.indexOf(dest.getName());
+        if (variable == -1 || BitSets.contains(livenessData.getLiveOut(position), variable))
+            return false;
+
+        return !hasSideEffects(assign.getRhs());
+    }
+
+    /**
+     * @return whether evaluating the expression may do more than produce its value, that is, call a method or throw
+     */
+    private static boolean hasSideEffects(Instruction expression) {
+        if (expression instanceof SingleOpInstruction singleOp)
+            return singleOp.getSingleOperand() instanceof ArrayOperand;
+
+        if (expression instanceof UnaryOpInstruction unaryOp)
+            return unaryOp.getOperand() instanceof ArrayOperand;
+
+        if (expression instanceof BinaryOpInstruction binaryOp) {
+            if (binaryOp.getLeftOperand() instanceof ArrayOperand || binaryOp.getRightOperand() instanceof ArrayOperand)
+                return true;
+
+            // Division by zero throws
+            return binaryOp.getOperation().getOpType() == OperationType.DIV
+                    && !(binaryOp.getRightOperand() instanceof LiteralElement divisor
+                    && divisor.getType().getTypeOfElement() == ElementType.INT32
+                    && Integer.parseInt(divisor.getLiteral()) != 0);
+        }
+
+        return !(expression instanceof GetFieldInstruction);
+    }
+
+    private static boolean isJumpToNext(int position, Instruction instruction, Method method) {
+        String label;
+        if (instruction instanceof GotoInstruction gotoInstruction) {
+            label = gotoInstruction.getLabel();
+        } else if (instruction instanceof CondBranchInstruction branch) {
+            label = branch.getLabel();
+        } else {
+            return false;
+        }
+
+        return method.getLabels().get(label) == method.getInstructions().get(position + 1);
+    }
+}
@@ -0,0 +1,337 @@
+package pt.up.fe.comp2023.ollir.optimization.inlining;
+
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp2023.ollir.utils.InstructionUtils;
+import pt.up.fe.comp2023.ollir.utils.MethodUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Replaces calls to small methods of the class being compiled by a copy of their code.
+ * <p>
+ * Only calls whose target is known at compile time are inlined. Static methods of the class always are. Virtual
+ * methods are only known when the receiver is a local variable that always holds an object created with {@code new}
+ * of the class itself, since another file may declare a subclass that overrides them, and {@code this} or any
+ * parameter may be an instance of that subclass. Only methods that do not call other methods of the class are
+ * inlined, so inlining always ends; methods that only called such methods are inlined in turn once their calls were
+ * replaced.
+ * <p>
+ * The parameters and local variables of the inlined method become variables of the caller, and its labels are
+ * renamed, all with a prefix that is not used in the caller yet. Parameters are assigned the arguments of the call,
+ * {@code this} becomes the receiver of the call, and returns assign the result of the call and jump to the code that
+ * followed it.
+ */
+public class InliningOptimizer {
+
+    /**
+     * Methods with more instructions are never inlined, to keep the code from growing too much
+     */
+    public static final int MAX_INSTRUCTIONS = 12;
+
+    public void optimize(ClassUnit classUnit) {
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+
+            for (var method : new ArrayList<>(classUnit.getMethods())) {
+                changed |= optimize(method) != method;
+            }
+        }
+    }
+
+    /**
+     * Inlines the calls the method makes, replacing it in its class if its code changes.
+     *
+     * @return the optimized method
+     */
+    public Method optimize(Method method) {
+        var instructions = method.getInstructions();
+        var labels = MethodUtils.getLabelsByInstruction(method);
+
+        var newInstructions = new ArrayList<Instruction>();
+        var newLabels = new HashMap<Instruction, List<String>>();
+        var pendingLabels = new ArrayList<String>();
+        var usedPrefixes = new HashSet<String>();
+        var exactLocals = getExactLocals(method);
+        boolean changed = false;
+
+        for (var instruction : instructions) {
+            pendingLabels.addAll(labels.getOrDefault(instruction, List.of()));
+
+            var callee = getInlinedMethod(method.getOllirClass(), exactLocals, instruction);
+            var inlined = callee != null
+                    ? new Inlining(callee, instruction, newPrefix(method, usedPrefixes)).getInstructions()
+                    : List.of(new LabeledInstruction(List.of(), instruction));
+
+            changed |= callee != null;
+
+            for (var labeled : inlined) {
+                pendingLabels.addAll(labeled.labels());
+                if (labeled.instruction() == null)
+                    continue;
+
+                if (!pendingLabels.isEmpty()) {
+                    newLabels.put(labeled.instruction(), new ArrayList<>(pendingLabels));
+                    pendingLabels.clear();
+                }
+
+                newInstructions.add(labeled.instruction());
+            }
+        }
+
+        if (!changed)
+            return method;
+
+        return MethodUtils.replaceInstructions(method, newInstructions, newLabels);
+    }
+
+    /**
+     * @return the local variables of the method that are only ever assigned a new object of its class, whose methods
+     * can't be overridden
+     */
+    private static Set<String> getExactLocals(Method method) {
+        var className = method.getOllirClass().getClassName();
+        var params = new HashSet<String>();
+        method.getParams().forEach(param -> params.add(((Operand) param).getName()));
+
+        var exact = new HashSet<String>();
+        var inexact = new HashSet<String>();
+
+        for (var instruction : method.getInstructions()) {
+            var variable = InstructionUtils.getDefinedVariable(instruction);
+            if (variable.isEmpty())
+                continue;
+
+            var rhs = ((AssignInstruction) instruction).getRhs();
+            boolean isNew = rhs instanceof CallInstruction call && call.getInvocationType() == CallType.NEW
+                    && call.getFirstArg() instanceof Operand created && created.getName().equals(className);
+
+            (isNew ? exact : inexact).add(variable.get().getName());
+        }
+
+        exact.removeAll(inexact);
+        exact.removeAll(params);
+
+        return exact;
+    }
+
+    /**
+     * @param exactLocals the variables of the caller that hold an object of the class and not of a subclass
+     * @return the method the instruction calls, if it is a method of the class that is always the one called
+     */
+    private static Method getCalledMethod(ClassUnit classUnit, Set<String> exactLocals, Instruction instruction) {
+        var call = getCall(instruction);
+        if (call == null)
+            return null;
+
+        var receiver = (Operand) call.getFirstArg();
+
+        boolean isStatic;
+        if (call.getInvocationType() == CallType.invokestatic && receiver.getName().equals(classUnit.getClassName())) {
+            isStatic = true;
+        } else if (call.getInvocationType() == CallType.invokevirtual && exactLocals.contains(receiver.getName())) {
+            isStatic = false;
+        } else {
+            return null;
+        }
+
+        var name = ((LiteralElement) call.getSecondArg()).getLiteral().replace("\"", "");
+        int numArgs = call.getListOfOperands() != null ? call.getListOfOperands().size() : 0;
+
+        for (var method : classUnit.getMethods()) {
+            if (!method.isConstructMethod() && method.getMethodName().equals(name)
+                    && method.isStaticMethod() == isStatic && method.getParams().size() == numArgs)
+                return method;
+        }
+
+        return null;
+    }
+
+    /**
+     * @return the call the instruction makes, if it calls a method of an operand
+     */
+    private static CallInstruction getCall(Instruction instruction) {
+        if (instruction instanceof AssignInstruction assign)
+            instruction = assign.getRhs();
+
+        if (!(instruction instanceof CallInstruction call) || !(call.getFirstArg() instanceof Operand))
+            return null;
+
+        return call;
+    }
+
+    /**
+     * @return whether the instruction may call a method of the class, either on the class itself or on any object of
+     * its type
+     */
+    private static boolean callsClassMethod(ClassUnit classUnit, Instruction instruction) {
+        var call = getCall(instruction);
+        if (call == null || call.getInvocationType() == CallType.NEW
+                || call.getInvocationType() == CallType.invokespecial)
+            return false;
+
+        var receiver = (Operand) call.getFirstArg();
+        if (call.getInvocationType() == CallType.invokestatic)
+            return receiver.getName().equals(classUnit.getClassName());
+
+        return receiver.getType().getTypeOfElement() == ElementType.THIS
+                || receiver.getType() instanceof ClassType classType
+                && classType.getName().equals(classUnit.getClassName());
+    }
+
+    /**
+     * @return the method to inline in place of the instruction, or null if it must be kept
+     */
+    private static Method getInlinedMethod(ClassUnit classUnit, Set<String> exactLocals, Instruction instruction) {
+        var method = getCalledMethod(classUnit, exactLocals, instruction);
+        if (method == null || method.getInstructions().size() > MAX_INSTRUCTIONS)
+            return null;
+
+        for (var calleeInstruction : method.getInstructions()) {
+            if (callsClassMethod(classUnit, calleeInstruction))
+                return null;
+        }
+
+        return method;
+    }
+
+    private static String newPrefix(Method method, Set<String> usedPrefixes) {
+        int id = 1;
+        while (true) {
+            var prefix = "inline" + id++ + "_";
+            boolean isUsed = usedPrefixes.contains(prefix)
+                    || method.getVarTable().keySet().stream().anyMatch(name -> name.startsWith(prefix))
+                    || method.getLabels().keySet().stream().anyMatch(label -> label.startsWith(prefix));
+
+            if (!isUsed) {
+                usedPrefixes.add(prefix);
+                return prefix;
+            }
+        }
+    }
+
+    /**
+     * An instruction and the labels that go before it. Labels without an instruction go to the next one.
+     */
+    private record LabeledInstruction(List<String> labels, Instruction instruction) {
+    }
+
+    /**
+     * The code that replaces a call.
+     */
+    private static class Inlining {
+
+        private final Method callee;
+        private final Instruction call;
+        private final String prefix;
+        private final Set<String> variables = new HashSet<>();
+        private final CallInstruction callInstruction;
+
+        private Inlining(Method callee, Instruction call, String prefix) {
+            this.callee = callee;
+            this.call = call;
+            this.prefix = prefix;
+            this.callInstruction = getCall(call);
+
+            callee.getVarTable().forEach((name, descriptor) -> {
+                var scope = descriptor.getScope();
+                if ((scope == VarScope.LOCAL || scope == VarScope.PARAMETER) && !name.equals("this"))
+                    variables.add(name);
+            });
+        }
+
+        private List<LabeledInstruction> getInstructions() {
+            var result = new ArrayList<LabeledInstruction>();
+
+            var params = callee.getParams();
+            for (int i = 0; i < params.size(); i++) {
+                var param = (Operand) params.get(i);
+                var arg = callInstruction.getListOfOperands().get(i);
+
+                result.add(new LabeledInstruction(List.of(),
+                        new AssignInstruction(rename(param), param.getType(), new SingleOpInstruction(arg))));
+            }
+
+            // A result stored into an array element goes through a variable first
+            Operand resultVariable = null;
+            if (call instanceof AssignInstruction assign) {
+                resultVariable = assign.getDest() instanceof ArrayOperand
+                        ? new Operand(prefix + "result", callee.getReturnType())
+                        : (Operand) assign.getDest();
+            }
+
+            var endLabel = prefix + "end";
+            boolean jumpsToEnd = false;
+
+            var calleeInstructions = callee.getInstructions();
+            var calleeLabels = MethodUtils.getLabelsByInstruction(callee);
+
+            for (int i = 0; i < calleeInstructions.size(); i++) {
+                var instruction = calleeInstructions.get(i);
+                var labels = calleeLabels.getOrDefault(instruction, List.of()).stream()
+                        .map(label -> prefix + label)
+                        .toList();
+
+                if (!(instruction instanceof ReturnInstruction ret)) {
+                    result.add(new LabeledInstruction(labels, copy(instruction)));
+                    continue;
+                }
+
+                result.add(new LabeledInstruction(labels, null));
+
+                if (ret.hasReturnValue() && resultVariable != null) {
+                    var value = InstructionUtils.mapUses(new SingleOpInstruction(ret.getOperand()), this::rename);
+
+                    result.add(new LabeledInstruction(List.of(),
+                            new AssignInstruction(resultVariable, callee.getReturnType(), (SingleOpInstruction) value)));
+                }
+
+                if (i < calleeInstructions.size() - 1) {
+                    result.add(new LabeledInstruction(List.of(), new GotoInstruction(endLabel)));
+                    jumpsToEnd = true;
+                }
+            }
+
+            if (jumpsToEnd)
+                result.add(new LabeledInstruction(List.of(endLabel), null));
+
+            if (call instanceof AssignInstruction assign && assign.getDest() instanceof ArrayOperand) {
+                var store = new AssignInstruction(assign.getDest(), assign.getTypeOfAssign(),
+                        new SingleOpInstruction(resultVariable));
+
+                result.add(new LabeledInstruction(List.of(), store));
+            }
+
+            return result;
+        }
+
+        private Instruction copy(Instruction instruction) {
+            var copy = InstructionUtils.mapUses(instruction, this::rename);
+
+            if (copy instanceof AssignInstruction assign && !(assign.getDest() instanceof ArrayOperand))
+                return InstructionUtils.withDest(assign, (Operand) rename(assign.getDest()));
+
+            var label = InstructionUtils.getJumpLabel(copy);
+            if (label.isPresent())
+                return InstructionUtils.withLabel(copy, prefix + label.get());
+
+            return copy;
+        }
+
+        private Element rename(Element element) {
+            if (element instanceof Operand operand && operand.getType().getTypeOfElement() == ElementType.THIS)
+                return callInstruction.getFirstArg();
+
+            if (!(element instanceof Operand operand) || element instanceof ArrayOperand
+                    || !variables.contains(operand.getName()))
+                return element;
+
+            return new Operand(prefix + operand.getName(), operand.getType());
+        }
+    }
+}
@@ -0,0 +1,393 @@
+package pt.up.fe.comp2023.ollir.optimization.loops;
+
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp2023.ollir.optimization.cfg.ControlFlowGraph;
+import pt.up.fe.comp2023.ollir.optimization.cfg.NaturalLoops;
+import pt.up.fe.comp2023.ollir.optimization.registers.BitSets;
+import pt.up.fe.comp2023.ollir.optimization.registers.DenseLivenessData;
+import pt.up.fe.comp2023.ollir.optimization.registers.LivenessAnalyzer;
+import pt.up.fe.comp2023.ollir.optimization.ssa.SsaForm;
+import pt.up.fe.comp2023.ollir.utils.InstructionUtils;
+import pt.up.fe.comp2023.ollir.utils.MethodUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Moves the assignments that compute the same value on every iteration of a loop to a preheader, right before the
+ * header of the loop, so they run once each time the loop is entered.
+ * <p>
+ * An assignment is moved when the values it reads are defined outside the loop or by assignments that were moved, and
+ * its variable is assigned nowhere else in the loop and is not read before being assigned. Reads of array elements are
+ * only moved out of loops that write no array element, and reads of a field out of loops that write no field of that
+ * name, as long as the loop calls no method. Since the preheader also runs when the loop ends up not iterating,
+ * instructions that may throw are only moved from the header, which always runs.
+ */
+public class LoopInvariantOptimizer {
+
+    private final LivenessAnalyzer liveness = new LivenessAnalyzer();
+
+    public void optimize(ClassUnit classUnit) {
+        for (var method : new ArrayList<>(classUnit.getMethods())) {
+            optimize(method);
+        }
+    }
+
+    /**
+     * Optimizes the method, replacing it in its class if its code changes.
+     *
+     * @return the optimized method
+     */
+    public Method optimize(Method method) {
+        // Moving code out of a loop changes the code of the loops around it, so they are analyzed again
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+
+            MethodUtils.buildCFG(method);
+
+            var cfg = new ControlFlowGraph(method);
+            var ssa = new SsaForm(cfg);
+            var livenessData = liveness.analyzeDense(method);
+
+            for (var loop : new NaturalLoops(ssa.getDominatorTree()).getLoops()) {
+                var newMethod = new LoopOptimizer(ssa, livenessData, loop).optimize();
+
+                if (newMethod != method) {
+                    method = newMethod;
+                    changed = true;
+                    break;
+                }
+            }
+        }
+
+        return method;
+    }
+
+    private static class LoopOptimizer {
+
+        private final SsaForm ssa;
+        private final ControlFlowGraph cfg;
+        private final DenseLivenessData livenessData;
+        private final NaturalLoops.Loop loop;
+
+        private final List<Integer> blocks = new ArrayList<>();
+        private final Map<String, Integer> definitions = new HashMap<>();
+        private final boolean[] hoisted;
+        private final Set<String> writtenFields = new HashSet<>();
+        private boolean writesArrays;
+        private boolean callsMethods;
+
+        private LoopOptimizer(SsaForm ssa, DenseLivenessData livenessData, NaturalLoops.Loop loop) {
+            this.ssa = ssa;
+            this.cfg = ssa.getCfg();
+            this.livenessData = livenessData;
+            this.loop = loop;
+            this.hoisted = new boolean[cfg.getInstructions().size()];
+
+            for (int block : cfg.getReversePostorder()) {
+                if (!loop.contains(block))
+                    continue;
+
+                blocks.add(block);
+
+                for (int i = cfg.getStart(block); i < cfg.getEnd(block); i++) {
+                    var instruction = cfg.getInstructions().get(i);
+
+                    InstructionUtils.getDefinedVariable(instruction)
+                            .ifPresent(dest -> definitions.merge(dest.getName(), 1, Integer::sum));
+                    if (instruction instanceof AssignInstruction assign && assign.getDest() instanceof ArrayOperand)
+                        writesArrays = true;
+                    if (instruction instanceof PutFieldInstruction putField)
+                        writtenFields.add(((Operand) putField.getSecondOperand()).getName());
+                    callsMethods |= InstructionUtils.callsMethod(instruction);
+                }
+            }
+        }
+
+        /**
+         * @return the method with the invariant code of the loop moved to its preheader, or the same method if there
+         * is nothing to move
+         */
+        private Method optimize() {
+            int headerStart = cfg.getStart(loop.header());
+
+            // The preheader goes right before the header, so code of the loop cannot fall through into it
+            if (headerStart > 0) {
+                int previous = cfg.getBlock(headerStart - 1);
+                var last = cfg.getInstructions().get(headerStart - 1);
+
+                boolean fallsThrough = last.getInstType() != InstructionType.GOTO
+                        && last.getInstType() != InstructionType.RETURN;
+
+                if (loop.contains(previous) && fallsThrough)
+                    return cfg.getMethod();
+            }
+
+            var order = new ArrayList<Integer>();
+            boolean changed = true;
+
+            while (changed) {
+                changed = false;
+
+                for (int block : blocks) {
+                    for (int i = cfg.getStart(block); i < cfg.getEnd(block); i++) {
+                        if (!hoisted[i] && isInvariant(i)) {
+                            hoisted[i] = true;
+                            order.add(i);
+                            changed = true;
+                        }
+                    }
+                }
+            }
+
+            if (order.isEmpty())
+                return cfg.getMethod();
+
+            return insertPreheader(order);
+        }
+
+        private boolean isInvariant(int position) {
+            var instruction = cfg.getInstructions().get(position);
+            if (!(instruction instanceof AssignInstruction assign) || ssa.getDefinedValue(position) == -1)
+                return false;
+
+            var kind = RhsKind.of(assign.getRhs());
+            if (kind == RhsKind.OTHER || kind.readsMemory && mayChange(assign.getRhs()))
+                return false;
+
+            if (kind.mayThrow && !runsFirst(position))
+                return false;
+
+            var dest = ((Operand) assign.getDest()).getName();
+            int variable = livenessData.indexOf(dest);
+
+            // The loop must only see the value assigned here, which must also be the one seen after the loop
+            if (variable == -1 || definitions.get(dest) != 1)
+                return false;
+
+            if (BitSets.contains(livenessData.getLiveIn(cfg.getStart(loop.header())), variable))
+                return false;
+
+            if (isLiveOnExit(variable) && !dominatesExits(cfg.getBlock(position)))
+                return false;
+
+            return InstructionUtils.getUses(assign).stream().allMatch(element -> isInvariant(position, element));
+        }
+
+        /**
+         * @return whether the loop may change the array element or field that the right-hand side reads
+         */
+        private boolean mayChange(Instruction rhs) {
+            if (callsMethods)
+                return true;
+
+            if (rhs instanceof GetFieldInstruction getField)
+                return writtenFields.contains(((Operand) getField.getSecondOperand()).getName());
+
+            return writesArrays;
+        }
+
+        private boolean isInvariant(int position, Element element) {
+            int variable = ssa.getVariable(element);
+            if (variable == -1)
+                return !(element instanceof Operand operand) || isConstantOperand(operand);
+
+            int value = ssa.getUsedValue(position, ssa.getVariables().get(variable));
+            if (value == -1)
+                return false;
+
+            if (ssa.isEntryValue(value))
+                return true;
+
+            var phi = ssa.getPhi(value);
+            if (phi != null)
+                return !loop.contains(phi.block());
+
+            int definition = ssa.getDefinition(value);
+            return !loop.contains(cfg.getBlock(definition)) || hoisted[definition];
+        }
+
+        private static boolean isConstantOperand(Operand operand) {
+            var type = operand.getType().getTypeOfElement();
+            return type == ElementType.THIS || type == ElementType.CLASS;
+        }
+
+        /**
+         * @return whether the instruction is in the header and nothing observable happens before it in an iteration
+         */
+        private boolean runsFirst(int position) {
+            if (cfg.getBlock(position) != loop.header())
+                return false;
+
+            for (int i = cfg.getStart(loop.header()); i < position; i++) {
+                if (hoisted[i])
+                    continue;
+
+                var instruction = cfg.getInstructions().get(i);
+                if (!(instruction instanceof AssignInstruction assign) || assign.getDest() instanceof ArrayOperand)
+                    return false;
+
+                var kind = RhsKind.of(assign.getRhs());
+                if (kind == RhsKind.OTHER || kind.mayThrow)
+                    return false;
+            }
+
+            return true;
+        }
+
+        private boolean isLiveOnExit(int variable) {
+            for (int block : blocks) {
+                for (int successor : cfg.getSuccessors(block)) {
+                    if (!loop.contains(successor)
+                            && BitSets.contains(livenessData.getLiveIn(cfg.getStart(successor)), variable))
+                        return true;
+                }
+            }
+
+            return false;
+        }
+
+        private boolean dominatesExits(int definitionBlock) {
+            var dominatorTree = ssa.getDominatorTree();
+
+            for (int block : blocks) {
+                boolean exits = cfg.getSuccessors(block).stream().anyMatch(successor -> !loop.contains(successor));
+                if (exits && !dominatorTree.dominates(definitionBlock, block))
+                    return false;
+            }
+
+            return true;
+        }
+
+        private Method insertPreheader(List<Integer> order) {
+            var method = cfg.getMethod();
+            var instructions = cfg.getInstructions();
+            var labels = MethodUtils.getLabelsByInstruction(method);
+            int headerStart = cfg.getStart(loop.header());
+
+            var loopTargets = new HashSet<String>();
+            var outsideTargets = new HashSet<String>();
+            for (int block = 0; block < cfg.getNumBlocks(); block++) {
+                var targets = loop.contains(block) ? loopTargets : outsideTargets;
+                InstructionUtils.getJumpLabel(instructions.get(cfg.getEnd(block) - 1)).ifPresent(targets::add);
+            }
+
+            // Jumps from inside the loop keep going to the header, while the other ones now go to the preheader
+            var headerLabels = new ArrayList<String>();
+            var preheaderLabels = new ArrayList<String>();
+            var retargeted = new HashMap<String, String>();
+
+            for (var label : labels.getOrDefault(instructions.get(headerStart), List.of())) {
+                if (!loopTargets.contains(label)) {
+                    preheaderLabels.add(label);
+                    continue;
+                }
+
+                headerLabels.add(label);
+                if (outsideTargets.contains(label)) {
+                    var preheaderLabel = newLabel(method, retargeted);
+                    retargeted.put(label, preheaderLabel);
+                    preheaderLabels.add(preheaderLabel);
+                }
+            }
+
+            var newInstructions = new ArrayList<Instruction>();
+            var newLabels = new HashMap<Instruction, List<String>>();
+            var pendingLabels = new ArrayList<String>();
+
+            for (int i = 0; i < instructions.size(); i++) {
+                var instruction = instructions.get(i);
+
+                if (i == headerStart) {
+                    var preheader = order.stream().map(instructions::get).toList();
+                    newLabels.put(preheader.get(0), preheaderLabels);
+                    newInstructions.addAll(preheader);
+
+                    pendingLabels.addAll(headerLabels);
+                } else {
+                    pendingLabels.addAll(labels.getOrDefault(instruction, List.of()));
+                }
+
+                if (hoisted[i])
+                    continue;
+
+                var label = InstructionUtils.getJumpLabel(instruction);
+                if (label.isPresent() && retargeted.containsKey(label.get()) && !loop.contains(cfg.getBlock(i)))
+                    instruction = InstructionUtils.withLabel(instruction, retargeted.get(label.get()));
+
+                if (!pendingLabels.isEmpty()) {
+                    newLabels.put(instruction, new ArrayList<>(pendingLabels));
+                    pendingLabels.clear();
+                }
+
+                newInstructions.add(instruction);
+            }
+
+            return MethodUtils.replaceInstructions(method, newInstructions, newLabels);
+        }
+
+        private static String newLabel(Method method, Map<String, String> retargeted) {
+            int id = 1;
+            while (method.getLabels().containsKey("preheader" + id) || retargeted.containsValue("preheader" + id)) {
+                id++;
+            }
+
+            return "preheader" + id;
+        }
+    }
+
+    /**
+     * What evaluating the right-hand side of an assignment depends on, besides the values it reads.
+     */
+    private enum RhsKind {
+        PURE(false, false),
+        MAY_THROW(false, true),
+        READS_MEMORY(true, false),
+        READS_MEMORY_MAY_THROW(true, true),
+        OTHER(true, true);
+
+        private final boolean readsMemory;
+        private final boolean mayThrow;
+
+        RhsKind(boolean readsMemory, boolean mayThrow) {
+            this.readsMemory = readsMemory;
+            this.mayThrow = mayThrow;
+        }
+
+        private static RhsKind of(Instruction rhs) {
+            if (rhs instanceof SingleOpInstruction singleOp)
+                return singleOp.getSingleOperand() instanceof ArrayOperand ? READS_MEMORY_MAY_THROW : PURE;
+
+            if (rhs instanceof UnaryOpInstruction unaryOp)
+                return unaryOp.getOperand() instanceof ArrayOperand ? OTHER : PURE;
+
+            if (rhs instanceof BinaryOpInstruction binaryOp) {
+                if (binaryOp.getLeftOperand() instanceof ArrayOperand || binaryOp.getRightOperand() instanceof ArrayOperand)
+                    return OTHER;
+
+                // Division by zero throws
+                boolean safeDivision = binaryOp.getRightOperand() instanceof LiteralElement divisor
+                        && divisor.getType().getTypeOfElement() == ElementType.INT32
+                        && Integer.parseInt(divisor.getLiteral()) != 0;
+
+                return binaryOp.getOperation().getOpType() != OperationType.DIV || safeDivision ? PURE : MAY_THROW;
+            }
+
+            // The length of an array never changes, but reading it throws for null
+            if (rhs instanceof CallInstruction call && call.getInvocationType() == CallType.arraylength)
+                return MAY_THROW;
+
+            if (rhs instanceof GetFieldInstruction getField)
+                return getField.getFirstOperand().getType().getTypeOfElement() == ElementType.THIS
+                        ? READS_MEMORY
+                        : READS_MEMORY_MAY_THROW;
+
+            return OTHER;
+        }
+    }
+}
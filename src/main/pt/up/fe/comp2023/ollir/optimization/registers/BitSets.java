@@ -0,0 +1,61 @@
+package pt.up.fe.comp2023.ollir.optimization.registers;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Operations over sets of small integers stored as {@code long[]}, one bit per element.
+ */
+public final class BitSets {
+
+    private BitSets() {
+    }
+
+    public static long[] create(int size) {
+        return new long[(size + 63) >>> 6];
+    }
+
+    public static void add(long[] set, int element) {
+        set[element >>> 6] |= 1L << element;
+    }
+
+    public static void remove(long[] set, int element) {
+        set[element >>> 6] &= ~(1L << element);
+    }
+
+    public static boolean contains(long[] set, int element) {
+        return (set[element >>> 6] & (1L << element)) != 0;
+    }
+
+    public static void clear(long[] set) {
+        Arrays.fill(set, 0L);
+    }
+
+    /**
+     * Adds every element of {@code other} to {@code set}.
+     */
+    public static void addAll(long[] set, long[] other) {
+        for (int i = 0; i < set.length; i++) {
+            set[i] |= other[i];
+        }
+    }
+
+    public static int size(long[] set) {
+        int size = 0;
+        for (long word : set) {
+            size += Long.bitCount(word);
+        }
+
+        return size;
+    }
+
+    public static void forEach(long[] set, IntConsumer action) {
+        for (int i = 0; i < set.length; i++) {
+            long word = set[i];
+            while (word != 0) {
+                action.accept((i << 6) + Long.numberOfTrailingZeros(word));
+                word &= word - 1;
+            }
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package pt.up.fe.comp2023.ollir.optimization.registers;
+
+import org.specs.comp.ollir.Instruction;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Liveness of the variables of a method, with each variable numbered once and every set stored as a bitset of those
+ * numbers. Sets are indexed by the position of the instruction in the method.
+ */
+public class DenseLivenessData {
+
+    private final List<String> variables;
+    private final Map<String, Integer> indexes = new HashMap<>();
+    private final List<Instruction> instructions;
+    private final long[][] liveIns;
+    private final long[][] liveOuts;
+    private final long[][] uses;
+    private final long[][] defs;
+
+    public DenseLivenessData(List<String> variables, List<Instruction> instructions, long[][] liveIns,
+                             long[][] liveOuts, long[][] uses, long[][] defs) {
+        this.variables = variables;
+        this.instructions = instructions;
+        this.liveIns = liveIns;
+        this.liveOuts = liveOuts;
+        this.uses = uses;
+        this.defs = defs;
+
+        for (int i = 0; i < variables.size(); i++) {
+            indexes.put(variables.get(i), i);
+        }
+    }
+
+    public List<String> getVariables() {
+        return variables;
+    }
+
+    public int getNumVariables() {
+        return variables.size();
+    }
+
+    /**
+     * @return the number of the variable, or -1 if it is not one of the variables the analysis tracks
+     */
+    public int indexOf(String variable) {
+        return indexes.getOrDefault(variable, -1);
+    }
+
+    public List<Instruction> getInstructions() {
+        return instructions;
+    }
+
+    public long[] getLiveIn(int instruction) {
+        return liveIns[instruction];
+    }
+
+    public long[] getLiveOut(int instruction) {
+        return liveOuts[instruction];
+    }
+
+    public long[] getUse(int instruction) {
+        return uses[instruction];
+    }
+
+    public long[] getDef(int instruction) {
+        return defs[instruction];
+    }
+
+    /**
+     * Converts the bitsets into the name sets of {@link LivenessData}, indexed by instruction id.
+     */
+    public LivenessData toLivenessData() {
+        var liveInsById = new HashMap<Integer, Set<String>>();
+        var liveOutsById = new HashMap<Integer, Set<String>>();
+        var usesById = new HashMap<Integer, Set<String>>();
+        var defsById = new HashMap<Integer, Set<String>>();
+
+        for (int i = 0; i < instructions.size(); i++) {
+            var id = instructions.get(i).getId();
+
+            liveInsById.put(id, toNames(liveIns[i]));
+            liveOutsById.put(id, toNames(liveOuts[i]));
+            usesById.put(id, toNames(uses[i]));
+            defsById.put(id, toNames(defs[i]));
+        }
+
+        return new LivenessData(liveInsById, liveOutsById, usesById, defsById);
+    }
+
+    private Set<String> toNames(long[] set) {
+        var names = new TreeSet<String>();
+        BitSets.forEach(set, variable -> names.add(variables.get(variable)));
+
+        return names;
+    }
+}
@@ -1,68 +1,267 @@
 package pt.up.fe.comp2023.ollir.optimization.registers;
 
-import pt.up.fe.comp2023.utils.Graph;
 import pt.up.fe.comp2023.utils.Pair;
 
-import java.util.Comparator;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.TreeSet;
 
 public class GraphColorizer {
 
-    public Pair<Integer, List<ColorData>> analyze(Graph<String> interferenceGraph) {
-        var colorGraph = interferenceGraph.map(ColorData::new);
-        var stack = new LinkedList<String>();
+    /**
+     * Colors the graph, after coalescing the copies it records whenever that is safe. Copies are coalesced
+     * conservatively, using the Briggs and George tests with as many colors as the graph needs without coalescing,
+     * and the coalesced coloring is only kept if it does not need more colors.
+     */
+    public Pair<Integer, List<ColorData>> analyze(InterferenceGraph interferenceGraph) {
+        int numNodes = interferenceGraph.getNumNodes();
 
-        int maxColors = 0;
+        var colors = new int[numNodes];
+        int maxColors = color(interferenceGraph, colors);
 
-        while (!interferenceGraph.isEmpty()) {
-            int finalMaxColors = maxColors; // Effectively final maxColors
-            Graph<String>.Node selectedNode = interferenceGraph.getNodeByPredicate(node -> node.getNumOfNeighbors() < finalMaxColors);
+        if (!interferenceGraph.getCopies().isEmpty()) {
+            var coalescedGraph = interferenceGraph.copy();
+            var representatives = coalesce(coalescedGraph, maxColors);
 
-            if (selectedNode == null) {
-                maxColors = interferenceGraph.getNodes()
-                        .stream()
-                        .map(Graph.Node::getNumOfNeighbors)
-                        .min(Comparator.naturalOrder())
-                        .orElseThrow() + 1;
+            var coalescedColors = new int[numNodes];
+            int coalescedMaxColors = color(coalescedGraph, coalescedColors);
 
-                continue;
+            if (coalescedMaxColors <= maxColors) {
+                maxColors = coalescedMaxColors;
+                for (int node = 0; node < numNodes; node++) {
+                    colors[node] = coalescedColors[representatives[node]];
+                }
             }
+        }
 
-            stack.push(selectedNode.getData());
-            selectedNode.remove();
+        var colorData = new ArrayList<ColorData>(numNodes);
+        for (int node = 0; node < numNodes; node++) {
+            var data = new ColorData(interferenceGraph.getVariable(node));
+            data.setRegister(colors[node]);
+            colorData.add(data);
         }
 
-        while (!stack.isEmpty()) {
-            var varName = stack.pop();
+        return Pair.of(maxColors, colorData);
+    }
+
+    /**
+     * Stores the color of each node of the graph.
+     *
+     * @return the number of colors used
+     */
+    private static int color(InterferenceGraph interferenceGraph, int[] colors) {
+        int numNodes = interferenceGraph.getNumNodes();
+
+        var stack = new int[numNodes];
+        int maxColors = simplify(interferenceGraph, stack);
+
+        Arrays.fill(colors, -1);
+
+        var usedColors = new boolean[numNodes + 1];
+
+        for (int i = numNodes - 1; i >= 0; i--) {
+            int node = stack[i];
 
-            var colorNode = colorGraph.getNodeByPredicate(node -> node.getData().getName().equals(varName));
+            var neighbors = interferenceGraph.getNeighbors(node);
+            int degree = interferenceGraph.getDegree(node);
 
-            var usedColors = new TreeSet<Integer>();
-            for (var neighbor : colorNode.getNeighbors()) {
-                var data = neighbor.getData();
-                data.getRegister()
-                        .ifPresent(usedColors::add);
+            for (int j = 0; j < degree; j++) {
+                int color = colors[neighbors[j]];
+                if (color != -1) usedColors[color] = true;
             }
 
             int selectedColor = 0;
-            while (usedColors.contains(selectedColor)) {
+            while (usedColors[selectedColor]) {
                 selectedColor++;
             }
 
+            for (int j = 0; j < degree; j++) {
+                int color = colors[neighbors[j]];
+                if (color != -1) usedColors[color] = false;
+            }
+
             maxColors = Math.max(maxColors, selectedColor + 1);
+            colors[node] = selectedColor;
+        }
+
+        return maxColors;
+    }
+
+    /**
+     * Merges the variables of every copy that passes the Briggs or the George test for the given number of colors,
+     * until no more copies can be coalesced.
+     *
+     * @return the variable each variable was merged into, or the variable itself
+     */
+    private static int[] coalesce(InterferenceGraph interferenceGraph, int numColors) {
+        var representatives = new int[interferenceGraph.getNumNodes()];
+        for (int node = 0; node < representatives.length; node++) {
+            representatives[node] = node;
+        }
+
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+
+            for (var copy : interferenceGraph.getCopies()) {
+                int first = find(representatives, copy[0]);
+                int second = find(representatives, copy[1]);
+
+                if (first == second || interferenceGraph.interferes(first, second))
+                    continue;
+
+                if (!briggs(interferenceGraph, first, second, numColors)
+                        && !george(interferenceGraph, first, second, numColors)
+                        && !george(interferenceGraph, second, first, numColors))
+                    continue;
+
+                interferenceGraph.merge(first, second);
+                representatives[second] = first;
+                changed = true;
+            }
+        }
+
+        for (int node = 0; node < representatives.length; node++) {
+            representatives[node] = find(representatives, node);
+        }
+
+        return representatives;
+    }
+
+    private static int find(int[] representatives, int node) {
+        while (representatives[node] != node) {
+            representatives[node] = representatives[representatives[node]];
+            node = representatives[node];
+        }
+
+        return node;
+    }
+
+    /**
+     * Briggs test: the merged node has fewer than {@code numColors} neighbors of significant degree, so it can always
+     * be simplified.
+     */
+    private static boolean briggs(InterferenceGraph interferenceGraph, int first, int second, int numColors) {
+        int significantNeighbors = 0;
+
+        var firstNeighbors = interferenceGraph.getNeighbors(first);
+        for (int i = 0; i < interferenceGraph.getDegree(first); i++) {
+            int neighbor = firstNeighbors[i];
+
+            // A neighbor of both nodes loses one edge with the merge
+            int degree = interferenceGraph.getDegree(neighbor);
+            if (interferenceGraph.interferes(neighbor, second)) degree--;
+
+            if (degree >= numColors) significantNeighbors++;
+        }
+
+        var secondNeighbors = interferenceGraph.getNeighbors(second);
+        for (int i = 0; i < interferenceGraph.getDegree(second); i++) {
+            int neighbor = secondNeighbors[i];
+            if (interferenceGraph.interferes(neighbor, first))
+                continue;
+
+            if (interferenceGraph.getDegree(neighbor) >= numColors) significantNeighbors++;
+        }
+
+        return significantNeighbors < numColors;
+    }
+
+    /**
+     * George test: every neighbor of the second node either already interferes with the first one or has
+     * insignificant degree.
+     */
+    private static boolean george(InterferenceGraph interferenceGraph, int first, int second, int numColors) {
+        var neighbors = interferenceGraph.getNeighbors(second);
+        for (int i = 0; i < interferenceGraph.getDegree(second); i++) {
+            int neighbor = neighbors[i];
+            if (!interferenceGraph.interferes(neighbor, first) && interferenceGraph.getDegree(neighbor) >= numColors)
+                return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Removes the nodes of the graph one by one, always picking one of minimum degree, and stores them in the order
+     * they were removed. Nodes are kept in doubly linked lists bucketed by their current degree, so each removal only
+     * moves its neighbors one bucket down and the whole phase runs in O(nodes + edges).
+     *
+     * @return the number of colors the simplification guarantees to be enough, i.e. one more than the highest degree
+     * a node had when it was removed
+     */
+    private static int simplify(InterferenceGraph interferenceGraph, int[] stack) {
+        int numNodes = interferenceGraph.getNumNodes();
+
+        var degrees = new int[numNodes];
+        var next = new int[numNodes];
+        var previous = new int[numNodes];
+        var removed = new boolean[numNodes];
+
+        int maxDegree = 0;
+        for (int node = 0; node < numNodes; node++) {
+            degrees[node] = interferenceGraph.getDegree(node);
+            maxDegree = Math.max(maxDegree, degrees[node]);
+        }
+
+        var buckets = new int[maxDegree + 1];
+        Arrays.fill(buckets, -1);
+
+        // Insert in reverse so that each bucket lists its nodes in increasing order
+        for (int node = numNodes - 1; node >= 0; node--) {
+            insert(buckets, next, previous, node, degrees[node]);
+        }
+
+        int maxColors = 0;
+        int minDegree = 0;
+
+        for (int i = 0; i < numNodes; i++) {
+            while (buckets[minDegree] == -1) {
+                minDegree++;
+            }
+
+            int node = buckets[minDegree];
+            unlink(buckets, next, previous, node, minDegree);
+
+            removed[node] = true;
+            stack[i] = node;
+            maxColors = Math.max(maxColors, minDegree + 1);
+
+            var neighbors = interferenceGraph.getNeighbors(node);
+            for (int j = 0; j < interferenceGraph.getDegree(node); j++) {
+                int neighbor = neighbors[j];
+                if (removed[neighbor])
+                    continue;
+
+                unlink(buckets, next, previous, neighbor, degrees[neighbor]);
+                degrees[neighbor]--;
+                insert(buckets, next, previous, neighbor, degrees[neighbor]);
+            }
+
+            // Removing a node lowers the degree of its neighbors by one at most
+            minDegree = Math.max(0, minDegree - 1);
+        }
+
+        return maxColors;
+    }
+
+    private static void insert(int[] buckets, int[] next, int[] previous, int node, int degree) {
+        int head = buckets[degree];
+
+        next[node] = head;
+        previous[node] = -1;
+        if (head != -1) previous[head] = node;
+
+        buckets[degree] = node;
+    }
 
-            var data = colorNode.getData();
-            data.setRegister(selectedColor);
+    private static void unlink(int[] buckets, int[] next, int[] previous, int node, int degree) {
+        if (previous[node] != -1) {
+            next[previous[node]] = next[node];
+        } else {
+            buckets[degree] = next[node];
         }
 
-        return Pair.of(
-                maxColors,
-                colorGraph.getNodes()
-                    .stream()
-                    .map(Graph.Node::getData)
-                    .toList()
-        );
+        if (next[node] != -1) previous[next[node]] = previous[node];
     }
 }
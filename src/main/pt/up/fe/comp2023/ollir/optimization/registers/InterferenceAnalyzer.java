@@ -1,36 +1,94 @@
 package pt.up.fe.comp2023.ollir.optimization.registers;
 
-import org.specs.comp.ollir.Method;
-import pt.up.fe.comp2023.utils.Graph;
+import org.specs.comp.ollir.*;
 
-import java.util.TreeSet;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.List;
 
 public class InterferenceAnalyzer {
 
-    public Graph<String> analyze(Method method, LivenessData data) {
-        var graph = new Graph<String>();
+    /**
+     * Builds the interference graph of the variables of the liveness analysis.
+     * <p>
+     * Each variable interferes with the ones that are live after it is defined. The destination of a copy does not
+     * interfere with its source, since both hold the same value, which leaves them free to be coalesced. Variables
+     * that are live at the start of the method, or anywhere in unreachable code, interfere with each other as well.
+     */
+    public InterferenceGraph analyze(DenseLivenessData data) {
+        var graph = new InterferenceGraph(data.getVariables());
+        var instructions = data.getInstructions();
+        var reachable = getReachable(instructions);
 
-        var liveIns = data.getLiveIns();
-        var liveOuts = data.getLiveOuts();
-        var defs = data.getDefs();
+        var liveOutAndDef = BitSets.create(data.getNumVariables());
 
-        for (int id = 1; id <= method.getInstructions().size(); id++) {
+        for (int i = 0; i < instructions.size(); i++) {
+            if (i == 0 || !reachable[i])
+                graph.connectAll(data.getLiveIn(i));
 
-            var instrLiveIns = liveIns.get(id);
-            graph.addAll(instrLiveIns);
-            graph.connectAll(instrLiveIns);
+            if (!reachable[i]) {
+                System.arraycopy(data.getLiveOut(i), 0, liveOutAndDef, 0, liveOutAndDef.length);
+                BitSets.addAll(liveOutAndDef, data.getDef(i));
 
-            var instrLiveOuts = liveOuts.get(id);
-            var instrDefs = defs.get(id);
+                graph.connectAll(liveOutAndDef);
+                continue;
+            }
 
-            var union = new TreeSet<String>();
-            union.addAll(instrLiveOuts);
-            union.addAll(instrDefs);
+            var liveOut = data.getLiveOut(i);
+            int copySource = getCopySource(instructions.get(i), data);
 
-            graph.addAll(union);
-            graph.connectAll(union);
+            BitSets.forEach(data.getDef(i), def -> {
+                if (copySource != -1) graph.addCopy(def, copySource);
+
+                BitSets.forEach(liveOut, variable -> {
+                    if (variable != copySource) graph.connect(def, variable);
+                });
+            });
         }
 
         return graph;
     }
+
+    /**
+     * @return the number of the variable the instruction copies into another variable, or -1 if it is not a copy
+     */
+    private static int getCopySource(Instruction instruction, DenseLivenessData data) {
+        if (!(instruction instanceof AssignInstruction assign) || assign.getDest() instanceof ArrayOperand)
+            return -1;
+
+        if (!(assign.getRhs() instanceof SingleOpInstruction singleOp))
+            return -1;
+
+        if (!(singleOp.getSingleOperand() instanceof Operand source) || source instanceof ArrayOperand)
+            return -1;
+
+        return data.indexOf(source.getName());
+    }
+
+    private static boolean[] getReachable(List<Instruction> instructions) {
+        var positions = new HashMap<Instruction, Integer>();
+        for (int i = 0; i < instructions.size(); i++) {
+            positions.put(instructions.get(i), i);
+        }
+
+        var reachable = new boolean[instructions.size()];
+        if (instructions.isEmpty())
+            return reachable;
+
+        var worklist = new ArrayDeque<Integer>();
+        worklist.add(0);
+        reachable[0] = true;
+
+        while (!worklist.isEmpty()) {
+            for (var successor : instructions.get(worklist.poll()).getSuccessors()) {
+                var position = positions.get(successor);
+                if (position != null && !reachable[position]) {
+                    reachable[position] = true;
+                    worklist.add(position);
+                }
+            }
+        }
+
+        return reachable;
+    }
 }
@@ -1,90 +1,176 @@
 package pt.up.fe.comp2023.ollir.optimization.registers;
 
-import java.util.*;
-import java.util.stream.Collectors;
-
-public class InterferenceGraph<T> {
-
-    private static class Node<U> {
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Interference graph over variables numbered from 0 to {@code n - 1}.
+ * <p>
+ * Edges are stored twice, as in Chaitin-Briggs allocators: a triangular bit matrix answers whether two variables
+ * interfere in constant time, and an adjacency list per variable allows walking its neighbors. The graph also records
+ * the copies between its variables, which are candidates for coalescing.
+ */
+public class InterferenceGraph {
+
+    private static final int[] NO_NEIGHBORS = new int[0];
+
+    private final List<String> variables;
+    private final long[] matrix;
+    private final int[][] neighbors;
+    private final int[] degrees;
+    private final List<int[]> copies = new ArrayList<>();
+
+    public InterferenceGraph(List<String> variables) {
+        int numNodes = variables.size();
+
+        this.variables = variables;
+        this.matrix = new long[(int) ((matrixIndex(numNodes, 0) + 63) >>> 6)];
+        this.neighbors = new int[numNodes][];
+        this.degrees = new int[numNodes];
+
+        Arrays.fill(neighbors, NO_NEIGHBORS);
+    }
 
-        private final Set<Node<U>> neighbors = new HashSet<>();
-        private final U data;
+    private InterferenceGraph(InterferenceGraph other) {
+        this.variables = other.variables;
+        this.matrix = other.matrix.clone();
+        this.neighbors = new int[other.neighbors.length][];
+        this.degrees = other.degrees.clone();
+        this.copies.addAll(other.copies);
 
-        private Node(U data) {
-            this.data = data;
+        for (int node = 0; node < neighbors.length; node++) {
+            neighbors[node] = other.neighbors[node].clone();
         }
+    }
 
-        private void connectTo(Node<U> node) {
-            neighbors.add(node);
-        }
+    public InterferenceGraph copy() {
+        return new InterferenceGraph(this);
     }
 
-    private final Map<T, Node<T>> nodes = new HashMap<>();
+    private static long matrixIndex(int first, int second) {
+        int high = Math.max(first, second);
+        int low = Math.min(first, second);
 
-    public void put(T value) {
-        if (nodes.containsKey(value))
-            return;
+        return (long) high * (high - 1) / 2 + low;
+    }
 
-        var node = new Node<>(value);
-        nodes.put(value, node);
+    public int getNumNodes() {
+        return variables.size();
     }
 
-    public void putAll(Collection<T> collection) {
-        collection.forEach(this::put);
+    public String getVariable(int node) {
+        return variables.get(node);
     }
 
-    public void connect(T first, T second) {
-        var firstNode = nodes.get(first);
-        var secondNode = nodes.get(second);
+    public boolean interferes(int first, int second) {
+        if (first == second)
+            return false;
 
-        if (firstNode == null || secondNode == null)
+        long index = matrixIndex(first, second);
+        return (matrix[(int) (index >>> 6)] & (1L << index)) != 0;
+    }
+
+    public void connect(int first, int second) {
+        if (first == second)
+            return;
+
+        long index = matrixIndex(first, second);
+        int word = (int) (index >>> 6);
+        long bit = 1L << index;
+
+        if ((matrix[word] & bit) != 0)
             return;
 
-        firstNode.connectTo(secondNode);
-        secondNode.connectTo(firstNode);
+        matrix[word] |= bit;
+        addNeighbor(first, second);
+        addNeighbor(second, first);
     }
 
-    public void connectAll(Collection<T> collection) {
-        var nodesToConnect = new ArrayList<>(collection);
+    private void disconnect(int first, int second) {
+        long index = matrixIndex(first, second);
+        matrix[(int) (index >>> 6)] &= ~(1L << index);
 
-        for (int i = 0; i < nodesToConnect.size() - 1; i++) {
-            var first = nodesToConnect.get(i);
+        removeNeighbor(first, second);
+        removeNeighbor(second, first);
+    }
 
-            for (int j = i; j < nodesToConnect.size(); j++) {
-                var second = nodesToConnect.get(j);
-                connect(first, second);
+    private void addNeighbor(int node, int neighbor) {
+        var nodeNeighbors = neighbors[node];
+        if (degrees[node] == nodeNeighbors.length) {
+            nodeNeighbors = Arrays.copyOf(nodeNeighbors, Math.max(4, nodeNeighbors.length * 2));
+            neighbors[node] = nodeNeighbors;
+        }
+
+        nodeNeighbors[degrees[node]++] = neighbor;
+    }
+
+    private void removeNeighbor(int node, int neighbor) {
+        var nodeNeighbors = neighbors[node];
+        for (int i = 0; i < degrees[node]; i++) {
+            if (nodeNeighbors[i] == neighbor) {
+                nodeNeighbors[i] = nodeNeighbors[--degrees[node]];
+                return;
             }
         }
     }
 
-    public Set<T> getNeighbors(T value) {
-        var node = nodes.get(value);
-        if (node == null)
-            return null;
+    /**
+     * Merges the second variable into the first, which takes all of its interferences. The second variable is left
+     * without neighbors.
+     */
+    public void merge(int node, int other) {
+        while (degrees[other] > 0) {
+            int neighbor = neighbors[other][0];
 
-        return node.neighbors.stream()
-                .map(neighbor -> neighbor.data)
-                .collect(Collectors.toSet());
+            disconnect(other, neighbor);
+            connect(node, neighbor);
+        }
     }
 
-    public Optional<Integer> numOfEdgesOf(Node<T> node) {
-        if(!nodes.values().contains(node))
-            return Optional.empty();
-
-        return Optional.of(node.neighbors.size());
+    /**
+     * Makes every pair of variables of the set interfere with each other.
+     */
+    public void connectAll(long[] set) {
+        int[] nodes = new int[BitSets.size(set)];
+        int[] numNodes = {0};
+        BitSets.forEach(set, node -> nodes[numNodes[0]++] = node);
+
+        for (int i = 0; i < nodes.length - 1; i++) {
+            for (int j = i + 1; j < nodes.length; j++) {
+                connect(nodes[i], nodes[j]);
+            }
+        }
     }
 
-    public Set<Node<T>> getNeighborsOf(Node<T> node) {
-        return node.neighbors;
+    public int getNumEdges() {
+        int sumOfDegrees = 0;
+        for (int degree : degrees) {
+            sumOfDegrees += degree;
+        }
+
+        return sumOfDegrees / 2;
     }
 
-    public boolean removeNeighbor(Node<T> node, Node<T> nodeToRemove) {
-        var neighbors = node.neighbors;
+    public int getDegree(int node) {
+        return degrees[node];
+    }
 
-        return neighbors.remove(nodeToRemove);
+    /**
+     * @return the neighbors of the variable; only the first {@link #getDegree(int)} entries are valid
+     */
+    public int[] getNeighbors(int node) {
+        return neighbors[node];
     }
 
-    public void iterate() {
+    /**
+     * Records that the value of the source variable is copied into the destination variable.
+     */
+    public void addCopy(int destination, int source) {
+        copies.add(new int[]{destination, source});
+    }
 
+    public List<int[]> getCopies() {
+        return copies;
     }
 }
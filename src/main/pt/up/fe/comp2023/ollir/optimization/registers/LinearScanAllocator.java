@@ -0,0 +1,79 @@
+package pt.up.fe.comp2023.ollir.optimization.registers;
+
+import org.specs.comp.ollir.Method;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+/**
+ * Packs the local variables of a method into few registers with a linear scan over their live intervals, a cheaper
+ * alternative to graph coloring for when no register limit was requested.
+ * <p>
+ * The interval of a variable goes from the first to the last instruction where it is live or defined. Intervals ignore
+ * the places where a variable is dead in between, and copies are not coalesced, so they may use more registers than
+ * coloring, but variables that are live at the same time always get different registers.
+ */
+public class LinearScanAllocator {
+
+    private final LivenessAnalyzer liveness = new LivenessAnalyzer();
+
+    /**
+     * Assigns the registers of the local variables of a method, which must already have its CFG built.
+     *
+     * @return the number of registers used by the local variables, which come after the parameters
+     */
+    public int allocate(Method method) {
+        int minUsableRegister = method.getParams().size() + (method.isStaticMethod() ? 0 : 1);
+
+        var data = liveness.analyzeDense(method);
+        int numVariables = data.getNumVariables();
+
+        var starts = new int[numVariables];
+        var ends = new int[numVariables];
+        Arrays.fill(starts, -1);
+
+        for (int i = 0; i < data.getInstructions().size(); i++) {
+            int position = i;
+
+            BitSets.forEach(data.getLiveIn(i), variable -> extend(starts, ends, variable, position));
+            BitSets.forEach(data.getLiveOut(i), variable -> extend(starts, ends, variable, position));
+            BitSets.forEach(data.getDef(i), variable -> extend(starts, ends, variable, position));
+        }
+
+        var intervals = new ArrayList<Integer>();
+        for (int variable = 0; variable < numVariables; variable++) {
+            if (starts[variable] != -1) intervals.add(variable);
+        }
+
+        intervals.sort(Comparator.comparingInt(variable -> starts[variable]));
+
+        // Variables that are never read or written keep the first register, which nothing else reads while they do
+        var registers = new int[numVariables];
+        var active = new PriorityQueue<Integer>(Comparator.comparingInt(variable -> ends[variable]));
+        var freeRegisters = new PriorityQueue<Integer>();
+        int numRegisters = 0;
+
+        for (int variable : intervals) {
+            while (!active.isEmpty() && ends[active.peek()] < starts[variable]) {
+                freeRegisters.add(registers[active.poll()]);
+            }
+
+            registers[variable] = freeRegisters.isEmpty() ? numRegisters++ : freeRegisters.poll();
+            active.add(variable);
+        }
+
+        var varTable = method.getVarTable();
+        for (int variable = 0; variable < numVariables; variable++) {
+            varTable.get(data.getVariables().get(variable)).setVirtualReg(minUsableRegister + registers[variable]);
+        }
+
+        return numRegisters;
+    }
+
+    private static void extend(int[] starts, int[] ends, int variable, int position) {
+        if (starts[variable] == -1) starts[variable] = position;
+        ends[variable] = position;
+    }
+}
@@ -1,107 +1,239 @@
 package pt.up.fe.comp2023.ollir.optimization.registers;
 
-import org.specs.comp.ollir.AssignInstruction;
-import org.specs.comp.ollir.ElementType;
-import org.specs.comp.ollir.Method;
-import org.specs.comp.ollir.Operand;
-import org.specs.comp.ollir.tree.TreeNode;
-
-import java.util.Collections;
-import java.util.Set;
-import java.util.TreeMap;
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp2023.metrics.CompileMetrics;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.TreeSet;
 
 public class LivenessAnalyzer {
 
     public LivenessData analyze(Method method) {
-        var liveIns = new TreeMap<Integer, Set<String>>();
-        var liveOuts = new TreeMap<Integer, Set<String>>();
-        var uses = new TreeMap<Integer, Set<String>>();
-        var defs = new TreeMap<Integer, Set<String>>();
-
-        for (var instr : method.getInstructions()) {
-            var useSet = new TreeSet<String>();
-            calculateUseSet(instr, useSet);
-            uses.put(instr.getId(), useSet);
-
-            var defSet = new TreeSet<String>();
-            calculateDefSet(instr, defSet);
-            defs.put(instr.getId(), defSet);
+        return analyzeDense(method).toLivenessData();
+    }
+
+    /**
+     * Computes the liveness of the local variables of a method, which must already have its CFG built.
+     * <p>
+     * Sets are bitsets over the variables, and the fixed point is found with a worklist seeded in postorder of the
+     * CFG (the reverse postorder of the reversed CFG), so that most instructions are only visited after their
+     * successors.
+     */
+    public DenseLivenessData analyzeDense(Method method) {
+        var variables = new ArrayList<>(new TreeSet<>(getLocalVariables(method)));
+        var variableIndexes = new HashMap<String, Integer>();
+        for (int i = 0; i < variables.size(); i++) {
+            variableIndexes.put(variables.get(i), i);
+        }
+
+        List<Instruction> instructions = method.getInstructions();
+        int numInstructions = instructions.size();
+
+        var positions = new HashMap<Instruction, Integer>();
+        for (int i = 0; i < numInstructions; i++) {
+            positions.put(instructions.get(i), i);
         }
 
-        while (true) {
-            boolean hasChanged = false;
-            
-            for (var instr : method.getInstructions()) {
-                var instrId = instr.getId();
+        var uses = new long[numInstructions][];
+        var defs = new long[numInstructions][];
+        var liveIns = new long[numInstructions][];
+        var liveOuts = new long[numInstructions][];
+
+        var successors = new int[numInstructions][];
+        var predecessors = new ArrayList<List<Integer>>(numInstructions);
 
-                var liveIn = liveIns.getOrDefault(instrId, Collections.emptySet());
-                var liveOut = liveOuts.getOrDefault(instrId, Collections.emptySet());
-                var use = uses.getOrDefault(instrId, Collections.emptySet());
-                var def = defs.getOrDefault(instrId, Collections.emptySet());
+        for (int i = 0; i < numInstructions; i++) {
+            var instruction = instructions.get(i);
+
+            uses[i] = BitSets.create(variables.size());
+            defs[i] = BitSets.create(variables.size());
+            liveIns[i] = BitSets.create(variables.size());
+            liveOuts[i] = BitSets.create(variables.size());
+
+            calculateUseDefSets(instruction, variableIndexes, uses[i], defs[i]);
+
+            successors[i] = instruction.getSuccessors().stream()
+                    .filter(positions::containsKey)
+                    .mapToInt(positions::get)
+                    .toArray();
+
+            predecessors.add(new ArrayList<>());
+        }
+
+        for (int i = 0; i < numInstructions; i++) {
+            for (int successor : successors[i]) {
+                predecessors.get(successor).add(i);
+            }
+        }
+
+        var worklist = new ArrayDeque<Integer>(numInstructions);
+        var inWorklist = new boolean[numInstructions];
+
+        for (int i : postorder(method, positions, successors)) {
+            worklist.add(i);
+            inWorklist[i] = true;
+        }
+
+        var newLiveIn = BitSets.create(variables.size());
+        int numIterations = 0;
+
+        while (!worklist.isEmpty()) {
+            int i = worklist.poll();
+            inWorklist[i] = false;
+            numIterations++;
+
+            // out[i] = U in[s], for every successor s
+            var liveOut = liveOuts[i];
+            BitSets.clear(liveOut);
+            for (int successor : successors[i]) {
+                BitSets.addAll(liveOut, liveIns[successor]);
+            }
 
-                var newLiveIn = new TreeSet<>(use);
-                liveOut.stream()
-                        .filter(name -> !def.contains(name))
-                        .forEach(newLiveIn::add);
+            // in[i] = use[i] U (out[i] - def[i])
+            var use = uses[i];
+            var def = defs[i];
+            for (int word = 0; word < newLiveIn.length; word++) {
+                newLiveIn[word] = use[word] | (liveOut[word] & ~def[word]);
+            }
 
-                var newLiveOut = new TreeSet<String>();
-                instr.getSuccessors().stream()
-                        .map(node -> liveIns.getOrDefault(node.getId(), Collections.emptySet()))
-                        .forEach(newLiveOut::addAll);
+            if (Arrays.equals(newLiveIn, liveIns[i]))
+                continue;
 
-                liveIns.put(instr.getId(), newLiveIn);
-                liveOuts.put(instr.getId(), newLiveOut);
+            System.arraycopy(newLiveIn, 0, liveIns[i], 0, newLiveIn.length);
 
-                if (!liveIn.containsAll(newLiveIn) || !liveOut.containsAll(newLiveOut)) {
-                    hasChanged = true;
+            for (int predecessor : predecessors.get(i)) {
+                if (!inWorklist[predecessor]) {
+                    worklist.add(predecessor);
+                    inWorklist[predecessor] = true;
                 }
             }
-            
-            if (!hasChanged)
-                break;
         }
 
-        return new LivenessData(liveIns, liveOuts, uses, defs);
+        CompileMetrics.increment(method.getMethodName(), "livenessIterations", numIterations);
+
+        return new DenseLivenessData(variables, instructions, liveIns, liveOuts, uses, defs);
     }
 
-    private void calculateUseSet(TreeNode node, Set<String> useSet) {
-        if (node instanceof AssignInstruction assignInstruction) {
-            calculateUseSet(assignInstruction.getRhs(), useSet);
-            return;
-        }
+    private static List<String> getLocalVariables(Method method) {
+        var localVariables = new ArrayList<String>();
 
-        if (node instanceof Operand operand) {
-            if (!isOptimizable(operand))
-                return;
+        method.getVarTable().forEach((name, descriptor) -> {
+            if (descriptor.getScope() == VarScope.LOCAL && !name.equals("this"))
+                localVariables.add(name);
+        });
 
-            useSet.add(operand.getName());
-            return;
+        return localVariables;
+    }
+
+    /**
+     * @return the positions of the instructions in postorder of a depth-first search from the start of the method,
+     * followed by the unreachable ones
+     */
+    private static List<Integer> postorder(Method method, Map<Instruction, Integer> positions, int[][] successors) {
+        int numInstructions = successors.length;
+
+        var order = new ArrayList<Integer>(numInstructions);
+        var visited = new boolean[numInstructions];
+
+        var stack = new ArrayDeque<int[]>();
+        for (var entry : method.getBeginNode().getSuccessors()) {
+            var start = positions.get(entry);
+            if (start == null || visited[start])
+                continue;
+
+            visited[start] = true;
+            stack.push(new int[]{start, 0});
+
+            while (!stack.isEmpty()) {
+                var frame = stack.peek();
+                int node = frame[0];
+
+                if (frame[1] < successors[node].length) {
+                    int successor = successors[node][frame[1]++];
+                    if (!visited[successor]) {
+                        visited[successor] = true;
+                        stack.push(new int[]{successor, 0});
+                    }
+                } else {
+                    stack.pop();
+                    order.add(node);
+                }
+            }
+        }
+
+        for (int i = 0; i < numInstructions; i++) {
+            if (!visited[i]) order.add(i);
         }
 
-        node.getChildrenStream()
-                .forEach(child -> calculateUseSet(child, useSet));
+        return order;
     }
 
-    private void calculateDefSet(TreeNode node, Set<String> defSet) {
-        if (node instanceof AssignInstruction assignInstruction) {
-            var lhs = (Operand) assignInstruction.getDest();
-            if (!isOptimizable(lhs))
-                return;
+    private static void calculateUseDefSets(Instruction instruction, Map<String, Integer> variables, long[] use,
+                                            long[] def) {
+        if (instruction instanceof AssignInstruction assign) {
+            var dest = assign.getDest();
+
+            // Storing into an array element reads the array reference and the index, it does not redefine the array
+            if (dest instanceof ArrayOperand arrayOperand) {
+                addUses(arrayOperand, variables, use);
+            } else {
+                var index = variables.get(((Operand) dest).getName());
+                if (index != null) BitSets.add(def, index);
+            }
 
-            defSet.add(lhs.getName());
+            calculateUseDefSets(assign.getRhs(), variables, use, def);
             return;
         }
 
-        node.getChildrenStream()
-                .forEach(child -> calculateDefSet(child, defSet));
+        if (instruction instanceof SingleOpInstruction singleOp) {
+            addUses(singleOp.getSingleOperand(), variables, use);
+        } else if (instruction instanceof UnaryOpInstruction unaryOp) {
+            addUses(unaryOp.getOperand(), variables, use);
+        } else if (instruction instanceof BinaryOpInstruction binaryOp) {
+            addUses(binaryOp.getLeftOperand(), variables, use);
+            addUses(binaryOp.getRightOperand(), variables, use);
+        } else if (instruction instanceof CallInstruction call) {
+            // The first argument of new is the class (or "array"), not a variable
+            if (call.getInvocationType() != CallType.NEW)
+                addUses(call.getFirstArg(), variables, use);
+
+            if (call.getListOfOperands() != null) {
+                for (var operand : call.getListOfOperands()) {
+                    addUses(operand, variables, use);
+                }
+            }
+        } else if (instruction instanceof GetFieldInstruction getField) {
+            addUses(getField.getFirstOperand(), variables, use);
+        } else if (instruction instanceof PutFieldInstruction putField) {
+            addUses(putField.getFirstOperand(), variables, use);
+            addUses(putField.getThirdOperand(), variables, use);
+        } else if (instruction instanceof CondBranchInstruction condBranch) {
+            calculateUseDefSets(condBranch.getCondition(), variables, use, def);
+        } else if (instruction instanceof ReturnInstruction ret && ret.hasReturnValue()) {
+            addUses(ret.getOperand(), variables, use);
+        }
     }
 
-    private boolean isOptimizable(Operand operand) {
+    private static void addUses(Element element, Map<String, Integer> variables, long[] use) {
+        if (!(element instanceof Operand operand))
+            return;
+
         var elementType = operand.getType().getTypeOfElement();
-        if (elementType == ElementType.CLASS || elementType == ElementType.THIS || elementType == ElementType.VOID)
-            return false;
+        if (elementType == ElementType.CLASS || elementType == ElementType.THIS)
+            return;
+
+        if (operand instanceof ArrayOperand arrayOperand) {
+            for (var index : arrayOperand.getIndexOperands()) {
+                addUses(index, variables, use);
+            }
+        }
 
-        return !operand.isParameter();
+        var index = variables.get(operand.getName());
+        if (index != null) BitSets.add(use, index);
     }
 }
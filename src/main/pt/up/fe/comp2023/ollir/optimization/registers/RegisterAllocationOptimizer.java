@@ -1,60 +1,111 @@
 package pt.up.fe.comp2023.ollir.optimization.registers;
 
+import org.specs.comp.ollir.ClassUnit;
+import org.specs.comp.ollir.Method;
 import org.specs.comp.ollir.OllirErrorException;
 import org.specs.comp.ollir.Operand;
-import pt.up.fe.comp.jmm.ollir.OllirResult;
 import pt.up.fe.comp.jmm.report.Report;
 import pt.up.fe.comp.jmm.report.ReportType;
 import pt.up.fe.comp.jmm.report.Stage;
+import pt.up.fe.comp2023.metrics.CompileMetrics;
+import pt.up.fe.comp2023.ollir.utils.MethodUtils;
 import pt.up.fe.comp2023.ollir.optimization.registers.LivenessAnalyzer;
 import pt.up.fe.specs.util.SpecsLogs;
 
 import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 
 public class RegisterAllocationOptimizer {
 
-    public OllirResult optimize(OllirResult ollirResult) {
-        int maxRegisters = Integer.parseInt(ollirResult.getConfig().getOrDefault("registerAllocation", "-1"));
-        if (maxRegisters == -1)
-            return ollirResult;
+    private final LivenessAnalyzer liveness = new LivenessAnalyzer();
+    private final InterferenceAnalyzer interference = new InterferenceAnalyzer();
+    private final GraphColorizer colorizer = new GraphColorizer();
 
-        var classUnit = ollirResult.getOllirClass();
+    /**
+     * Allocates the registers of every method of the class in place. Without a register limit, variables are packed
+     * with the cheaper {@link LinearScanAllocator} instead of graph coloring.
+     *
+     * @return the reports of the allocation
+     */
+    public List<Report> optimize(ClassUnit classUnit, Map<String, String> config) {
+        List<Report> reports = new ArrayList<>();
 
-        classUnit.buildCFGs();
+        int maxRegisters = Integer.parseInt(config.getOrDefault("registerAllocation", "-1"));
 
-        var liveness = new LivenessAnalyzer();
-        var interference = new InterferenceAnalyzer();
-        var colorizer = new GraphColorizer();
+        classUnit.getMethods().forEach(MethodUtils::buildCFG);
 
-        int effectiveMaxRegisters = 0;
-
-        for (var method : classUnit.getMethods()) {
-            var livenessResult = liveness.analyze(method);
-            var interferenceResult = interference.analyze(method, livenessResult);
-            var colorizerResult = colorizer.analyze(interferenceResult);
+        if (maxRegisters == -1) {
+            var allocator = new LinearScanAllocator();
+            for (var method : classUnit.getMethods()) {
+                int minUsableRegister = method.getParams().size() + (method.isStaticMethod() ? 0 : 1);
+                CompileMetrics.measure(method.getMethodName(), "registerAllocation", () -> allocator.allocate(method),
+                        registers -> minUsableRegister + registers);
+            }
 
-            int minUsableRegister = method.getParams().size() + (method.isStaticMethod() ? 0 : 1);
-            int neededRegisters = minUsableRegister + colorizerResult.first();
+            return reports;
+        }
 
-            effectiveMaxRegisters = Math.max(effectiveMaxRegisters, neededRegisters);
-            var registerMapping = colorizerResult.second();
+        int effectiveMaxRegisters = 0;
 
-            var regTable = method.getVarTable();
-            registerMapping.forEach(data -> {
-                var currentDescriptor = regTable.get(data.getName());
-                var register = minUsableRegister + data.getRegister().orElseThrow();
+        for (var method : new ArrayList<>(classUnit.getMethods())) {
+            int neededRegisters = CompileMetrics.measure(method.getMethodName(), "registerAllocation",
+                    () -> color(method, maxRegisters), registers -> registers);
 
-                currentDescriptor.setVirtualReg(register);
-            });
+            effectiveMaxRegisters = Math.max(effectiveMaxRegisters, neededRegisters);
         }
 
         if (effectiveMaxRegisters > maxRegisters) {
             var report = new Report(maxRegisters == 0 ? ReportType.DEBUG : ReportType.ERROR,
                     Stage.OPTIMIZATION, -1, "The minimum number of registers needed is %d".formatted(effectiveMaxRegisters));
 
-            ollirResult.getReports().add(report);
+            reports.add(report);
         }
 
-        return ollirResult;
+        return reports;
+    }
+
+    /**
+     * Allocates the registers of a method with graph coloring, spilling variables if needed to fit the limit.
+     *
+     * @return the number of registers the method needs, counting the parameters
+     */
+    private int color(Method method, int maxRegisters) {
+        int minUsableRegister = method.getParams().size() + (method.isStaticMethod() ? 0 : 1);
+
+        var livenessResult = liveness.analyzeDense(method);
+        var interferenceResult = interference.analyze(livenessResult);
+        var colorizerResult = colorizer.analyze(interferenceResult);
+
+        // Spill variables into memory one at a time, until the method fits or nothing else can be spilled
+        var spiller = new Spiller(method);
+        int numSpilled = 0;
+        while (maxRegisters > 0 && minUsableRegister + colorizerResult.first() > maxRegisters) {
+            var variable = spiller.chooseVariable(livenessResult, interferenceResult);
+            if (variable.isEmpty())
+                break;
+
+            method = spiller.spill(variable.get());
+            numSpilled++;
+
+            livenessResult = liveness.analyzeDense(method);
+            interferenceResult = interference.analyze(livenessResult);
+            colorizerResult = colorizer.analyze(interferenceResult);
+        }
+
+        var methodName = method.getMethodName();
+        CompileMetrics.record(methodName, "interferenceNodes", interferenceResult.getNumNodes());
+        CompileMetrics.record(methodName, "interferenceEdges", interferenceResult.getNumEdges());
+        CompileMetrics.record(methodName, "spilledVariables", numSpilled);
+
+        var regTable = method.getVarTable();
+        colorizerResult.second().forEach(data -> {
+            var currentDescriptor = regTable.get(data.getName());
+            var register = minUsableRegister + data.getRegister().orElseThrow();
+
+            currentDescriptor.setVirtualReg(register);
+        });
+
+        return minUsableRegister + colorizerResult.first();
     }
 }
@@ -0,0 +1,220 @@
+package pt.up.fe.comp2023.ollir.optimization.registers;
+
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp2023.ollir.utils.InstructionUtils;
+import pt.up.fe.comp2023.ollir.utils.MethodUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Moves variables of a method out of registers and into the slots of an int array allocated at the start of the
+ * method. Every use of a spilled variable reads the slot into a new temporary right before the instruction, and every
+ * definition is stored into a new temporary that is written back to the slot right after it.
+ * <p>
+ * Only int and boolean variables are spilled, since those are the only values that fit in an int array.
+ */
+public class Spiller {
+
+    private static final int MAX_LOOP_DEPTH = 8;
+    private static final Type INT = new Type(ElementType.INT32);
+
+    private final Set<String> unspillable = new HashSet<>();
+    private Method method;
+    private String slotsName;
+    private Instruction slotsAllocation;
+    private int numSlots = 0;
+    private int numTemporaries = 0;
+
+    public Spiller(Method method) {
+        this.method = method;
+    }
+
+    /**
+     * Picks the variable whose spill is expected to be the cheapest: the one with the fewest uses and definitions,
+     * each weighted by 10 to the depth of the loops around it, per interference. Variables that were already spilled
+     * and the temporaries introduced by spilling are never picked again.
+     */
+    public Optional<String> chooseVariable(DenseLivenessData liveness, InterferenceGraph interferenceGraph) {
+        var instructions = liveness.getInstructions();
+        var loopDepths = getLoopDepths(instructions);
+
+        var costs = new double[liveness.getNumVariables()];
+        for (int i = 0; i < instructions.size(); i++) {
+            double weight = Math.pow(10, Math.min(loopDepths[i], MAX_LOOP_DEPTH));
+
+            BitSets.forEach(liveness.getUse(i), variable -> costs[variable] += weight);
+            BitSets.forEach(liveness.getDef(i), variable -> costs[variable] += weight);
+        }
+
+        String bestVariable = null;
+        double bestCost = Double.POSITIVE_INFINITY;
+
+        for (int variable = 0; variable < costs.length; variable++) {
+            var name = liveness.getVariables().get(variable);
+            int degree = interferenceGraph.getDegree(variable);
+
+            if (degree == 0 || !isSpillable(name))
+                continue;
+
+            double cost = costs[variable] / degree;
+            if (cost < bestCost) {
+                bestVariable = name;
+                bestCost = cost;
+            }
+        }
+
+        return Optional.ofNullable(bestVariable);
+    }
+
+    private boolean isSpillable(String variable) {
+        if (unspillable.contains(variable))
+            return false;
+
+        var descriptor = method.getVarTable().get(variable);
+        var elementType = descriptor.getVarType().getTypeOfElement();
+
+        return descriptor.getScope() == VarScope.LOCAL
+                && (elementType == ElementType.INT32 || elementType == ElementType.BOOLEAN);
+    }
+
+    /**
+     * Approximates the loop nesting depth of each instruction by the number of backward jumps that cross it, which is
+     * exact for the structured loops the compiler generates.
+     */
+    private static int[] getLoopDepths(List<Instruction> instructions) {
+        var positions = new HashMap<Instruction, Integer>();
+        for (int i = 0; i < instructions.size(); i++) {
+            positions.put(instructions.get(i), i);
+        }
+
+        var changes = new int[instructions.size() + 1];
+        for (int i = 0; i < instructions.size(); i++) {
+            for (var successor : instructions.get(i).getSuccessors()) {
+                var position = positions.get(successor);
+                if (position != null && position <= i) {
+                    changes[position]++;
+                    changes[i + 1]--;
+                }
+            }
+        }
+
+        var depths = new int[instructions.size()];
+        int depth = 0;
+        for (int i = 0; i < instructions.size(); i++) {
+            depth += changes[i];
+            depths[i] = depth;
+        }
+
+        return depths;
+    }
+
+    /**
+     * Spills the variable, replacing the method in its class.
+     *
+     * @return the new method
+     */
+    public Method spill(String variable) {
+        var type = method.getVarTable().get(variable).getVarType();
+        unspillable.add(variable);
+
+        if (slotsName == null) {
+            slotsName = getFreeName("spills");
+            unspillable.add(slotsName);
+        }
+
+        int slot = numSlots++;
+        var allocation = allocateSlots();
+
+        var labels = MethodUtils.getLabelsByInstruction(method);
+        var instructions = new ArrayList<Instruction>();
+
+        if (slotsAllocation == null)
+            instructions.add(allocation);
+
+        for (var original : method.getInstructions()) {
+            if (original == slotsAllocation) {
+                instructions.add(allocation);
+                continue;
+            }
+
+            var instruction = original;
+            var rewritten = new ArrayList<Instruction>();
+
+            if (InstructionUtils.getUses(instruction).stream().anyMatch(element -> isVariable(element, variable))) {
+                var temporary = newTemporary(type);
+                rewritten.add(new AssignInstruction(temporary, type, new SingleOpInstruction(slot(slot))));
+
+                instruction = InstructionUtils.mapUses(instruction,
+                        element -> isVariable(element, variable) ? temporary : element);
+            }
+
+            var definedVariable = InstructionUtils.getDefinedVariable(instruction);
+            if (definedVariable.isPresent() && definedVariable.get().getName().equals(variable)) {
+                var temporary = newTemporary(type);
+                rewritten.add(InstructionUtils.withDest((AssignInstruction) instruction, temporary));
+                rewritten.add(new AssignInstruction(slot(slot), INT, new SingleOpInstruction(temporary)));
+            } else {
+                rewritten.add(instruction);
+            }
+
+            // Jumps to the instruction must also run the reload
+            var originalLabels = labels.get(original);
+            if (originalLabels != null) labels.put(rewritten.get(0), originalLabels);
+
+            instructions.addAll(rewritten);
+        }
+
+        slotsAllocation = allocation;
+        method = MethodUtils.replaceInstructions(method, instructions, labels);
+
+        return method;
+    }
+
+    private static boolean isVariable(Element element, String variable) {
+        if (!(element instanceof Operand operand) || element instanceof ArrayOperand)
+            return false;
+
+        var elementType = operand.getType().getTypeOfElement();
+        return elementType != ElementType.CLASS && elementType != ElementType.THIS
+                && operand.getName().equals(variable);
+    }
+
+    private Instruction allocateSlots() {
+        var type = new ArrayType();
+        type.setNumDimensions(1);
+        type.setTypeOfElements(ElementType.INT32);
+
+        var size = new ArrayList<Element>();
+        size.add(new LiteralElement(String.valueOf(numSlots), INT));
+
+        var newArray = new CallInstruction(CallType.NEW, new Operand("array", type), size, type);
+        return new AssignInstruction(new Operand(slotsName, type), type, newArray);
+    }
+
+    private ArrayOperand slot(int slot) {
+        var index = new ArrayList<Element>();
+        index.add(new LiteralElement(String.valueOf(slot), INT));
+
+        return new ArrayOperand(slotsName, INT, index);
+    }
+
+    private Operand newTemporary(Type type) {
+        var name = getFreeName("spill" + ++numTemporaries);
+        unspillable.add(name);
+
+        return new Operand(name, type);
+    }
+
+    private String getFreeName(String name) {
+        while (method.getVarTable().containsKey(name)) {
+            name = "_" + name;
+        }
+
+        return name;
+    }
+}
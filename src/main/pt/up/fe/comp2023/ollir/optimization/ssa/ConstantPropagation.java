@@ -0,0 +1,278 @@
+package pt.up.fe.comp2023.ollir.optimization.ssa;
+
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp2023.ollir.optimization.cfg.ControlFlowGraph;
+
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.OptionalInt;
+import java.util.Set;
+
+/**
+ * Sparse conditional constant propagation (Wegman and Zadeck) over the SSA form of a method.
+ * <p>
+ * Values start as undefined and only move down the lattice, to a constant and then to unknown, while blocks only
+ * become executable once an executable edge reaches them. Branches whose condition is a constant only make one of
+ * their edges executable, so values defined in code that never runs do not weaken the values that do reach a phi.
+ * Booleans are represented as 1 and 0.
+ */
+public class ConstantPropagation {
+
+    private static final int UNDEFINED = 0;
+    private static final int CONSTANT = 1;
+    private static final int UNKNOWN = 2;
+
+    private record Cell(int state, int constant) {
+
+        private static final Cell UNDEFINED_CELL = new Cell(UNDEFINED, 0);
+        private static final Cell UNKNOWN_CELL = new Cell(UNKNOWN, 0);
+
+        private static Cell of(int constant) {
+            return new Cell(CONSTANT, constant);
+        }
+
+        private Cell meet(Cell other) {
+            if (state == UNDEFINED) return other;
+            if (other.state == UNDEFINED) return this;
+            if (state == CONSTANT && other.state == CONSTANT && constant == other.constant) return this;
+
+            return UNKNOWN_CELL;
+        }
+    }
+
+    private final SsaForm ssa;
+    private final ControlFlowGraph cfg;
+    private final Cell[] cells;
+    private final boolean[] executableBlocks;
+    private final Set<Long> executableEdges = new HashSet<>();
+
+    private final ArrayDeque<int[]> flowWorklist = new ArrayDeque<>();
+    private final ArrayDeque<Integer> ssaWorklist = new ArrayDeque<>();
+
+    public ConstantPropagation(SsaForm ssa) {
+        this.ssa = ssa;
+        this.cfg = ssa.getCfg();
+        this.cells = new Cell[ssa.getNumValues()];
+        this.executableBlocks = new boolean[cfg.getNumBlocks()];
+
+        for (int value = 0; value < cells.length; value++) {
+            // Nothing is known about what the variables hold when the method starts
+            cells[value] = ssa.isEntryValue(value) ? Cell.UNKNOWN_CELL : Cell.UNDEFINED_CELL;
+        }
+
+        if (cfg.getNumBlocks() > 0) {
+            flowWorklist.add(new int[]{-1, 0});
+            run();
+        }
+    }
+
+    private long edge(int from, int to) {
+        return (long) from * cfg.getNumBlocks() + to;
+    }
+
+    private void run() {
+        while (!flowWorklist.isEmpty() || !ssaWorklist.isEmpty()) {
+            while (!flowWorklist.isEmpty()) {
+                var edge = flowWorklist.poll();
+                int from = edge[0];
+                int to = edge[1];
+
+                if (from != -1 && !executableEdges.add(edge(from, to)))
+                    continue;
+
+                for (var phi : ssa.getPhis(to)) {
+                    visitPhi(phi);
+                }
+
+                if (!executableBlocks[to]) {
+                    executableBlocks[to] = true;
+
+                    for (int i = cfg.getStart(to); i < cfg.getEnd(to); i++) {
+                        visitInstruction(i);
+                    }
+                }
+            }
+
+            while (!ssaWorklist.isEmpty()) {
+                int value = ssaWorklist.poll();
+
+                for (var phi : ssa.getPhiUsers(value)) {
+                    if (executableBlocks[phi.block()]) visitPhi(phi);
+                }
+
+                for (int user : ssa.getInstructionUsers(value)) {
+                    if (executableBlocks[cfg.getBlock(user)]) visitInstruction(user);
+                }
+            }
+        }
+    }
+
+    private void visitPhi(SsaForm.Phi phi) {
+        var predecessors = cfg.getPredecessors(phi.block());
+        var operands = phi.operands();
+
+        var cell = Cell.UNDEFINED_CELL;
+        for (int i = 0; i < operands.length; i++) {
+            // The extra operand of a phi of the entry block comes from the start of the method, which always runs
+            boolean executable = i >= predecessors.size()
+                    || executableEdges.contains(edge(predecessors.get(i), phi.block()));
+
+            if (executable && operands[i] != -1)
+                cell = cell.meet(cells[operands[i]]);
+        }
+
+        update(phi.value(), cell);
+    }
+
+    private void visitInstruction(int position) {
+        var instruction = cfg.getInstructions().get(position);
+
+        int definedValue = ssa.getDefinedValue(position);
+        if (definedValue != -1) {
+            var rhs = ((AssignInstruction) instruction).getRhs();
+            update(definedValue, evaluate(position, rhs));
+        }
+
+        int block = cfg.getBlock(position);
+        if (position == cfg.getEnd(block) - 1)
+            visitBlockEnd(block, instruction);
+    }
+
+    private void visitBlockEnd(int block, Instruction last) {
+        if (!(last instanceof CondBranchInstruction branch)) {
+            for (int successor : cfg.getSuccessors(block)) {
+                flowWorklist.add(new int[]{block, successor});
+            }
+
+            return;
+        }
+
+        var condition = evaluate(cfg.getPosition(last), branch.getCondition());
+        if (condition.state() == UNDEFINED)
+            return;
+
+        if (condition.state() == UNKNOWN) {
+            for (int successor : cfg.getSuccessors(block)) {
+                flowWorklist.add(new int[]{block, successor});
+            }
+
+            return;
+        }
+
+        if (condition.constant() != 0) {
+            var target = cfg.getMethod().getLabels().get(branch.getLabel());
+            flowWorklist.add(new int[]{block, cfg.getBlock(cfg.getPosition(target))});
+        } else if (cfg.getEnd(block) < cfg.getInstructions().size()) {
+            flowWorklist.add(new int[]{block, block + 1});
+        }
+    }
+
+    private void update(int value, Cell cell) {
+        var newCell = cells[value].meet(cell);
+        if (newCell.equals(cells[value]))
+            return;
+
+        cells[value] = newCell;
+        ssaWorklist.add(value);
+    }
+
+    private Cell evaluate(int position, Element element) {
+        if (element instanceof LiteralElement literal) {
+            return switch (literal.getType().getTypeOfElement()) {
+                case INT32 -> Cell.of(Integer.parseInt(literal.getLiteral()));
+                case BOOLEAN -> Cell.of(literal.getLiteral().equals("1") ? 1 : 0);
+                default -> Cell.UNKNOWN_CELL;
+            };
+        }
+
+        int variable = ssa.getVariable(element);
+        if (variable == -1)
+            return Cell.UNKNOWN_CELL;
+
+        int value = ssa.getUsedValue(position, ssa.getVariables().get(variable));
+        return value == -1 ? Cell.UNKNOWN_CELL : cells[value];
+    }
+
+    private Cell evaluate(int position, Instruction instruction) {
+        if (instruction instanceof SingleOpInstruction singleOp)
+            return evaluate(position, singleOp.getSingleOperand());
+
+        if (instruction instanceof UnaryOpInstruction unaryOp) {
+            var operand = evaluate(position, unaryOp.getOperand());
+            if (operand.state() != CONSTANT)
+                return operand;
+
+            return switch (unaryOp.getOperation().getOpType()) {
+                case NOT, NOTB -> Cell.of(operand.constant() == 0 ? 1 : 0);
+                default -> Cell.UNKNOWN_CELL;
+            };
+        }
+
+        if (instruction instanceof BinaryOpInstruction binaryOp) {
+            var left = evaluate(position, binaryOp.getLeftOperand());
+            var right = evaluate(position, binaryOp.getRightOperand());
+
+            if (left.state() == UNKNOWN || right.state() == UNKNOWN)
+                return Cell.UNKNOWN_CELL;
+
+            if (left.state() == UNDEFINED || right.state() == UNDEFINED)
+                return Cell.UNDEFINED_CELL;
+
+            return evaluate(binaryOp.getOperation().getOpType(), left.constant(), right.constant());
+        }
+
+        return Cell.UNKNOWN_CELL;
+    }
+
+    private static Cell evaluate(OperationType operation, int left, int right) {
+        return switch (operation) {
+            case ADD -> Cell.of(left + right);
+            case SUB -> Cell.of(left - right);
+            case MUL -> Cell.of(left * right);
+            // Division by zero must still throw when the program runs
+            case DIV -> right == 0 ? Cell.UNKNOWN_CELL : Cell.of(left / right);
+            case AND, ANDB -> Cell.of(left & right);
+            case OR, ORB -> Cell.of(left | right);
+            case XOR -> Cell.of(left ^ right);
+            case SHL -> Cell.of(left << right);
+            case SHR -> Cell.of(left >> right);
+            case SHRR -> Cell.of(left >>> right);
+            case EQ -> Cell.of(left == right ? 1 : 0);
+            case NEQ -> Cell.of(left != right ? 1 : 0);
+            case LTH -> Cell.of(left < right ? 1 : 0);
+            case GTH -> Cell.of(left > right ? 1 : 0);
+            case LTE -> Cell.of(left <= right ? 1 : 0);
+            case GTE -> Cell.of(left >= right ? 1 : 0);
+            default -> Cell.UNKNOWN_CELL;
+        };
+    }
+
+    public boolean isExecutable(int block) {
+        return executableBlocks[block];
+    }
+
+    /**
+     * @return the constant the value always holds, if there is one
+     */
+    public OptionalInt getConstant(int value) {
+        var cell = cells[value];
+        return cell.state() == CONSTANT ? OptionalInt.of(cell.constant()) : OptionalInt.empty();
+    }
+
+    /**
+     * @return the constant the element always holds when the instruction at the given position runs, if there is one
+     */
+    public OptionalInt getConstant(int position, Element element) {
+        var cell = evaluate(position, element);
+        return cell.state() == CONSTANT ? OptionalInt.of(cell.constant()) : OptionalInt.empty();
+    }
+
+    /**
+     * @return the constant the expression always evaluates to when the instruction at the given position runs, if
+     * there is one
+     */
+    public OptionalInt getConstant(int position, Instruction instruction) {
+        var cell = evaluate(position, instruction);
+        return cell.state() == CONSTANT ? OptionalInt.of(cell.constant()) : OptionalInt.empty();
+    }
+}
@@ -0,0 +1,336 @@
+package pt.up.fe.comp2023.ollir.optimization.ssa;
+
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp2023.ollir.optimization.cfg.ControlFlowGraph;
+import pt.up.fe.comp2023.ollir.optimization.cfg.DominatorTree;
+import pt.up.fe.comp2023.ollir.utils.InstructionUtils;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Static single assignment view of the local variables and parameters of a method.
+ * <p>
+ * Instead of renaming the variables of the OLLIR code, every definition of a variable is given a value number, and
+ * every use of a variable is linked to the value that reaches it. Phi functions are placed at the dominance frontiers
+ * of the definitions and renamed over the dominator tree, as in the algorithm of Cytron et al. Since the code itself is
+ * never rewritten, leaving SSA form only requires rewriting the instructions in terms of the original variables.
+ * <p>
+ * Each variable also has a value for its contents when the method starts. Only reachable code is in SSA form.
+ */
+public class SsaForm {
+
+    /**
+     * @param operands the value coming from each predecessor of the block, in the order of
+     *                 {@link ControlFlowGraph#getPredecessors(int)}, or -1 for unreachable predecessors; a phi of the
+     *                 entry block has an extra operand for the value when the method starts
+     */
+    public record Phi(int block, int variable, int value, int[] operands) {
+    }
+
+    private final ControlFlowGraph cfg;
+    private final DominatorTree dominatorTree;
+    private final List<String> variables;
+    private final Map<String, Integer> variableIndexes = new HashMap<>();
+
+    private final List<Integer> valueVariables = new ArrayList<>();
+    private final List<Integer> valueDefinitions = new ArrayList<>();
+    private final List<Phi> valuePhis = new ArrayList<>();
+
+    private final int[] definedValues;
+    private final List<Map<String, Integer>> usedValues = new ArrayList<>();
+    private final List<List<Phi>> phis = new ArrayList<>();
+
+    private final List<List<Integer>> instructionUsers = new ArrayList<>();
+    private final List<List<Phi>> phiUsers = new ArrayList<>();
+
+    public SsaForm(ControlFlowGraph cfg) {
+        this.cfg = cfg;
+        this.dominatorTree = new DominatorTree(cfg);
+
+        var names = new TreeSet<String>();
+        cfg.getMethod().getVarTable().forEach((name, descriptor) -> {
+            // Parameters can be assigned like any other variable
+            var scope = descriptor.getScope();
+            if ((scope == VarScope.LOCAL || scope == VarScope.PARAMETER) && !name.equals("this"))
+                names.add(name);
+        });
+
+        this.variables = new ArrayList<>(names);
+        for (int i = 0; i < variables.size(); i++) {
+            variableIndexes.put(variables.get(i), i);
+            newValue(i, -1, null);
+        }
+
+        int numInstructions = cfg.getInstructions().size();
+        this.definedValues = new int[numInstructions];
+        for (int i = 0; i < numInstructions; i++) {
+            definedValues[i] = -1;
+            usedValues.add(new HashMap<>());
+        }
+
+        for (int block = 0; block < cfg.getNumBlocks(); block++) {
+            phis.add(new ArrayList<>());
+        }
+
+        insertPhis();
+        rename();
+        collectUsers();
+    }
+
+    private int newValue(int variable, int definition, Phi phi) {
+        valueVariables.add(variable);
+        valueDefinitions.add(definition);
+        valuePhis.add(phi);
+        instructionUsers.add(new ArrayList<>());
+        phiUsers.add(new ArrayList<>());
+
+        return valueVariables.size() - 1;
+    }
+
+    /**
+     * @return the variable the instruction defines, or -1 if it does not define one of the variables in SSA form
+     */
+    private int getDefinedVariable(Instruction instruction) {
+        return InstructionUtils.getDefinedVariable(instruction)
+                .map(operand -> variableIndexes.getOrDefault(operand.getName(), -1))
+                .orElse(-1);
+    }
+
+    /**
+     * @return the variable of the element, or -1 if it is not a use of one of the variables in SSA form
+     */
+    public int getVariable(Element element) {
+        if (!(element instanceof Operand operand) || element instanceof ArrayOperand)
+            return -1;
+
+        var elementType = operand.getType().getTypeOfElement();
+        if (elementType == ElementType.CLASS || elementType == ElementType.THIS)
+            return -1;
+
+        return variableIndexes.getOrDefault(operand.getName(), -1);
+    }
+
+    private void insertPhis() {
+        var definitionBlocks = new ArrayList<List<Integer>>();
+        for (int i = 0; i < variables.size(); i++) {
+            definitionBlocks.add(new ArrayList<>());
+        }
+
+        for (int block : cfg.getReversePostorder()) {
+            for (int i = cfg.getStart(block); i < cfg.getEnd(block); i++) {
+                int variable = getDefinedVariable(cfg.getInstructions().get(i));
+                if (variable != -1) definitionBlocks.get(variable).add(block);
+            }
+        }
+
+        var hasPhi = new int[cfg.getNumBlocks()];
+        var inWorklist = new int[cfg.getNumBlocks()];
+
+        for (int variable = 0; variable < variables.size(); variable++) {
+            // Marks are the variable number plus one, so they never need to be cleared
+            int mark = variable + 1;
+            var worklist = new ArrayDeque<Integer>();
+
+            for (int block : definitionBlocks.get(variable)) {
+                if (inWorklist[block] != mark) {
+                    inWorklist[block] = mark;
+                    worklist.add(block);
+                }
+            }
+
+            while (!worklist.isEmpty()) {
+                int block = worklist.poll();
+
+                for (int frontierBlock : dominatorTree.getFrontier(block)) {
+                    if (hasPhi[frontierBlock] == mark)
+                        continue;
+
+                    hasPhi[frontierBlock] = mark;
+
+                    int numOperands = cfg.getPredecessors(frontierBlock).size() + (frontierBlock == 0 ? 1 : 0);
+                    var operands = new int[numOperands];
+                    Arrays.fill(operands, -1);
+
+                    int value = valueVariables.size();
+                    var phi = new Phi(frontierBlock, variable, value, operands);
+                    newValue(variable, -1, phi);
+                    phis.get(frontierBlock).add(phi);
+
+                    if (inWorklist[frontierBlock] != mark) {
+                        inWorklist[frontierBlock] = mark;
+                        worklist.add(frontierBlock);
+                    }
+                }
+            }
+        }
+    }
+
+    private void rename() {
+        if (cfg.getReversePostorder().isEmpty())
+            return;
+
+        var stacks = new ArrayList<ArrayDeque<Integer>>();
+        for (int variable = 0; variable < variables.size(); variable++) {
+            var stack = new ArrayDeque<Integer>();
+            stack.push(variable);
+            stacks.add(stack);
+        }
+
+        // The phis of the entry block also receive the values the variables have when the method starts
+        for (var phi : phis.get(0)) {
+            phi.operands()[phi.operands().length - 1] = phi.variable();
+        }
+
+        // Each frame is a block and whether it is being entered, or left after its subtree was renamed
+        var frames = new ArrayDeque<int[]>();
+        var pushed = new ArrayList<List<Integer>>();
+        for (int block = 0; block < cfg.getNumBlocks(); block++) {
+            pushed.add(new ArrayList<>());
+        }
+
+        frames.push(new int[]{cfg.getReversePostorder().get(0), 1});
+
+        while (!frames.isEmpty()) {
+            var frame = frames.pop();
+            int block = frame[0];
+
+            if (frame[1] == 0) {
+                for (int variable : pushed.get(block)) {
+                    stacks.get(variable).pop();
+                }
+
+                continue;
+            }
+
+            var blockPushed = pushed.get(block);
+
+            for (var phi : phis.get(block)) {
+                stacks.get(phi.variable()).push(phi.value());
+                blockPushed.add(phi.variable());
+            }
+
+            for (int i = cfg.getStart(block); i < cfg.getEnd(block); i++) {
+                var instruction = cfg.getInstructions().get(i);
+                var uses = usedValues.get(i);
+
+                InstructionUtils.forEachUse(instruction, element -> {
+                    int variable = getVariable(element);
+                    if (variable != -1) uses.put(variables.get(variable), stacks.get(variable).peek());
+                });
+
+                int variable = getDefinedVariable(instruction);
+                if (variable != -1) {
+                    int value = newValue(variable, i, null);
+                    definedValues[i] = value;
+
+                    stacks.get(variable).push(value);
+                    blockPushed.add(variable);
+                }
+            }
+
+            for (int successor : cfg.getSuccessors(block)) {
+                int predecessorIndex = cfg.getPredecessors(successor).indexOf(block);
+                for (var phi : phis.get(successor)) {
+                    phi.operands()[predecessorIndex] = stacks.get(phi.variable()).peek();
+                }
+            }
+
+            frames.push(new int[]{block, 0});
+            for (int child : dominatorTree.getChildren(block)) {
+                frames.push(new int[]{child, 1});
+            }
+        }
+    }
+
+    private void collectUsers() {
+        for (int i = 0; i < usedValues.size(); i++) {
+            for (int value : usedValues.get(i).values()) {
+                if (!instructionUsers.get(value).contains(i)) instructionUsers.get(value).add(i);
+            }
+        }
+
+        for (var blockPhis : phis) {
+            for (var phi : blockPhis) {
+                for (int operand : phi.operands()) {
+                    if (operand != -1) phiUsers.get(operand).add(phi);
+                }
+            }
+        }
+    }
+
+    public ControlFlowGraph getCfg() {
+        return cfg;
+    }
+
+    public DominatorTree getDominatorTree() {
+        return dominatorTree;
+    }
+
+    public List<String> getVariables() {
+        return variables;
+    }
+
+    public int getNumValues() {
+        return valueVariables.size();
+    }
+
+    public int getValueVariable(int value) {
+        return valueVariables.get(value);
+    }
+
+    /**
+     * @return whether the value is the one the variable has when the method starts
+     */
+    public boolean isEntryValue(int value) {
+        return value < variables.size();
+    }
+
+    /**
+     * @return the position of the instruction that defines the value, or -1 if it is an entry value or a phi
+     */
+    public int getDefinition(int value) {
+        return valueDefinitions.get(value);
+    }
+
+    /**
+     * @return the phi that defines the value, or null if it is not defined by a phi
+     */
+    public Phi getPhi(int value) {
+        return valuePhis.get(value);
+    }
+
+    /**
+     * @return the value defined by the instruction at the given position, or -1 if it does not define one
+     */
+    public int getDefinedValue(int position) {
+        return definedValues[position];
+    }
+
+    /**
+     * @return the value of the variable used by the instruction at the given position, or -1 if it does not use it
+     */
+    public int getUsedValue(int position, String variable) {
+        return usedValues.get(position).getOrDefault(variable, -1);
+    }
+
+    public List<Phi> getPhis(int block) {
+        return phis.get(block);
+    }
+
+    /**
+     * @return the positions of the instructions that use the value
+     */
+    public List<Integer> getInstructionUsers(int value) {
+        return instructionUsers.get(value);
+    }
+
+    public List<Phi> getPhiUsers(int value) {
+        return phiUsers.get(value);
+    }
+}
@@ -0,0 +1,351 @@
+package pt.up.fe.comp2023.ollir.optimization.valuenumbering;
+
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp2023.ollir.optimization.cfg.ControlFlowGraph;
+import pt.up.fe.comp2023.ollir.optimization.ssa.SsaForm;
+import pt.up.fe.comp2023.ollir.utils.InstructionUtils;
+import pt.up.fe.comp2023.ollir.utils.MethodUtils;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Eliminates common subexpressions by value numbering the values of the {@link SsaForm} of each method.
+ * <p>
+ * Values computed by the same operation from values with the same numbers get the same number, and so do copies of a
+ * value. When an expression was already computed into a variable that still holds it, the expression is replaced by a
+ * copy of that variable, and later uses of a value read the first variable that holds it, so the copies usually end up
+ * dead. Reads of array elements and fields are only reused within a block, until an array or field is written or a
+ * method is called.
+ * <p>
+ * Local value numbering works on each block on its own. Global value numbering walks the dominator tree instead, so
+ * expressions computed in a block are also reused in the blocks it dominates.
+ */
+public class ValueNumberingOptimizer {
+
+    private static final List<OperationType> COMMUTATIVE_OPERATIONS = List.of(OperationType.ADD, OperationType.MUL,
+            OperationType.AND, OperationType.ANDB, OperationType.OR, OperationType.ORB, OperationType.XOR,
+            OperationType.EQ, OperationType.NEQ);
+
+    private final boolean global;
+
+    private SsaForm ssa;
+    private ControlFlowGraph cfg;
+    private Method method;
+
+    private int[] valueNumbers;
+    private int[] currentValues;
+    private final Map<List<Object>, Integer> expressions = new HashMap<>();
+    private final Map<Integer, List<Integer>> holders = new HashMap<>();
+    private final ArrayDeque<Runnable> undoLog = new ArrayDeque<>();
+    private int memoryVersion;
+
+    private Instruction[] newInstructions;
+
+    /**
+     * @param global whether expressions are reused across blocks, in the blocks dominated by the one that computes them
+     */
+    public ValueNumberingOptimizer(boolean global) {
+        this.global = global;
+    }
+
+    public void optimize(ClassUnit classUnit) {
+        for (var method : new ArrayList<>(classUnit.getMethods())) {
+            optimize(method);
+        }
+    }
+
+    /**
+     * Optimizes the method, replacing it in its class if its code changes.
+     *
+     * @return the optimized method
+     */
+    public Method optimize(Method method) {
+        MethodUtils.buildCFG(method);
+
+        this.method = method;
+        this.cfg = new ControlFlowGraph(method);
+        this.ssa = new SsaForm(cfg);
+
+        this.valueNumbers = new int[ssa.getNumValues()];
+        for (int value = 0; value < valueNumbers.length; value++) {
+            valueNumbers[value] = value;
+        }
+
+        this.currentValues = new int[ssa.getVariables().size()];
+        for (int variable = 0; variable < currentValues.length; variable++) {
+            currentValues[variable] = variable;
+        }
+
+        var instructions = cfg.getInstructions();
+        this.newInstructions = instructions.toArray(new Instruction[0]);
+
+        if (global) {
+            numberDominatorTree();
+        } else {
+            for (int block : cfg.getReversePostorder()) {
+                // Nothing is known about the variables a block receives from its predecessors
+                Arrays.fill(currentValues, -1);
+
+                int mark = undoLog.size();
+                numberBlock(block);
+                undo(mark);
+            }
+        }
+
+        var labels = MethodUtils.getLabelsByInstruction(method);
+        boolean changed = false;
+
+        for (int i = 0; i < instructions.size(); i++) {
+            var instruction = instructions.get(i);
+            if (newInstructions[i] == instruction)
+                continue;
+
+            changed = true;
+            if (labels.containsKey(instruction))
+                labels.put(newInstructions[i], labels.get(instruction));
+        }
+
+        if (!changed)
+            return method;
+
+        return MethodUtils.replaceInstructions(method, Arrays.asList(newInstructions), labels);
+    }
+
+    private void numberDominatorTree() {
+        if (cfg.getReversePostorder().isEmpty())
+            return;
+
+        var dominatorTree = ssa.getDominatorTree();
+        var marks = new int[cfg.getNumBlocks()];
+
+        // Each frame is a block and whether it is being entered, or left after its subtree was numbered
+        var frames = new ArrayDeque<int[]>();
+        frames.push(new int[]{cfg.getReversePostorder().get(0), 1});
+
+        while (!frames.isEmpty()) {
+            var frame = frames.pop();
+            int block = frame[0];
+
+            if (frame[1] == 0) {
+                undo(marks[block]);
+                continue;
+            }
+
+            marks[block] = undoLog.size();
+            numberBlock(block);
+
+            frames.push(new int[]{block, 0});
+            for (int child : dominatorTree.getChildren(block)) {
+                frames.push(new int[]{child, 1});
+            }
+        }
+    }
+
+    private void undo(int mark) {
+        while (undoLog.size() > mark) {
+            undoLog.pop().run();
+        }
+    }
+
+    private void numberBlock(int block) {
+        // Arrays and fields may be written on the way from a dominator, so their reads are never reused across blocks
+        memoryVersion++;
+
+        for (var phi : ssa.getPhis(block)) {
+            setCurrentValue(phi.variable(), phi.value());
+        }
+
+        for (int i = cfg.getStart(block); i < cfg.getEnd(block); i++) {
+            numberInstruction(i);
+        }
+    }
+
+    private void numberInstruction(int position) {
+        var instruction = cfg.getInstructions().get(position);
+        var newInstruction = replaceUses(position, instruction);
+
+        int definedValue = ssa.getDefinedValue(position);
+        if (definedValue != -1) {
+            var assign = (AssignInstruction) instruction;
+            var rhs = assign.getRhs();
+
+            var copied = rhs instanceof SingleOpInstruction singleOp ? describe(position, singleOp.getSingleOperand())
+                    : null;
+
+            if (copied instanceof Integer valueNumber) {
+                valueNumbers[definedValue] = valueNumber;
+            } else {
+                var expression = getExpression(position, rhs, assign.getTypeOfAssign());
+                var valueNumber = expression != null ? expressions.get(expression) : null;
+
+                if (valueNumber != null) {
+                    valueNumbers[definedValue] = valueNumber;
+
+                    int holder = findHolder(valueNumber);
+                    if (holder != -1) {
+                        var copy = new SingleOpInstruction(toOperand(holder, assign.getTypeOfAssign()));
+                        newInstruction = new AssignInstruction(assign.getDest(), assign.getTypeOfAssign(), copy);
+                    }
+                } else if (expression != null) {
+                    expressions.put(expression, definedValue);
+                    undoLog.push(() -> expressions.remove(expression));
+                }
+            }
+
+            setCurrentValue(ssa.getValueVariable(definedValue), definedValue);
+            addHolder(valueNumbers[definedValue], definedValue);
+        }
+
+        if (InstructionUtils.writesMemory(instruction))
+            memoryVersion++;
+
+        newInstructions[position] = newInstruction;
+    }
+
+    /**
+     * Replaces the variables the instruction reads by the first variable that holds the same value, if it is another
+     * one.
+     */
+    private Instruction replaceUses(int position, Instruction instruction) {
+        boolean hasReplacements = InstructionUtils.getUses(instruction).stream()
+                .anyMatch(element -> getReplacement(position, element) != -1);
+
+        if (!hasReplacements)
+            return instruction;
+
+        return InstructionUtils.mapUses(instruction, element -> {
+            int replacement = getReplacement(position, element);
+            return replacement != -1 ? toOperand(replacement, element.getType()) : element;
+        });
+    }
+
+    /**
+     * @return the value whose variable should be read instead of the element, or -1 if the element should be kept
+     */
+    private int getReplacement(int position, Element element) {
+        int variable = ssa.getVariable(element);
+        if (variable == -1)
+            return -1;
+
+        int value = ssa.getUsedValue(position, ssa.getVariables().get(variable));
+        if (value == -1)
+            return -1;
+
+        int holder = findHolder(valueNumbers[value]);
+        return holder != -1 && ssa.getValueVariable(holder) != variable ? holder : -1;
+    }
+
+    /**
+     * @return the first value with the given number whose variable still holds it, or -1 if there is none
+     */
+    private int findHolder(int valueNumber) {
+        for (int value : holders.getOrDefault(valueNumber, List.of())) {
+            if (currentValues[ssa.getValueVariable(value)] == value)
+                return value;
+        }
+
+        return -1;
+    }
+
+    private void addHolder(int valueNumber, int value) {
+        var valueHolders = holders.computeIfAbsent(valueNumber, number -> new ArrayList<>());
+        valueHolders.add(value);
+        undoLog.push(() -> valueHolders.remove(valueHolders.size() - 1));
+    }
+
+    private void setCurrentValue(int variable, int value) {
+        int previous = currentValues[variable];
+        currentValues[variable] = value;
+        undoLog.push(() -> currentValues[variable] = previous);
+    }
+
+    private Operand toOperand(int value, Type type) {
+        var name = ssa.getVariables().get(ssa.getValueVariable(value));
+        var operand = new Operand(name, type);
+
+        var params = method.getParams();
+        for (int i = 0; i < params.size(); i++) {
+            if (params.get(i) instanceof Operand param && param.getName().equals(name))
+                operand.setParamId(i + 1);
+        }
+
+        return operand;
+    }
+
+    /**
+     * @return what identifies the value of the element when the instruction at the given position runs: the number of
+     * its value for variables, or a string for literals and {@code this}, or null if it cannot be identified
+     */
+    private Object describe(int position, Element element) {
+        if (element instanceof LiteralElement literal)
+            return literal.getLiteral() + "." + literal.getType().getTypeOfElement();
+
+        if (element.getType().getTypeOfElement() == ElementType.THIS)
+            return "this";
+
+        int variable = ssa.getVariable(element);
+        if (variable == -1)
+            return null;
+
+        int value = ssa.getUsedValue(position, ssa.getVariables().get(variable));
+        return value != -1 ? valueNumbers[value] : null;
+    }
+
+    /**
+     * @return a key that is the same for expressions that always evaluate to the same value at their positions, or
+     * null if the expression cannot be reused
+     */
+    private List<Object> getExpression(int position, Instruction rhs, Type type) {
+        var resultType = type.getTypeOfElement();
+
+        if (rhs instanceof BinaryOpInstruction binaryOp) {
+            var operation = binaryOp.getOperation().getOpType();
+            var left = describe(position, binaryOp.getLeftOperand());
+            var right = describe(position, binaryOp.getRightOperand());
+
+            if (COMMUTATIVE_OPERATIONS.contains(operation) && String.valueOf(left).compareTo(String.valueOf(right)) > 0)
+                return key(resultType, operation, right, left);
+
+            return key(resultType, operation, left, right);
+        }
+
+        if (rhs instanceof UnaryOpInstruction unaryOp)
+            return key(resultType, unaryOp.getOperation().getOpType(), describe(position, unaryOp.getOperand()));
+
+        if (rhs instanceof SingleOpInstruction singleOp && singleOp.getSingleOperand() instanceof ArrayOperand array) {
+            var arrayReference = new Operand(array.getName(), new Type(ElementType.ARRAYREF));
+            var key = key(resultType, "[]", memoryVersion, describe(position, arrayReference));
+
+            for (var index : array.getIndexOperands()) {
+                var indexKey = key(describe(position, index));
+                if (key == null || indexKey == null)
+                    return null;
+
+                key.addAll(indexKey);
+            }
+
+            return key;
+        }
+
+        // The length of an array never changes
+        if (rhs instanceof CallInstruction call && call.getInvocationType() == CallType.arraylength)
+            return key(resultType, "arraylength", describe(position, call.getFirstArg()));
+
+        if (rhs instanceof GetFieldInstruction getField) {
+            var field = ((Operand) getField.getSecondOperand()).getName();
+            return key(resultType, "getfield", memoryVersion, field, describe(position, getField.getFirstOperand()));
+        }
+
+        return null;
+    }
+
+    private static List<Object> key(Object... parts) {
+        var key = new ArrayList<>(Arrays.asList(parts));
+        return key.contains(null) ? null : key;
+    }
+}
@@ -0,0 +1,222 @@
+package pt.up.fe.comp2023.ollir.utils;
+
+import org.specs.comp.ollir.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+
+public class InstructionUtils {
+
+    /**
+     * @return the variable the instruction assigns, if it is an assignment to a whole variable (and not to an array
+     * element)
+     */
+    public static Optional<Operand> getDefinedVariable(Instruction instruction) {
+        if (instruction instanceof AssignInstruction assign && !(assign.getDest() instanceof ArrayOperand))
+            return Optional.of((Operand) assign.getDest());
+
+        return Optional.empty();
+    }
+
+    /**
+     * Calls the action for every element whose value the instruction reads. Arrays accessed through an
+     * {@link ArrayOperand} are passed as a plain {@link Operand}, followed by their indexes. The first argument of
+     * {@code new}, which names the class being instantiated, is not a value and is skipped.
+     */
+    public static void forEachUse(Instruction instruction, Consumer<Element> action) {
+        if (instruction instanceof AssignInstruction assign) {
+            if (assign.getDest() instanceof ArrayOperand arrayOperand)
+                forEachUse(arrayOperand, action);
+
+            forEachUse(assign.getRhs(), action);
+        } else if (instruction instanceof SingleOpInstruction singleOp) {
+            forEachUse(singleOp.getSingleOperand(), action);
+        } else if (instruction instanceof UnaryOpInstruction unaryOp) {
+            forEachUse(unaryOp.getOperand(), action);
+        } else if (instruction instanceof BinaryOpInstruction binaryOp) {
+            forEachUse(binaryOp.getLeftOperand(), action);
+            forEachUse(binaryOp.getRightOperand(), action);
+        } else if (instruction instanceof CallInstruction call) {
+            if (call.getInvocationType() != CallType.NEW)
+                forEachUse(call.getFirstArg(), action);
+
+            if (call.getListOfOperands() != null)
+                call.getListOfOperands().forEach(operand -> forEachUse(operand, action));
+        } else if (instruction instanceof GetFieldInstruction getField) {
+            forEachUse(getField.getFirstOperand(), action);
+        } else if (instruction instanceof PutFieldInstruction putField) {
+            forEachUse(putField.getFirstOperand(), action);
+            forEachUse(putField.getThirdOperand(), action);
+        } else if (instruction instanceof CondBranchInstruction condBranch) {
+            forEachUse(condBranch.getCondition(), action);
+        } else if (instruction instanceof ReturnInstruction ret && ret.hasReturnValue()) {
+            forEachUse(ret.getOperand(), action);
+        }
+    }
+
+    private static void forEachUse(Element element, Consumer<Element> action) {
+        if (element instanceof ArrayOperand arrayOperand) {
+            action.accept(new Operand(arrayOperand.getName(), new Type(ElementType.ARRAYREF)));
+            arrayOperand.getIndexOperands().forEach(index -> forEachUse(index, action));
+            return;
+        }
+
+        action.accept(element);
+    }
+
+    /**
+     * Copies an instruction, replacing every element it reads by the result of the mapper. Arrays accessed through an
+     * {@link ArrayOperand} are mapped as in {@link #forEachUse(Instruction, Consumer)}, and must be mapped to another
+     * operand. The variable an assignment defines is kept.
+     */
+    public static Instruction mapUses(Instruction instruction, UnaryOperator<Element> mapper) {
+        if (instruction instanceof AssignInstruction assign) {
+            var dest = assign.getDest() instanceof ArrayOperand arrayOperand
+                    ? mapUses(arrayOperand, mapper)
+                    : assign.getDest();
+
+            return new AssignInstruction(dest, assign.getTypeOfAssign(), mapUses(assign.getRhs(), mapper));
+        }
+
+        if (instruction instanceof SingleOpInstruction singleOp)
+            return new SingleOpInstruction(mapUses(singleOp.getSingleOperand(), mapper));
+
+        if (instruction instanceof UnaryOpInstruction unaryOp)
+            return new UnaryOpInstruction(unaryOp.getOperation(), mapUses(unaryOp.getOperand(), mapper));
+
+        if (instruction instanceof BinaryOpInstruction binaryOp)
+            return new BinaryOpInstruction(mapUses(binaryOp.getLeftOperand(), mapper), binaryOp.getOperation(),
+                    mapUses(binaryOp.getRightOperand(), mapper));
+
+        if (instruction instanceof CallInstruction call) {
+            var firstArg = call.getInvocationType() == CallType.NEW
+                    ? call.getFirstArg()
+                    : mapUses(call.getFirstArg(), mapper);
+
+            var operands = new ArrayList<Element>();
+            if (call.getListOfOperands() != null)
+                call.getListOfOperands().forEach(operand -> operands.add(mapUses(operand, mapper)));
+
+            if (call.getSecondArg() == null)
+                return new CallInstruction(call.getInvocationType(), firstArg, operands, call.getReturnType());
+
+            return new CallInstruction(call.getInvocationType(), firstArg, call.getSecondArg(), operands,
+                    call.getReturnType());
+        }
+
+        if (instruction instanceof GetFieldInstruction getField)
+            return new GetFieldInstruction(mapUses(getField.getFirstOperand(), mapper), getField.getSecondOperand(),
+                    getField.getFieldType());
+
+        if (instruction instanceof PutFieldInstruction putField)
+            return new PutFieldInstruction(mapUses(putField.getFirstOperand(), mapper), putField.getSecondOperand(),
+                    mapUses(putField.getThirdOperand(), mapper), putField.getFieldType());
+
+        if (instruction instanceof SingleOpCondInstruction condBranch) {
+            var copy = new SingleOpCondInstruction((SingleOpInstruction) mapUses(condBranch.getCondition(), mapper));
+            copy.setLabel(condBranch.getLabel());
+            return copy;
+        }
+
+        if (instruction instanceof OpCondInstruction condBranch) {
+            var copy = new OpCondInstruction((OpInstruction) mapUses(condBranch.getCondition(), mapper));
+            copy.setLabel(condBranch.getLabel());
+            return copy;
+        }
+
+        if (instruction instanceof GotoInstruction gotoInstruction)
+            return new GotoInstruction(gotoInstruction.getLabel());
+
+        if (instruction instanceof ReturnInstruction ret) {
+            var copy = ret.hasReturnValue() ? new ReturnInstruction(mapUses(ret.getOperand(), mapper))
+                    : new ReturnInstruction();
+            copy.setReturnType(ret.getReturnType());
+            return copy;
+        }
+
+        throw new IllegalArgumentException("Unsupported instruction " + instruction.getInstType());
+    }
+
+    private static Element mapUses(Element element, UnaryOperator<Element> mapper) {
+        if (element instanceof ArrayOperand arrayOperand) {
+            var array = (Operand) mapper.apply(new Operand(arrayOperand.getName(), new Type(ElementType.ARRAYREF)));
+
+            var indexes = new ArrayList<Element>();
+            arrayOperand.getIndexOperands().forEach(index -> indexes.add(mapUses(index, mapper)));
+
+            var copy = new ArrayOperand(array.getName(), arrayOperand.getType(), indexes);
+            if (array.isParameter())
+                copy.setParamId(array.getParamId());
+            else if (array.getName().equals(arrayOperand.getName()) && arrayOperand.isParameter())
+                copy.setParamId(arrayOperand.getParamId());
+
+            return copy;
+        }
+
+        return mapper.apply(element);
+    }
+
+    /**
+     * Copies an assignment, storing its value into another variable.
+     */
+    public static AssignInstruction withDest(AssignInstruction assign, Operand dest) {
+        return new AssignInstruction(dest, assign.getTypeOfAssign(), assign.getRhs());
+    }
+
+    /**
+     * @return the label the instruction jumps to, if it is a jump
+     */
+    public static Optional<String> getJumpLabel(Instruction instruction) {
+        if (instruction instanceof GotoInstruction gotoInstruction)
+            return Optional.of(gotoInstruction.getLabel());
+
+        if (instruction instanceof CondBranchInstruction branch)
+            return Optional.of(branch.getLabel());
+
+        return Optional.empty();
+    }
+
+    /**
+     * Copies a jump, making it jump to another label.
+     */
+    public static Instruction withLabel(Instruction jump, String label) {
+        if (jump instanceof GotoInstruction)
+            return new GotoInstruction(label);
+
+        var copy = (CondBranchInstruction) mapUses(jump, element -> element);
+        copy.setLabel(label);
+        return copy;
+    }
+
+    /**
+     * @return whether the instruction may change an array element or a field, which any method call may do
+     */
+    public static boolean writesMemory(Instruction instruction) {
+        if (instruction instanceof AssignInstruction assign && assign.getDest() instanceof ArrayOperand)
+            return true;
+
+        return instruction instanceof PutFieldInstruction || callsMethod(instruction);
+    }
+
+    /**
+     * @return whether the instruction calls a method, including one whose result is assigned
+     */
+    public static boolean callsMethod(Instruction instruction) {
+        if (instruction instanceof AssignInstruction assign)
+            return callsMethod(assign.getRhs());
+
+        return instruction instanceof CallInstruction call
+                && call.getInvocationType() != CallType.arraylength
+                && call.getInvocationType() != CallType.NEW;
+    }
+
+    public static List<Element> getUses(Instruction instruction) {
+        var uses = new ArrayList<Element>();
+        forEachUse(instruction, uses::add);
+
+        return uses;
+    }
+}
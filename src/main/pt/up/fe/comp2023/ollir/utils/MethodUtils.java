@@ -0,0 +1,88 @@
+package pt.up.fe.comp2023.ollir.utils;
+
+import org.specs.comp.ollir.Instruction;
+import org.specs.comp.ollir.Method;
+import org.specs.comp.ollir.NodeType;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class MethodUtils {
+
+    /**
+     * @return the labels of every labeled instruction of the method
+     */
+    public static Map<Instruction, List<String>> getLabelsByInstruction(Method method) {
+        var labels = new HashMap<Instruction, List<String>>();
+        method.getLabels().forEach((label, instruction) ->
+                labels.computeIfAbsent(instruction, i -> new ArrayList<>()).add(label));
+
+        return labels;
+    }
+
+    /**
+     * Creates a copy of the method with the given instructions and replaces the original in its class. The CFG and
+     * the variable table of the new method are built, so the register of every variable is reset.
+     * <p>
+     * The OLLIR library caches the labels of a method and never rebuilds its CFG from scratch, which is why methods
+     * are replaced rather than edited in place. Instructions of the original method may be reused.
+     *
+     * @param labels the labels of each instruction
+     * @return the new method
+     */
+    public static Method replaceInstructions(Method method, List<Instruction> instructions,
+                                             Map<Instruction, List<String>> labels) {
+        var newMethod = new Method(method.getOllirClass());
+        newMethod.setMethodName(method.getMethodName());
+        newMethod.setMethodAccessModifier(method.getMethodAccessModifier());
+        newMethod.setReturnType(method.getReturnType());
+
+        if (method.isStaticMethod()) newMethod.setStaticMethod();
+        if (method.isFinalMethod()) newMethod.setFinalMethod();
+        if (method.isConstructMethod()) newMethod.setConstructMethod();
+
+        method.getParams().forEach(newMethod::addParam);
+
+        for (var instruction : instructions) {
+            for (var label : labels.getOrDefault(instruction, List.of())) {
+                newMethod.addLabel(label, instruction);
+            }
+
+            newMethod.addInstr(instruction);
+        }
+
+        var methods = method.getOllirClass().getMethods();
+        methods.set(methods.indexOf(method), newMethod);
+
+        buildCFG(newMethod);
+        newMethod.buildVarTable();
+
+        return newMethod;
+    }
+
+    /**
+     * Builds the CFG of the method, discarding the edges of any CFG built before, which {@link Method#buildCFG()} would
+     * keep.
+     */
+    public static void buildCFG(Method method) {
+        // The begin and end nodes can only be accessed once a CFG was built, but then they are linked to instructions
+        for (var instruction : method.getInstructions()) {
+            for (var predecessor : instruction.getPredecessors()) {
+                if (predecessor.getNodeType() == NodeType.BEGIN) predecessor.getSuccessors().clear();
+            }
+
+            for (var successor : instruction.getSuccessors()) {
+                if (successor.getNodeType() == NodeType.END) successor.getPredecessors().clear();
+            }
+        }
+
+        for (var instruction : method.getInstructions()) {
+            instruction.getSuccessors().clear();
+            instruction.getPredecessors().clear();
+        }
+
+        method.buildCFG();
+    }
+}
@@ -0,0 +1,44 @@
+package pt.up.fe.comp2023.server;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.List;
+
+/**
+ * Forwards a compilation job to a running {@link CompileServer} and prints its output.
+ */
+public class CompileClient {
+
+    private final int port;
+
+    public CompileClient(int port) {
+        this.port = port;
+    }
+
+    /**
+     * @param args the compiler arguments, with the input file already resolved to an absolute path
+     * @return the exit status of the compilation
+     */
+    public int send(List<String> args, PrintStream out) throws IOException {
+        try (var socket = new Socket(InetAddress.getLoopbackAddress(), port);
+             var in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+             var request = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()))) {
+
+            request.writeInt(args.size());
+            for (String arg : args) {
+                request.writeUTF(arg);
+            }
+            request.flush();
+
+            int status = in.readInt();
+            var output = new byte[in.readInt()];
+            in.readFully(output);
+
+            out.write(output);
+            out.flush();
+
+            return status;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package pt.up.fe.comp2023.server;
+
+import pt.up.fe.comp2023.JmmCompiler;
+import pt.up.fe.comp2023.Launcher;
+import pt.up.fe.specs.util.SpecsLogs;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Long-lived compiler process that accepts compilation jobs from {@link CompileClient} over a loopback socket.
+ * <p>
+ * A job is the list of command line arguments given to the client. The reply is the exit status followed by
+ * everything the compilation printed.
+ */
+public class CompileServer {
+
+    public static final int DEFAULT_PORT = 7077;
+
+    public static final int STATUS_OK = 0;
+    public static final int STATUS_ERROR = 1;
+
+    private final JmmCompiler compiler = new JmmCompiler();
+    private final int port;
+
+    private ServerSocket serverSocket;
+
+    public CompileServer(int port) {
+        this.port = port;
+    }
+
+    /**
+     * Binds the server to its port, or to any free port if it is 0. Clients that connect before {@link #run()} wait
+     * until the server is ready.
+     *
+     * @return the port the server listens on
+     */
+    public synchronized int listen() throws IOException {
+        if (serverSocket == null) {
+            serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        }
+
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Serves compilation jobs until the server is closed.
+     */
+    public void run() throws IOException {
+        SpecsLogs.info("Warming up compiler...");
+        compiler.warmUp();
+
+        int localPort = listen();
+
+        ExecutorService workers = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+
+        try {
+            SpecsLogs.info("Compile server listening on port " + localPort);
+
+            while (!serverSocket.isClosed()) {
+                Socket socket;
+                try {
+                    socket = serverSocket.accept();
+                } catch (SocketException e) {
+                    // Thrown by accept when the server is closed
+                    if (serverSocket.isClosed())
+                        break;
+
+                    throw e;
+                }
+
+                workers.submit(() -> handle(socket));
+            }
+        } finally {
+            close();
+            workers.shutdown();
+        }
+    }
+
+    /**
+     * Stops accepting jobs, which makes {@link #run()} return. The jobs already accepted are still answered.
+     */
+    public synchronized void close() throws IOException {
+        if (serverSocket != null) {
+            serverSocket.close();
+        }
+    }
+
+    private void handle(Socket socket) {
+        try (socket;
+             var in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+             var out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()))) {
+
+            int numArgs = in.readInt();
+            List<String> args = new ArrayList<>(numArgs);
+            for (int i = 0; i < numArgs; i++) {
+                args.add(in.readUTF());
+            }
+
+            var output = new ByteArrayOutputStream();
+            int status = compile(args, new PrintStream(output, true, StandardCharsets.UTF_8));
+
+            var outputBytes = output.toByteArray();
+            out.writeInt(status);
+            out.writeInt(outputBytes.length);
+            out.write(outputBytes);
+        } catch (IOException e) {
+            SpecsLogs.warn("Could not handle compilation request: " + e.getMessage());
+        }
+    }
+
+    private int compile(List<String> args, PrintStream out) {
+        var config = Launcher.parseArgs(args.toArray(String[]::new));
+
+        if (!Launcher.validateConfig(config)) {
+            out.println("Invalid arguments: " + args);
+            return STATUS_ERROR;
+        }
+
+        try {
+            return Launcher.compile(compiler, config, out) == 0 ? STATUS_OK : STATUS_ERROR;
+        } catch (RuntimeException e) {
+            e.printStackTrace(out);
+            return STATUS_ERROR;
+        }
+    }
+}
@@ -1,17 +1,37 @@
 package pt.up.fe.comp.cp2;
 
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import pt.up.fe.comp.CpUtils;
 import pt.up.fe.comp.TestUtils;
+import pt.up.fe.comp.jmm.jasmin.JasminResult;
 import pt.up.fe.comp.jmm.ollir.OllirResult;
+import pt.up.fe.comp2023.JmmCompiler;
+import pt.up.fe.comp2023.jasmin.JvmInstruction;
+import pt.up.fe.comp2023.jasmin.JvmOpcode;
+import pt.up.fe.comp2023.jasmin.PeepholeOptimizer;
+import pt.up.fe.comp2023.jasmin.StackLimiter;
 import pt.up.fe.specs.util.SpecsCheck;
 import pt.up.fe.specs.util.SpecsIo;
 import pt.up.fe.specs.util.SpecsStrings;
+import pt.up.fe.specs.util.SpecsSystem;
 import utils.ProjectTestUtils;
 
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
 import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
 
 public class JasminTest {
 
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     @Test
     public void ollirToJasminBasic() {
         testOllirToJasmin("pt/up/fe/comp/cp2/jasmin/OllirToJasminBasic.ollir");
@@ -38,6 +58,280 @@ public class JasminTest {
         testOllirToJasmin("pt/up/fe/comp/cp2/jasmin/TestTest.ollir");
     }
 
+    @Test
+    public void loadsLiteralOperandOfUnaryOperation() {
+        var result = TestUtils.backend(SpecsIo.getResource("pt/up/fe/comp/cp2/jasmin/UnaryLiteral.jmm"));
+
+        CpUtils.runJasmin(result, "1");
+    }
+
+    private static JvmInstruction simple(JvmOpcode opcode) {
+        return new JvmInstruction.Simple(opcode);
+    }
+
+    private static JvmInstruction jump(JvmOpcode opcode, String label) {
+        return new JvmInstruction.Jump(opcode, label);
+    }
+
+    private static JvmInstruction label(String name) {
+        return new JvmInstruction.Label(name);
+    }
+
+    private static List<String> optimize(JvmInstruction... instructions) {
+        return new PeepholeOptimizer().optimize(List.of(instructions)).stream()
+                .map(JvmInstruction::toJasmin)
+                .toList();
+    }
+
+    @Test
+    public void peepholeRemovesJumpToNext() {
+        var code = optimize(
+                jump(JvmOpcode.GOTO, "next"),
+                label("next"),
+                simple(JvmOpcode.ILOAD_1),
+                simple(JvmOpcode.IRETURN));
+
+        assertEquals(List.of("iload_1", "ireturn"), code);
+    }
+
+    /**
+     * The branch to a goto jumps to its target instead, and the goto to a return becomes the return, which leaves the
+     * first goto unreachable
+     */
+    @Test
+    public void peepholeThreadsJumps() {
+        var code = optimize(
+                simple(JvmOpcode.ILOAD_1),
+                jump(JvmOpcode.IFEQ, "else"),
+                simple(JvmOpcode.ICONST_1),
+                jump(JvmOpcode.GOTO, "end"),
+                label("else"),
+                jump(JvmOpcode.GOTO, "zero"),
+                label("zero"),
+                simple(JvmOpcode.ICONST_0),
+                label("end"),
+                simple(JvmOpcode.IRETURN));
+
+        assertEquals(List.of("iload_1", "ifeq zero", "iconst_1", "ireturn", "zero:", "iconst_0", "ireturn"), code);
+    }
+
+    @Test
+    public void peepholeInvertsBranchOverGoto() {
+        var code = optimize(
+                simple(JvmOpcode.ILOAD_1),
+                jump(JvmOpcode.IFEQ, "else"),
+                jump(JvmOpcode.GOTO, "then"),
+                label("else"),
+                simple(JvmOpcode.ICONST_0),
+                simple(JvmOpcode.IRETURN),
+                label("then"),
+                simple(JvmOpcode.ICONST_1),
+                simple(JvmOpcode.IRETURN));
+
+        assertEquals(List.of("iload_1", "ifne then", "iconst_0", "ireturn", "then:", "iconst_1", "ireturn"), code);
+    }
+
+    @Test
+    public void peepholeForwardsStoreToLoad() {
+        var code = optimize(
+                simple(JvmOpcode.ILOAD_1),
+                simple(JvmOpcode.ISTORE_2),
+                simple(JvmOpcode.ILOAD_2),
+                simple(JvmOpcode.IRETURN));
+
+        assertEquals(List.of("iload_1", "dup", "istore_2", "ireturn"), code);
+    }
+
+    @Test
+    public void peepholeComparesWithZeroDirectly() {
+        var code = optimize(
+                simple(JvmOpcode.ILOAD_1),
+                simple(JvmOpcode.ICONST_0),
+                jump(JvmOpcode.IF_ICMPLT, "negative"),
+                simple(JvmOpcode.ICONST_0),
+                simple(JvmOpcode.IRETURN),
+                label("negative"),
+                simple(JvmOpcode.ICONST_1),
+                simple(JvmOpcode.IRETURN));
+
+        assertEquals(List.of("iload_1", "iflt negative", "iconst_0", "ireturn", "negative:", "iconst_1", "ireturn"),
+                code);
+    }
+
+    /**
+     * Comparing a - 1 with zero is not comparing a with 1 when the subtraction overflows
+     */
+    @Test
+    public void peepholeKeepsSubtractionBeforeComparison() {
+        var code = optimize(
+                simple(JvmOpcode.ILOAD_1),
+                simple(JvmOpcode.ICONST_1),
+                simple(JvmOpcode.ISUB),
+                jump(JvmOpcode.IFLT, "negative"),
+                simple(JvmOpcode.ICONST_0),
+                simple(JvmOpcode.IRETURN),
+                label("negative"),
+                simple(JvmOpcode.ICONST_1),
+                simple(JvmOpcode.IRETURN));
+
+        assertEquals(List.of("iload_1", "iconst_1", "isub", "iflt negative", "iconst_0", "ireturn", "negative:",
+                "iconst_1", "ireturn"), code);
+    }
+
+    @Test
+    public void peephole() {
+        var result = TestUtils.backend(SpecsIo.getResource("pt/up/fe/comp/cp2/jasmin/Peephole.jmm"));
+
+        CpUtils.matches(CpUtils.getJasminMethod(result, "isNegative"), "iflt");
+        CpUtils.runJasmin(result, "1\n0\n0\n1");
+    }
+
+    private static int getStackLimit(JvmInstruction... instructions) {
+        return new StackLimiter().getStackLimit(List.of(instructions));
+    }
+
+    private static int getStackLimit(JasminResult result, String methodName) {
+        var matcher = CpUtils.getLimitStackRegex().matcher(CpUtils.getJasminMethod(result, methodName));
+        CpUtils.assertTrue("Expected to find the .limit stack directive", matcher.find(), result);
+
+        return SpecsStrings.decodeInteger(matcher.group(1));
+    }
+
+    @Test
+    public void stackLimitStraightLine() {
+        int limit = getStackLimit(
+                simple(JvmOpcode.ILOAD_1),
+                simple(JvmOpcode.ILOAD_2),
+                simple(JvmOpcode.ILOAD_1),
+                simple(JvmOpcode.IMUL),
+                simple(JvmOpcode.IADD),
+                simple(JvmOpcode.IRETURN));
+
+        assertEquals(3, limit);
+    }
+
+    /**
+     * The receiver and every argument are on the stack when the method is invoked, and only the result is left
+     */
+    @Test
+    public void stackLimitInvocation() {
+        int limit = getStackLimit(
+                simple(JvmOpcode.ALOAD_0),
+                simple(JvmOpcode.ILOAD_1),
+                simple(JvmOpcode.ILOAD_2),
+                new JvmInstruction.MemberRef(JvmOpcode.INVOKEVIRTUAL, "Test", "add", "(II)I"),
+                simple(JvmOpcode.ICONST_1),
+                simple(JvmOpcode.IADD),
+                simple(JvmOpcode.IRETURN));
+
+        assertEquals(3, limit);
+    }
+
+    /**
+     * Only the deepest path counts, even when it is not the one that comes first
+     */
+    @Test
+    public void stackLimitDeepestBranch() {
+        int limit = getStackLimit(
+                simple(JvmOpcode.ILOAD_1),
+                jump(JvmOpcode.IFEQ, "deep"),
+                simple(JvmOpcode.ICONST_1),
+                jump(JvmOpcode.GOTO, "end"),
+                label("deep"),
+                simple(JvmOpcode.ICONST_1),
+                simple(JvmOpcode.ICONST_2),
+                simple(JvmOpcode.ICONST_3),
+                simple(JvmOpcode.IADD),
+                simple(JvmOpcode.IADD),
+                label("end"),
+                simple(JvmOpcode.IRETURN));
+
+        assertEquals(3, limit);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void stackLimitRejectsInconsistentHeights() {
+        getStackLimit(
+                simple(JvmOpcode.ILOAD_1),
+                jump(JvmOpcode.IFEQ, "end"),
+                simple(JvmOpcode.ICONST_1),
+                label("end"),
+                simple(JvmOpcode.RETURN));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void stackLimitRejectsUnderflow() {
+        getStackLimit(
+                simple(JvmOpcode.ICONST_1),
+                simple(JvmOpcode.IADD),
+                simple(JvmOpcode.IRETURN));
+    }
+
+    @Test
+    public void stackLimit() {
+        var result = TestUtils.backend(SpecsIo.getResource("pt/up/fe/comp/cp2/jasmin/StackLimit.jmm"));
+
+        CpUtils.assertEquals("Stack limit of 'callWithThreeArguments'", 4,
+                getStackLimit(result, "callWithThreeArguments"), result);
+        CpUtils.assertEquals("Stack limit of 'nestedArithmetic'", 2, getStackLimit(result, "nestedArithmetic"), result);
+        CpUtils.runJasmin(result, "6\n16");
+    }
+
+    @Test
+    public void classFileBasic() {
+        testClassFile("pt/up/fe/comp/cp2/jasmin/OllirToJasminBasic.jmm");
+    }
+
+    @Test
+    public void classFileArithmetics() {
+        testClassFile("pt/up/fe/comp/cp2/jasmin/OllirToJasminArithmetics.jmm");
+    }
+
+    @Test
+    public void classFileInvoke() {
+        testClassFile("pt/up/fe/comp/cp2/jasmin/OllirToJasminInvoke.jmm");
+    }
+
+    @Test
+    public void classFilePeephole() {
+        testClassFile("pt/up/fe/comp/cp2/jasmin/Peephole.jmm");
+    }
+
+    @Test
+    public void classFileStackLimit() {
+        testClassFile("pt/up/fe/comp/cp2/jasmin/StackLimit.jmm");
+    }
+
+    @Test
+    public void classFileHelloWorld() {
+        testClassFile("pt/up/fe/comp/cp2/apps/HelloWorld.jmm");
+    }
+
+    @Test
+    public void classFileSimple() {
+        testClassFile("pt/up/fe/comp/cp2/apps/Simple.jmm");
+    }
+
+    /**
+     * Compiles the code straight to a class file, runs it and checks that it prints the same as the class assembled
+     * from the Jasmin code.
+     */
+    private void testClassFile(String resource) {
+        var code = SpecsIo.getResource(resource);
+        var out = new PrintStream(OutputStream.nullOutputStream());
+        var compiledClass = new JmmCompiler().compile(code, Map.of("backend", JmmCompiler.BACKEND_CLASS), out);
+        var classFile = compiledClass.writeTo(folder.getRoot());
+
+        var classpath = folder.getRoot().getAbsolutePath() + File.pathSeparator + TestUtils.getLibsClasspath();
+        var command = List.of("java", "-cp", classpath, compiledClass.className());
+        var output = SpecsSystem.runProcess(command, SpecsIo.getWorkingDir(), true, false);
+
+        var expected = TestUtils.backend(code).runWithFullOutput();
+
+        assertEquals("Exit code of " + classFile.getName(), expected.getReturnValue(), output.getReturnValue());
+        assertEquals(SpecsStrings.normalizeFileContents(expected.getStdOut(), true),
+                SpecsStrings.normalizeFileContents(output.getStdOut(), true));
+    }
 
     public static void testOllirToJasmin(String resource, String expectedOutput) {
         SpecsCheck.checkArgument(resource.endsWith(".ollir"), () -> "Expected resource to end with .ollir: " + resource);
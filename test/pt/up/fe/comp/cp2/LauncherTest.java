@@ -0,0 +1,313 @@
+package pt.up.fe.comp.cp2;
+
+import com.google.gson.JsonParser;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import pt.up.fe.comp2023.CompiledClass;
+import pt.up.fe.comp2023.JmmCompiler;
+import pt.up.fe.comp2023.Launcher;
+import pt.up.fe.comp2023.cache.CompileCache;
+import pt.up.fe.comp2023.server.CompileClient;
+import pt.up.fe.comp2023.server.CompileServer;
+import pt.up.fe.specs.util.SpecsIo;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs the compiler the way the command line does, on sources written to a temporary folder.
+ */
+public class LauncherTest {
+
+    private static final List<String> SOURCES = List.of(
+            "pt/up/fe/comp/cp2/jasmin/OllirToJasminArithmetics.jmm",
+            "pt/up/fe/comp/cp2/jasmin/OllirToJasminBasic.jmm",
+            "pt/up/fe/comp/cp2/jasmin/OllirToJasminInvoke.jmm");
+
+    private static final String BROKEN_CODE = "class Broken { int }";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static class Output {
+
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final PrintStream stream = new PrintStream(bytes, true, StandardCharsets.UTF_8);
+
+        @Override
+        public String toString() {
+            return bytes.toString(StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Copies the sources to a new folder of the temporary folder.
+     */
+    private List<File> writeSources(String folderName) throws IOException {
+        var sourceFolder = folder.newFolder(folderName);
+
+        var files = new ArrayList<File>();
+        for (var resource : SOURCES) {
+            var file = new File(sourceFolder, new File(resource).getName());
+            SpecsIo.write(file, SpecsIo.getResource(resource));
+            files.add(file);
+        }
+
+        return files;
+    }
+
+    /**
+     * The client sends the arguments and gets back the exit status and everything the compilation printed, from a
+     * server on a free port
+     */
+    @Test
+    public void compilesThroughServer() throws Exception {
+        var sources = writeSources("server");
+
+        var server = new CompileServer(0);
+        int port = server.listen();
+        var serverThread = new Thread(() -> {
+            try {
+                server.run();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        serverThread.start();
+
+        try {
+            var client = new CompileClient(port);
+
+            var out = new Output();
+            int status = client.send(List.of("-i=" + sources.get(0).getAbsolutePath()), out.stream);
+
+            assertEquals(out.toString(), CompileServer.STATUS_OK, status);
+            assertTrue(out.toString(), out.toString().contains("JASMIN CODE"));
+
+            var broken = new File(folder.getRoot(), "Broken.jmm");
+            SpecsIo.write(broken, BROKEN_CODE);
+            var brokenOut = new Output();
+
+            assertEquals(CompileServer.STATUS_ERROR, client.send(List.of("-i=" + broken), brokenOut.stream));
+            assertFalse(brokenOut.toString().isEmpty());
+        } finally {
+            server.close();
+            serverThread.join(10_000);
+        }
+
+        assertFalse(serverThread.isAlive());
+    }
+
+    private static Map<String, String> parseArgs(String... args) {
+        var config = Launcher.parseArgs(args);
+        assertTrue(Launcher.validateConfig(config));
+
+        return config;
+    }
+
+    @Test
+    public void compilesBatchFolder() throws IOException {
+        var sources = writeSources("batch");
+        SpecsIo.write(new File(sources.get(0).getParentFile(), "Broken.jmm"), BROKEN_CODE);
+        var outputFolder = new File(folder.getRoot(), "out");
+        var config = parseArgs("-i=" + sources.get(0).getParent(), "-out=" + outputFolder, "-j=2");
+        var out = new Output();
+
+        int status = Launcher.compile(new JmmCompiler(), config, out.stream);
+
+        assertEquals(out.toString(), 1, status);
+        assertTrue(out.toString(), out.toString().contains("Failed to compile"));
+        assertTrue(out.toString(), out.toString().contains("Compiled 3 of 4 files"));
+        for (var source : sources) {
+            assertTrue(new File(outputFolder, SpecsIo.removeExtension(source.getName()) + ".j").isFile());
+        }
+    }
+
+    /**
+     * Relative paths in the list file are relative to the list file, not to the working folder
+     */
+    @Test
+    public void compilesBatchListFile() throws IOException {
+        var sources = writeSources("list");
+        var listFile = new File(folder.getRoot(), "sources.txt");
+        SpecsIo.write(listFile, "# Two of the sources\nlist/" + sources.get(0).getName() + "\n\n"
+                + sources.get(2).getAbsolutePath() + "\n");
+
+        var config = parseArgs("-i=@" + listFile);
+        var out = new Output();
+
+        int status = Launcher.compile(new JmmCompiler(), config, out.stream);
+
+        assertEquals(out.toString(), 0, status);
+        assertTrue(out.toString(), out.toString().contains("Compiled 2 of 2 files"));
+        assertTrue(new File(sources.get(0).getParentFile(), "OllirToJasminArithmetics.j").isFile());
+        assertFalse(new File(sources.get(1).getParentFile(), "OllirToJasminBasic.j").exists());
+        assertTrue(new File(sources.get(2).getParentFile(), "OllirToJasminInvoke.j").isFile());
+    }
+
+    @Test
+    public void writesMetricsReport() throws IOException {
+        var sources = writeSources("report");
+        var reportFile = new File(folder.getRoot(), "report.json");
+        var config = parseArgs("-i=" + sources.get(0).getParent(), "-o", "-t=" + reportFile);
+
+        int status = Launcher.compile(new JmmCompiler(), config, new Output().stream);
+        assertEquals(0, status);
+
+        var compilations = JsonParser.parseString(Files.readString(reportFile.toPath())).getAsJsonArray();
+        assertEquals(sources.size(), compilations.size());
+
+        for (int i = 0; i < sources.size(); i++) {
+            var compilation = compilations.get(i).getAsJsonObject();
+            assertEquals(sources.get(i).getPath(), compilation.get("source").getAsString());
+
+            var metrics = compilation.getAsJsonObject("metrics");
+            assertEquals(SpecsIo.removeExtension(sources.get(i).getName()), metrics.get("className").getAsString());
+            assertTrue(metrics.get("counters").isJsonObject());
+
+            var main = metrics.getAsJsonObject("methods").getAsJsonObject("main");
+            assertTrue(main.toString(), main.getAsJsonArray("stages").size() > 0);
+            assertTrue(main.toString(), main.getAsJsonObject("counters").has("maxStack"));
+
+            var stages = new ArrayList<String>();
+            for (var element : metrics.getAsJsonArray("stages")) {
+                var stage = element.getAsJsonObject();
+                for (var field : List.of("wallNanos", "allocatedBytes", "outputSize")) {
+                    assertTrue(field + " of " + stage, stage.get(field).getAsLong() >= 0);
+                }
+
+                stages.add(stage.get("stage").getAsString());
+            }
+
+            assertTrue(stages.toString(), stages.containsAll(
+                    List.of("parse", "semanticAnalysis", "toClassUnit", "optimizeOllir", "jasmin")));
+        }
+    }
+
+    private static CompileCache.Entry newEntry(String className, int size) {
+        var contents = new byte[size];
+        Arrays.fill(contents, (byte) className.hashCode());
+
+        return new CompileCache.Entry(className, ".class", contents);
+    }
+
+    private static boolean hasStage(CompiledClass compiledClass, String stage) {
+        return compiledClass.metrics().getStages().stream()
+                .anyMatch(stageMetrics -> stageMetrics.stage().equals(stage));
+    }
+
+    @Test
+    public void cacheMissesUnknownKey() {
+        var cache = new CompileCache(folder.getRoot().toPath(), 1 << 20);
+
+        assertTrue(cache.get(cache.getKey("class A {}", Map.of())).isEmpty());
+    }
+
+    @Test
+    public void cacheHitsStoredEntry() {
+        var cache = new CompileCache(folder.getRoot().toPath(), 1 << 20);
+        var key = cache.getKey("class A {}", Map.of());
+        var entry = newEntry("A", 100);
+
+        cache.put(key, entry);
+        var stored = cache.get(key).orElseThrow();
+
+        assertEquals("A", stored.className());
+        assertEquals(".class", stored.fileExtension());
+        assertArrayEquals(entry.contents(), stored.contents());
+    }
+
+    /**
+     * Only the options that change the generated code are part of the key
+     */
+    @Test
+    public void cacheKeysOnCodeAndOutputOptions() {
+        var cache = new CompileCache(folder.getRoot().toPath(), 1 << 20);
+        var key = cache.getKey("class A {}", Map.of("optimize", "false"));
+
+        assertNotEquals(key, cache.getKey("class B {}", Map.of("optimize", "false")));
+        assertNotEquals(key, cache.getKey("class A {}", Map.of("optimize", "true")));
+        assertNotEquals(key, cache.getKey("class A {}", Map.of("optimize", "false", "registerAllocation", "3")));
+        assertEquals(key, cache.getKey("class A {}", Map.of("optimize", "false", "debug", "true")));
+    }
+
+    /**
+     * Only two entries fit, and reading the oldest one makes it the most recently used, so adding a third entry evicts
+     * the one that was not read
+     */
+    @Test
+    public void cacheEvictsLeastRecentlyUsed() throws IOException {
+        var root = folder.getRoot().toPath();
+        var cache = new CompileCache(root, 2500);
+        var keyA = cache.getKey("class A {}", Map.of());
+        var keyB = cache.getKey("class B {}", Map.of());
+        var keyC = cache.getKey("class C {}", Map.of());
+
+        cache.put(keyA, newEntry("A", 1000));
+        cache.put(keyB, newEntry("B", 1000));
+
+        long now = System.currentTimeMillis();
+        Files.setLastModifiedTime(root.resolve(keyA + ".entry"), FileTime.fromMillis(now - 120_000));
+        Files.setLastModifiedTime(root.resolve(keyB + ".entry"), FileTime.fromMillis(now - 60_000));
+
+        assertTrue(cache.get(keyA).isPresent());
+        cache.put(keyC, newEntry("C", 1000));
+
+        assertTrue(cache.get(keyA).isPresent());
+        assertTrue(cache.get(keyB).isEmpty());
+        assertTrue(cache.get(keyC).isPresent());
+    }
+
+    /**
+     * A new cache keeps no running size yet, so the entries an earlier run left in the folder must still count
+     */
+    @Test
+    public void cacheCountsEntriesOfEarlierRuns() throws IOException {
+        var root = folder.getRoot().toPath();
+        var earlierRun = new CompileCache(root, 2500);
+        var keyA = earlierRun.getKey("class A {}", Map.of());
+        var keyB = earlierRun.getKey("class B {}", Map.of());
+
+        earlierRun.put(keyA, newEntry("A", 1000));
+        earlierRun.put(keyB, newEntry("B", 1000));
+        Files.setLastModifiedTime(root.resolve(keyA + ".entry"),
+                FileTime.fromMillis(System.currentTimeMillis() - 60_000));
+
+        var cache = new CompileCache(root, 2500);
+        var keyC = cache.getKey("class C {}", Map.of());
+        cache.put(keyC, newEntry("C", 1000));
+
+        assertTrue(cache.get(keyA).isEmpty());
+        assertTrue(cache.get(keyB).isPresent());
+        assertTrue(cache.get(keyC).isPresent());
+    }
+
+    @Test
+    public void compilerReusesCachedClass() {
+        var compiler = new JmmCompiler();
+        var out = new PrintStream(OutputStream.nullOutputStream());
+        var code = SpecsIo.getResource(SOURCES.get(0));
+        var config = Map.of("cacheFolder", folder.getRoot().getPath(), "backend", JmmCompiler.BACKEND_CLASS);
+
+        var compiled = compiler.compile(code, config, out);
+        var cached = compiler.compile(code, config, out);
+
+        assertTrue(hasStage(compiled, "parse"));
+        assertFalse(hasStage(cached, "parse"));
+        assertEquals(compiled.className(), cached.className());
+        assertArrayEquals(compiled.contents(), cached.contents());
+    }
+}
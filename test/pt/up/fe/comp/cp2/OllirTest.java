@@ -2,12 +2,15 @@ package pt.up.fe.comp.cp2;
 
 import org.junit.Test;
 import org.specs.comp.ollir.*;
+import pt.up.fe.comp.CpUtils;
 import pt.up.fe.comp.TestUtils;
+import pt.up.fe.comp.jmm.ollir.OllirResult;
 import pt.up.fe.specs.util.SpecsIo;
 
 import java.io.File;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.function.Consumer;
 
 import static org.hamcrest.CoreMatchers.hasItem;
@@ -37,6 +40,53 @@ public class OllirTest {
         testJmmCompilation("pt/up/fe/comp/cp2/ollir/CompileAssignment.jmm", this::compileAssignment);
     }
 
+    private static final String SHORT_CIRCUIT = "pt/up/fe/comp/cp2/ollir/ShortCircuit.jmm";
+
+    private static final String SHORT_CIRCUIT_OUTPUT = "0\n1\n20\n11\n3\n0";
+
+    private static void assertNoEagerAnd(OllirResult ollirResult, String methodName) {
+        var method = CpUtils.getMethod(ollirResult, methodName);
+
+        boolean evaluatesAnd = method.getInstructions().stream()
+                .anyMatch(instruction -> instruction instanceof AssignInstruction assign
+                        && assign.getRhs() instanceof BinaryOpInstruction binaryOp
+                        && binaryOp.getOperation().getOpType() == OperationType.ANDB);
+
+        CpUtils.assertEquals("Expected && in '" + methodName + "' to be lowered to branches", false, evaluatesAnd,
+                ollirResult);
+    }
+
+    /**
+     * The right operand of {@code &&} must only be evaluated when the left operand is true, whether it is a call with
+     * side effects or just a variable, which may not be assigned yet
+     */
+    @Test
+    public void compileShortCircuit() {
+        var ollirResult = TestUtils.optimize(SpecsIo.getResource(SHORT_CIRCUIT));
+
+        assertNoEagerAnd(ollirResult, "assignsAnd");
+        assertNoEagerAnd(ollirResult, "readsUnassigned");
+    }
+
+    @Test
+    public void runShortCircuit() {
+        var result = TestUtils.backend(SpecsIo.getResource(SHORT_CIRCUIT));
+
+        CpUtils.runJasmin(result, SHORT_CIRCUIT_OUTPUT);
+    }
+
+    /**
+     * Optimizations and register allocation must not bring back a read of the variable that is not assigned yet in
+     * {@code b = false && b}, which the JVM verifier rejects
+     */
+    @Test
+    public void runShortCircuitOptimized() {
+        var config = Map.of("optimize", "true", "registerAllocation", "4");
+        var result = TestUtils.backend(SpecsIo.getResource(SHORT_CIRCUIT), config);
+
+        CpUtils.runJasmin(result, SHORT_CIRCUIT_OUTPUT);
+    }
+
     public static void testJmmCompilation(String resource, Consumer<ClassUnit> ollirTester, String executionOutput) {
 
         // If AstToJasmin pipeline, do not execute test
@@ -0,0 +1,667 @@
+package pt.up.fe.comp.cp2;
+
+import org.junit.Test;
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp.CpUtils;
+import pt.up.fe.comp.TestUtils;
+import pt.up.fe.comp.jmm.jasmin.JasminResult;
+import pt.up.fe.comp2023.JmmCompiler;
+import pt.up.fe.comp2023.SimpleOptimizer;
+import pt.up.fe.comp2023.jasmin.JasminBackend;
+import pt.up.fe.comp2023.ollir.OllirPrinter;
+import pt.up.fe.comp2023.ollir.optimization.constants.ConstantPropagationOptimizer;
+import pt.up.fe.comp2023.ollir.optimization.deadcode.DeadCodeOptimizer;
+import pt.up.fe.comp2023.ollir.optimization.inlining.InliningOptimizer;
+import pt.up.fe.comp2023.ollir.optimization.loops.LoopInvariantOptimizer;
+import pt.up.fe.comp2023.ollir.optimization.registers.GraphColorizer;
+import pt.up.fe.comp2023.ollir.optimization.registers.InterferenceGraph;
+import pt.up.fe.comp2023.ollir.optimization.registers.RegisterAllocationOptimizer;
+import pt.up.fe.comp2023.ollir.optimization.valuenumbering.ValueNumberingOptimizer;
+import pt.up.fe.specs.util.SpecsIo;
+import pt.up.fe.specs.util.SpecsStrings;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs the passes of the OLLIR optimizer on the fixtures in {@code pt/up/fe/comp/cp2/optimizations}, one pass at a
+ * time, and checks both the optimized OLLIR and what the class prints when it runs.
+ */
+public class OptimizationsTest {
+
+    private static final String FIXTURES = "pt/up/fe/comp/cp2/optimizations/";
+
+    /**
+     * @return the OLLIR class of the fixture, before any optimization
+     */
+    private static ClassUnit build(String filename) {
+        var semanticsResult = TestUtils.analyse(SpecsIo.getResource(FIXTURES + filename));
+        TestUtils.noErrors(semanticsResult.getReports());
+
+        return new SimpleOptimizer().toClassUnit(semanticsResult);
+    }
+
+    private static ClassUnit optimize(String filename, Consumer<ClassUnit> pass) {
+        var classUnit = build(filename);
+        pass.accept(classUnit);
+
+        return classUnit;
+    }
+
+    /**
+     * Passes replace the methods they change, so methods are always looked up again.
+     */
+    private static Method getMethod(ClassUnit classUnit, String methodName) {
+        return classUnit.getMethods().stream()
+                .filter(method -> method.getMethodName().equals(methodName))
+                .findFirst()
+                .orElseThrow(() -> new RuntimeException("Could not find OLLIR method with name '" + methodName
+                        + "' in:\n" + print(classUnit)));
+    }
+
+    /**
+     * @return the instructions of the method that are of the given class, including the right-hand sides of
+     * assignments
+     */
+    private static <T extends Instruction> List<T> getInstructions(ClassUnit classUnit, String methodName,
+                                                                   Class<T> instructionClass) {
+        return getMethod(classUnit, methodName).getInstructions().stream()
+                .map(instruction -> instruction instanceof AssignInstruction assign ? assign.getRhs() : instruction)
+                .filter(instructionClass::isInstance)
+                .map(instructionClass::cast)
+                .toList();
+    }
+
+    private static long countOperations(ClassUnit classUnit, String methodName, OperationType opType) {
+        return getInstructions(classUnit, methodName, BinaryOpInstruction.class).stream()
+                .filter(binaryOp -> binaryOp.getOperation().getOpType() == opType)
+                .count();
+    }
+
+    private static boolean callsMethod(ClassUnit classUnit, String methodName, String calledMethod) {
+        return getInstructions(classUnit, methodName, CallInstruction.class).stream()
+                .anyMatch(call -> call.getSecondArg() instanceof LiteralElement name
+                        && name.getLiteral().equals('"' + calledMethod + '"'));
+    }
+
+    /**
+     * @return the literal the method returns, or null if it doesn't always return the same literal
+     */
+    private static String getReturnedLiteral(ClassUnit classUnit, String methodName) {
+        var literals = getInstructions(classUnit, methodName, ReturnInstruction.class).stream()
+                .map(ret -> ret.getOperand() instanceof LiteralElement literal ? literal.getLiteral() : null)
+                .distinct()
+                .toList();
+
+        return literals.size() == 1 ? literals.get(0) : null;
+    }
+
+    private static String print(ClassUnit classUnit) {
+        return new OllirPrinter().print(classUnit);
+    }
+
+    private static JasminResult toJasmin(ClassUnit classUnit, Map<String, String> config) {
+        TestUtils.noErrors(new RegisterAllocationOptimizer().optimize(classUnit, config));
+
+        return new JasminBackend().toJasmin(classUnit, config);
+    }
+
+    /**
+     * Allocates the registers of the class, without a limit, and checks what it prints when it runs.
+     */
+    private static void run(ClassUnit classUnit, String expected) {
+        CpUtils.runJasmin(toJasmin(classUnit, Collections.emptyMap()), expected);
+    }
+
+    private static int getLocalsLimit(JasminResult result, String methodName) {
+        var matcher = CpUtils.getLimitLocalsRegex().matcher(CpUtils.getJasminMethod(result, methodName));
+        CpUtils.assertTrue("Expected to find the .limit locals directive", matcher.find(), result);
+
+        return SpecsStrings.decodeInteger(matcher.group(1));
+    }
+
+    private static int getRegister(ClassUnit classUnit, String methodName, String variable) {
+        return getMethod(classUnit, methodName).getVarTable().get(variable).getVirtualReg();
+    }
+
+    private static JasminResult allocate(String filename, int numRegisters) {
+        return toJasmin(build(filename), Map.of("registerAllocation", String.valueOf(numRegisters)));
+    }
+
+    /**
+     * The five values rotated in the loop and its counter are live at the same time, along with this and n, so they
+     * only fit in five registers when some of them are spilled
+     */
+    @Test
+    public void spillsWhenRegistersRunOut() {
+        var result = allocate("Spilling.jmm", 5);
+
+        CpUtils.assertTrue("Expected at most 5 locals in 'rotate'", getLocalsLimit(result, "rotate") <= 5, result);
+        CpUtils.matches(CpUtils.getJasminMethod(result, "rotate"), "newarray\\s+int");
+        CpUtils.runJasmin(result, "306");
+    }
+
+    @Test
+    public void keepsVariablesInRegistersWhenTheyFit() {
+        var result = allocate("Spilling.jmm", 10);
+
+        CpUtils.assertTrue("Expected no spill slots in 'rotate'",
+                !CpUtils.getJasminMethod(result, "rotate").contains("newarray"), result);
+        CpUtils.runJasmin(result, "306");
+    }
+
+    @Test
+    public void reportsLimitBelowParameters() {
+        var reports = new RegisterAllocationOptimizer().optimize(build("Spilling.jmm"),
+                Map.of("registerAllocation", "1"));
+
+        TestUtils.mustFail(reports);
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void failsCompileWhenRegistersCannotFit() {
+        var code = SpecsIo.getResource(FIXTURES + "Spilling.jmm");
+        var out = new PrintStream(OutputStream.nullOutputStream());
+
+        new JmmCompiler().compile(code, Map.of("registerAllocation", "1"), out);
+    }
+
+    /**
+     * b is a copy of a and c a copy of b, and all three can share a register with each other, but not with x and y
+     */
+    @Test
+    public void coalescesCopyChain() {
+        var classUnit = build("Coalescing.jmm");
+        TestUtils.noErrors(new RegisterAllocationOptimizer().optimize(classUnit, Map.of("registerAllocation", "0")));
+
+        int register = getRegister(classUnit, "copyChain", "a");
+
+        assertEquals(print(classUnit), register, getRegister(classUnit, "copyChain", "b"));
+        assertEquals(print(classUnit), register, getRegister(classUnit, "copyChain", "c"));
+        assertNotEquals(print(classUnit), register, getRegister(classUnit, "copyChain", "x"));
+        assertNotEquals(print(classUnit), register, getRegister(classUnit, "copyChain", "y"));
+        CpUtils.runJasmin(new JasminBackend().toJasmin(classUnit, Collections.emptyMap()), "20");
+    }
+
+    /**
+     * a, b and c are copies of each other, but merging them gives a node whose neighbors d and e interfere, which
+     * needs a third color, so coalescing must give up rather than need more colors than the graph without copies
+     */
+    @Test
+    public void coalescingNeverNeedsMoreColors() {
+        var variables = List.of("a", "b", "c", "d", "e");
+
+        var graph = new InterferenceGraph(variables);
+        var withCopies = new InterferenceGraph(variables);
+        for (var interferenceGraph : List.of(graph, withCopies)) {
+            interferenceGraph.connect(0, 3);
+            interferenceGraph.connect(1, 4);
+            interferenceGraph.connect(2, 3);
+            interferenceGraph.connect(3, 4);
+        }
+
+        withCopies.addCopy(1, 0);
+        withCopies.addCopy(2, 1);
+
+        var colorizer = new GraphColorizer();
+        var colors = colorizer.analyze(graph);
+        var coalescedColors = colorizer.analyze(withCopies);
+
+        assertEquals(2, colors.first().intValue());
+        assertTrue(coalescedColors.first() <= colors.first());
+
+        var registers = coalescedColors.second();
+        assertNotEquals(registers.get(0).getRegister(), registers.get(3).getRegister());
+        assertNotEquals(registers.get(1).getRegister(), registers.get(4).getRegister());
+        assertNotEquals(registers.get(2).getRegister(), registers.get(3).getRegister());
+        assertNotEquals(registers.get(3).getRegister(), registers.get(4).getRegister());
+    }
+
+    private static ClassUnit propagateConstants() {
+        return optimize("ConstantPropagation.jmm", classUnit -> new ConstantPropagationOptimizer().optimize(classUnit));
+    }
+
+    /**
+     * k starts at 1 and the branch that would change it never runs while it is 1, which only holds because the branch
+     * is found unreachable at the same time as k is found constant
+     */
+    @Test
+    public void propagatesConstantThroughLoop() {
+        var classUnit = propagateConstants();
+
+        assertEquals(print(classUnit), "1", getReturnedLiteral(classUnit, "loopConstant"));
+    }
+
+    @Test
+    public void foldsConstantBranch() {
+        var classUnit = propagateConstants();
+
+        assertTrue(print(classUnit), getInstructions(classUnit, "foldedBranch", CondBranchInstruction.class).isEmpty());
+        assertEquals(print(classUnit), "8", getReturnedLiteral(classUnit, "foldedBranch"));
+    }
+
+    @Test
+    public void keepsValuesThatDependOnParameters() {
+        var classUnit = propagateConstants();
+
+        assertNull(print(classUnit), getReturnedLiteral(classUnit, "notConstant"));
+    }
+
+    @Test
+    public void runsConstantPropagation() {
+        run(propagateConstants(), "1\n8\n2");
+    }
+
+    /**
+     * The AST constant propagation that runs before the OLLIR is built must not print anything
+     */
+    @Test
+    public void propagatesAstConstantsSilently() {
+        var semanticsResult = TestUtils.analyse(SpecsIo.getResource(FIXTURES + "ConstantPropagation.jmm"),
+                Map.of("optimize", "true"));
+        TestUtils.noErrors(semanticsResult.getReports());
+
+        var output = new ByteArrayOutputStream();
+        var stdout = System.out;
+        System.setOut(new PrintStream(output, true, StandardCharsets.UTF_8));
+        try {
+            new SimpleOptimizer().optimize(semanticsResult);
+        } finally {
+            System.setOut(stdout);
+        }
+
+        assertEquals("", output.toString(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * The loop may run zero times, so the constant assigned in its body is not the value after it
+     */
+    @Test
+    public void keepsLoopConstantInsideLoop() {
+        var result = TestUtils.backend(SpecsIo.getResource(FIXTURES + "ConstantLoopExit.jmm"),
+                Map.of("optimize", "true"));
+
+        CpUtils.runJasmin(result, "0\n5");
+    }
+
+    /**
+     * The call assigns the field, so the value assigned to it before the call is not the value read after it
+     */
+    @Test
+    public void keepsFieldReadAfterCall() {
+        var result = TestUtils.backend(SpecsIo.getResource(FIXTURES + "ConstantField.jmm"),
+                Map.of("optimize", "true"));
+
+        CpUtils.runJasmin(result, "2");
+    }
+
+    /**
+     * Propagates constants first, as the optimizer does, so the branch on a constant condition is already folded
+     */
+    private static ClassUnit removeDeadCode() {
+        return optimize("DeadCode.jmm", classUnit -> {
+            new ConstantPropagationOptimizer().optimize(classUnit);
+            new DeadCodeOptimizer().optimize(classUnit);
+        });
+    }
+
+    @Test
+    public void removesDeadStore() {
+        var classUnit = removeDeadCode();
+
+        assertEquals(print(classUnit), 0, countOperations(classUnit, "deadStore", OperationType.MUL));
+    }
+
+    @Test
+    public void removesUnreachableCode() {
+        var classUnit = removeDeadCode();
+
+        assertEquals(print(classUnit), 0, countOperations(classUnit, "unreachable", OperationType.MUL));
+    }
+
+    @Test
+    public void keepsCallWithUnusedResult() {
+        var classUnit = removeDeadCode();
+
+        assertTrue(print(classUnit), callsMethod(classUnit, "keepsCall", "store"));
+    }
+
+    /**
+     * The division is by a parameter, which may be zero, so removing it could remove an exception
+     */
+    @Test
+    public void keepsDivisionThatMayThrow() {
+        var classUnit = removeDeadCode();
+
+        assertEquals(print(classUnit), 1, countOperations(classUnit, "keepsDivision", OperationType.DIV));
+    }
+
+    @Test
+    public void runsDeadCodeElimination() {
+        run(removeDeadCode(), "5\n2\n6\n1");
+    }
+
+    private static ClassUnit numberValues() {
+        return optimize("ValueNumbering.jmm", classUnit -> new ValueNumberingOptimizer(true).optimize(classUnit));
+    }
+
+    private static long countArrayReads(ClassUnit classUnit, String methodName) {
+        return getInstructions(classUnit, methodName, SingleOpInstruction.class).stream()
+                .filter(singleOp -> singleOp.getSingleOperand() instanceof ArrayOperand)
+                .count();
+    }
+
+    @Test
+    public void reusesExpression() {
+        var classUnit = numberValues();
+
+        assertEquals(print(classUnit), 1, countOperations(classUnit, "reusesExpression", OperationType.MUL));
+    }
+
+    @Test
+    public void reusesExpressionInDominatedBlock() {
+        var classUnit = numberValues();
+
+        assertEquals(print(classUnit), 1, countOperations(classUnit, "reusesInDominatedBlock", OperationType.MUL));
+    }
+
+    @Test
+    public void reusesFieldRead() {
+        var classUnit = numberValues();
+
+        assertEquals(print(classUnit), 1, getInstructions(classUnit, "reusesFieldRead", GetFieldInstruction.class).size());
+    }
+
+    @Test
+    public void fieldStoreInvalidatesRead() {
+        var classUnit = numberValues();
+
+        assertEquals(print(classUnit), 2,
+                getInstructions(classUnit, "fieldReadAfterStore", GetFieldInstruction.class).size());
+    }
+
+    @Test
+    public void callInvalidatesRead() {
+        var classUnit = numberValues();
+
+        assertEquals(print(classUnit), 2,
+                getInstructions(classUnit, "fieldReadAfterCall", GetFieldInstruction.class).size());
+    }
+
+    @Test
+    public void arrayStoreInvalidatesRead() {
+        var classUnit = numberValues();
+
+        assertEquals(print(classUnit), 2, countArrayReads(classUnit, "arrayReadAfterStore"));
+    }
+
+    @Test
+    public void runsValueNumbering() {
+        run(numberValues(), "24\n24\n10\n15\n15\n15");
+    }
+
+    private static ClassUnit hoistInvariants() {
+        return optimize("LoopInvariant.jmm", classUnit -> new LoopInvariantOptimizer().optimize(classUnit));
+    }
+
+    /**
+     * @return which instructions of the method are inside a loop, that is, between the target of a jump back and the
+     * jump
+     */
+    private static boolean[] findLoops(Method method) {
+        var instructions = method.getInstructions();
+        var inLoop = new boolean[instructions.size()];
+
+        for (int i = 0; i < instructions.size(); i++) {
+            String label;
+            if (instructions.get(i) instanceof GotoInstruction gotoInstruction) {
+                label = gotoInstruction.getLabel();
+            } else if (instructions.get(i) instanceof CondBranchInstruction branch) {
+                label = branch.getLabel();
+            } else {
+                continue;
+            }
+
+            int target = instructions.indexOf(method.getLabels().get(label));
+            for (int j = target; j <= i; j++) {
+                inLoop[j] = true;
+            }
+        }
+
+        return inLoop;
+    }
+
+    /**
+     * @return the instructions of the method inside its loops, or those before its first loop, with assignments
+     * replaced by their right-hand sides
+     */
+    private static List<Instruction> getLoopInstructions(ClassUnit classUnit, String methodName, boolean inLoops) {
+        var method = getMethod(classUnit, methodName);
+        var instructions = method.getInstructions();
+        var inLoop = findLoops(method);
+
+        var result = new ArrayList<Instruction>();
+        for (int i = 0; i < instructions.size(); i++) {
+            if (!inLoops && inLoop[i])
+                break;
+
+            if (inLoop[i] == inLoops) {
+                var instruction = instructions.get(i);
+                result.add(instruction instanceof AssignInstruction assign ? assign.getRhs() : instruction);
+            }
+        }
+
+        return result;
+    }
+
+    private static long countFieldReads(List<Instruction> instructions, String fieldName) {
+        return instructions.stream()
+                .filter(instruction -> instruction instanceof GetFieldInstruction getField
+                        && ((Operand) getField.getSecondOperand()).getName().equals(fieldName))
+                .count();
+    }
+
+    private static boolean readsFieldInLoop(ClassUnit classUnit, String methodName, String fieldName) {
+        return countFieldReads(getLoopInstructions(classUnit, methodName, true), fieldName) > 0;
+    }
+
+    private static boolean hasOperationInLoop(ClassUnit classUnit, String methodName, OperationType opType) {
+        return getLoopInstructions(classUnit, methodName, true).stream()
+                .anyMatch(instruction -> instruction instanceof BinaryOpInstruction binaryOp
+                        && binaryOp.getOperation().getOpType() == opType);
+    }
+
+    @Test
+    public void hoistsExpression() {
+        var classUnit = hoistInvariants();
+
+        assertFalse(print(classUnit), hasOperationInLoop(classUnit, "hoistsExpression", OperationType.MUL));
+    }
+
+    /**
+     * The loop stores array elements, but never assigns the field that holds the array
+     */
+    @Test
+    public void hoistsFieldReadFromLoopWritingArrays() {
+        var classUnit = hoistInvariants();
+
+        assertFalse(print(classUnit), readsFieldInLoop(classUnit, "fill", "values"));
+    }
+
+    @Test
+    public void hoistsReadOfFieldOnlyOtherFieldsChange() {
+        var classUnit = hoistInvariants();
+
+        assertFalse(print(classUnit), readsFieldInLoop(classUnit, "readOtherField", "limit"));
+        assertTrue(print(classUnit), readsFieldInLoop(classUnit, "readOtherField", "count"));
+    }
+
+    @Test
+    public void keepsReadOfFieldTheLoopWrites() {
+        var classUnit = hoistInvariants();
+
+        assertTrue(print(classUnit), readsFieldInLoop(classUnit, "countUp", "count"));
+    }
+
+    @Test
+    public void keepsFieldReadInLoopWithCall() {
+        var classUnit = hoistInvariants();
+
+        assertTrue(print(classUnit), readsFieldInLoop(classUnit, "readAcrossCall", "limit"));
+    }
+
+    /**
+     * The loop may not run, and the division by k may throw, so it must stay in the body
+     */
+    @Test
+    public void keepsDivisionThatMayThrowInBody() {
+        var classUnit = hoistInvariants();
+
+        assertTrue(print(classUnit), hasOperationInLoop(classUnit, "divideInBody", OperationType.DIV));
+    }
+
+    /**
+     * The header and the body of the loop both read the array field, and value numbering merges the two reads once
+     * they are hoisted
+     */
+    @Test
+    public void loadsHoistedFieldOnce() {
+        var classUnit = optimize("LoopInvariant.jmm",
+                unit -> new SimpleOptimizer().optimize(unit, Map.of("optimize", "true")));
+
+        assertEquals(print(classUnit), 1, countFieldReads(getLoopInstructions(classUnit, "fill", false), "values"));
+        assertFalse(print(classUnit), readsFieldInLoop(classUnit, "fill", "values"));
+    }
+
+    @Test
+    public void runsLoopInvariantCodeMotion() {
+        run(hoistInvariants(), "24\n8\n4\n12\n18\n0\n2");
+    }
+
+    private static ClassUnit inline() {
+        return optimize("Inlining.jmm", classUnit -> new InliningOptimizer().optimize(classUnit));
+    }
+
+    /**
+     * The parameter of the inlined method has the same name as a parameter of the caller, so it must be renamed
+     */
+    @Test
+    public void inlinesSmallMethod() {
+        var classUnit = inline();
+
+        assertFalse(print(classUnit), callsMethod(classUnit, "sumOfSquares", "square"));
+    }
+
+    @Test
+    public void inlinesMethodWithBranches() {
+        var classUnit = inline();
+
+        assertFalse(print(classUnit), callsMethod(classUnit, "distance", "abs"));
+    }
+
+    /**
+     * squarePlusOne calls square, so it can only be inlined once the call to square was inlined in it
+     */
+    @Test
+    public void inlinesMethodOnceItsCallsAreInlined() {
+        var classUnit = inline();
+
+        assertFalse(print(classUnit), callsMethod(classUnit, "callsSquarePlusOne", "squarePlusOne"));
+        assertFalse(print(classUnit), callsMethod(classUnit, "callsSquarePlusOne", "square"));
+    }
+
+    /**
+     * The inlined methods read and write a field of the object they are called on, which is not this
+     */
+    @Test
+    public void inlinesFieldAccessesOnReceiver() {
+        var classUnit = inline();
+
+        assertFalse(print(classUnit), callsMethod(classUnit, "baseOfNew", "setBase"));
+        assertFalse(print(classUnit), callsMethod(classUnit, "baseOfNew", "getBase"));
+    }
+
+    @Test
+    public void keepsRecursiveCall() {
+        var classUnit = inline();
+
+        assertTrue(print(classUnit), callsMethod(classUnit, "factorial", "factorial"));
+    }
+
+    @Test
+    public void keepsCallToLargeMethod() {
+        var classUnit = inline();
+
+        assertTrue(print(classUnit), callsMethod(classUnit, "callsBig", "big"));
+    }
+
+    /**
+     * this and parameters may be objects of a subclass that overrides the method
+     */
+    @Test
+    public void keepsCallsThatMayBeOverridden() {
+        var classUnit = inline();
+
+        assertTrue(print(classUnit), callsMethod(classUnit, "callsSquareOnThis", "square"));
+        assertTrue(print(classUnit), callsMethod(classUnit, "callsSquareOnParameter", "square"));
+    }
+
+    @Test
+    public void runsInlining() {
+        run(inline(), "25\n10\n10\n6\n120\n105\n25\n4");
+    }
+
+    /**
+     * InliningOverride is compiled on its own and overrides the method InliningBase calls on this, which must still
+     * be called once InliningBase is optimized
+     */
+    @Test
+    public void callsOverridingMethodOfSubclass() {
+        var base = TestUtils.backend(SpecsIo.getResource(FIXTURES + "InliningBase.jmm"), Map.of("optimize", "true"));
+        var baseFolder = SpecsIo.getTempFolder("inliningBase");
+        base.compile(baseFolder);
+
+        var override = TestUtils.backend(SpecsIo.getResource(FIXTURES + "InliningOverride.jmm"));
+        var classpath = List.of(TestUtils.getLibsClasspath(), baseFolder.getAbsolutePath());
+        var output = SpecsStrings.normalizeFileContents(override.run(Collections.emptyList(), classpath), true);
+
+        assertEquals(base.getJasminCode(), "2", output);
+    }
+
+    private static ClassUnit allocateWithoutLimit(String filename) {
+        var classUnit = build(filename);
+        TestUtils.noErrors(new RegisterAllocationOptimizer().optimize(classUnit, Collections.emptyMap()));
+
+        return classUnit;
+    }
+
+    @Test
+    public void givesLiveVariablesDifferentRegisters() {
+        var classUnit = allocateWithoutLimit("LinearScan.jmm");
+
+        assertNotEquals(print(classUnit), getRegister(classUnit, "overlapping", "a"),
+                getRegister(classUnit, "overlapping", "b"));
+    }
+
+    /**
+     * Each of the eight variables dies when the next one is assigned, so two registers are enough for all of them,
+     * besides this and n
+     */
+    @Test
+    public void packsTemporariesIntoFewRegisters() {
+        var result = new JasminBackend().toJasmin(allocateWithoutLimit("LinearScan.jmm"), Collections.emptyMap());
+
+        CpUtils.assertTrue("Expected at most 4 locals in 'temporaries'", getLocalsLimit(result, "temporaries") <= 4,
+                result);
+        CpUtils.runJasmin(result, "1640\n20");
+    }
+}
@@ -0,0 +1,74 @@
+package pt.up.fe.comp.cp2;
+
+import org.antlr.v4.runtime.ANTLRInputStream;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.junit.Test;
+import pt.up.fe.comp.TestUtils;
+import pt.up.fe.comp.jmm.ast.antlr.AntlrParser;
+import pt.up.fe.comp.jmm.parser.JmmParserResult;
+import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.comp2023.JavammLexer;
+import pt.up.fe.comp2023.JavammParser;
+import pt.up.fe.comp2023.SimpleParser;
+import pt.up.fe.comp2023.metrics.CompileMetrics;
+import pt.up.fe.specs.util.SpecsIo;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ParserTest {
+
+    private static final String VALID = "pt/up/fe/comp/cp2/jasmin/OllirToJasminArithmetics.jmm";
+    private static final String SYNTAX_ERRORS = "pt/up/fe/comp/cp2/parser/SyntaxErrors.jmm";
+
+    private record Parse(JmmParserResult result, long llFallbacks) {
+    }
+
+    private static Parse parse(String resource) {
+        try (var metrics = CompileMetrics.start()) {
+            var result = new SimpleParser().parse(SpecsIo.getResource(resource), Collections.emptyMap());
+
+            return new Parse(result, metrics.getCounters().getOrDefault("llFallbacks", 0L));
+        }
+    }
+
+    /**
+     * @return the tree of the code parsed with full LL prediction alone, or null if it has syntax errors
+     */
+    private static String parseWithLl(String resource) {
+        var lexer = new JavammLexer(new ANTLRInputStream(SpecsIo.getResource(resource)));
+        var parser = new JavammParser(new CommonTokenStream(lexer));
+        parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+
+        return AntlrParser.parse(lexer, parser, "program").map(root -> root.toTree()).orElse(null);
+    }
+
+    private static List<String> getMessages(JmmParserResult result) {
+        return result.getReports().stream().map(Report::getMessage).toList();
+    }
+
+    @Test
+    public void parsesValidCodeWithSll() {
+        var parse = parse(VALID);
+
+        TestUtils.noErrors(parse.result().getReports());
+        assertEquals(0, parse.llFallbacks());
+        assertEquals(parseWithLl(VALID), parse.result().getRootNode().toTree());
+    }
+
+    /**
+     * The SLL parse gives up at the first error, so the errors are reported by the LL parse, the same as without SLL
+     */
+    @Test
+    public void fallsBackToLlOnSyntaxErrors() {
+        var parse = parse(SYNTAX_ERRORS);
+
+        TestUtils.mustFail(parse.result().getReports());
+        assertEquals(1, parse.llFallbacks());
+        assertNull(parseWithLl(SYNTAX_ERRORS));
+        assertEquals(List.of("There were 2 syntax errors during parsing, terminating"), getMessages(parse.result()));
+    }
+}